@@ -0,0 +1,135 @@
+package com.pveplands.wanderinghorde;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full movement polls of AnchorAI and SatelliteAI, and a plan of the
+ * HordePlanner. Every benchmark puts the members back into the state they
+ * start from, so each invocation runs the same transition.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AIBenchmark {
+    @Param({ "10", "50" })
+    public int size;
+    
+    @Param({ "1", "20" })
+    public int hordes;
+    
+    private Horde horde;
+    private Member anchorman;
+    private Member satellite;
+    private HordePath path;
+    
+    @Setup
+    public void setup() throws Exception {
+        BenchFixture.quiet();
+        BenchFixture.reset();
+        
+        // satellites decide in their own polls, the planner is measured by plan().
+        Options.planHordes = false;
+        
+        // other hordes make WanderingHorde.inHorde search longer.
+        for (int i = 1; i < hordes; i++)
+            BenchFixture.createHorde(size, 600, 16 + i * 16, 64);
+        
+        horde = BenchFixture.createHorde(size, 16, 16, 64);
+        anchorman = horde.anchorman;
+        satellite = horde.satellites.get(0);
+        path = horde.waypoints.path();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        BenchFixture.reset();
+    }
+    
+    /**
+     * Anchor walking along the path, paths to the current path tile.
+     */
+    @Benchmark
+    public boolean anchorWalking() {
+        BenchFixture.moveTo(anchorman, 16, 16);
+        BenchFixture.moveTo(satellite, 17, 16);
+        anchorman.setBrain(MemberStatus.WalkingToWaypoint);
+        path.index = 2;
+        horde.lastMovement = 0L;
+        
+        return WanderingHorde.getAnchorAI().pollMovement(anchorman, 0L);
+    }
+    
+    /**
+     * Anchor at the waypoint, with all satellites near it.
+     */
+    @Benchmark
+    public boolean anchorWaitingForSatellites() {
+        for (Member member : horde.satellites)
+            BenchFixture.moveTo(member, path.end.x, path.end.y);
+        
+        BenchFixture.moveTo(anchorman, path.end.x, path.end.y);
+        anchorman.setBrain(MemberStatus.WaitingForSatellites);
+        horde.lastMovement = 0L;
+        
+        return WanderingHorde.getAnchorAI().pollMovement(anchorman, 0L);
+    }
+    
+    /**
+     * Satellite walking behind the anchor, paths to a deviated path tile.
+     */
+    @Benchmark
+    public boolean satelliteWalking() {
+        BenchFixture.moveTo(satellite, 17, 16);
+        satellite.setBrain(MemberStatus.WalkingToWaypoint);
+        path.index = 4;
+        horde.lastMovement = 0L;
+        
+        return WanderingHorde.getSatelliteAI().pollMovement(satellite, 0L);
+    }
+    
+    /**
+     * Satellite near the waypoint, starts scattering around it.
+     */
+    @Benchmark
+    public boolean satelliteScattering() {
+        BenchFixture.moveTo(satellite, path.end.x, path.end.y);
+        satellite.setBrain(MemberStatus.WalkingToWaypoint);
+        horde.lastMovement = 0L;
+        
+        return WanderingHorde.getSatelliteAI().pollMovement(satellite, 0L);
+    }
+    
+    /**
+     * Snapshot and plan of all satellites walking behind the anchor, as
+     * made by the HordePlanner, without applying it.
+     */
+    @Benchmark
+    public int plan() {
+        for (Member member : horde.satellites) {
+            BenchFixture.moveTo(member, 17, 16);
+            member.setBrain(MemberStatus.WalkingToWaypoint);
+        }
+        
+        path.index = 4;
+        
+        HordePlanner.Plan plan = WanderingHorde.getPlanner().plan(horde);
+        plan.run();
+        
+        return plan.commands;
+    }
+}
@@ -0,0 +1,148 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.math.TilePos;
+import com.wurmonline.server.creatures.CreatureTemplateFactory;
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.LinkedList;
+import java.util.logging.Level;
+
+/**
+ * Creates hordes on the stubbed server for the benchmarks, without spawning
+ * through the server or the SpawnQueue.
+ */
+public class BenchFixture {
+    private static int nextHordeId = 1;
+    
+    /**
+     * Turns off the mod's logging, so benchmarks measure the AI and not the
+     * console.
+     */
+    public static void quiet() {
+        WanderingHorde.logger.setLevel(Level.OFF);
+    }
+    
+    /**
+     * Creates a registered horde walking between two waypoints, with the
+     * satellites placed around the anchor.
+     * @param size Number of members including the anchor.
+     * @param startX Tile X coordinate of the first waypoint.
+     * @param startY Tile Y coordinate of the first waypoint.
+     * @param length Distance in tiles to the second waypoint.
+     * @return The horde, already added to WanderingHorde.
+     * @throws Exception If a member can't be created.
+     */
+    public static Horde createHorde(int size, int startX, int startY, int length) throws Exception {
+        return createHorde(size, Waypoints.WaypointBehaviour.Loop,
+            TilePos.fromXY(startX, startY), TilePos.fromXY(startX + length, startY));
+    }
+    
+    /**
+     * Creates a registered horde with its paths found, and the satellites
+     * placed in a square around the anchor at the first waypoint.
+     * @param size Number of members including the anchor.
+     * @param behaviour Behaviour at the last waypoint.
+     * @param points Waypoints, at least two.
+     * @return The horde, already added to WanderingHorde.
+     * @throws Exception If a member can't be created.
+     */
+    public static Horde createHorde(int size, Waypoints.WaypointBehaviour behaviour, TilePos ... points) throws Exception {
+        return createHorde(new int[] { 11, 11 }, size, behaviour, points);
+    }
+    
+    /**
+     * Creates a registered horde of other templates, e.g. to merge hordes of
+     * different kinds.
+     * @param templates Template Ids of the horde, see Horde(Player, int, int...).
+     * @param size Number of members including the anchor.
+     * @param behaviour Behaviour at the last waypoint.
+     * @param points Waypoints, at least two.
+     * @return The horde, already added to WanderingHorde.
+     * @throws Exception If a member can't be created.
+     */
+    public static Horde createHorde(int[] templates, int size, Waypoints.WaypointBehaviour behaviour, TilePos ... points) throws Exception {
+        return createHorde(nextHordeId++, WanderingHorde.nextSeed(), templates, size, behaviour, points);
+    }
+    
+    /**
+     * Creates a registered horde with a given Id and random seed, e.g. one
+     * from an input recording.
+     * @param id Id of the horde.
+     * @param seed Seed of the horde's random numbers.
+     * @param size Number of members including the anchor.
+     * @param behaviour Behaviour at the last waypoint.
+     * @param points Waypoints, at least two.
+     * @return The horde, already added to WanderingHorde.
+     * @throws Exception If a member can't be created.
+     */
+    public static Horde createHorde(int id, long seed, int size, Waypoints.WaypointBehaviour behaviour, TilePos ... points) throws Exception {
+        return createHorde(id, seed, new int[] { 11, 11 }, size, behaviour, points);
+    }
+    
+    private static Horde createHorde(int id, long seed, int[] templates, int size, Waypoints.WaypointBehaviour behaviour, TilePos ... points) throws Exception {
+        Horde horde = new Horde(id, "bench", WanderingHorde.now(), size, templates);
+        int side = (int)Math.ceil(Math.sqrt(size));
+        
+        if (!horde.init())
+            throw new IllegalStateException("Can't initialise horde templates.");
+        
+        horde.setSeed(seed);
+        
+        horde.spawned = true;
+        horde.anchorman = createMember(horde, points[0].x, points[0].y);
+        horde.waypoints = new Waypoints(horde.anchorman, behaviour, points);
+        horde.waypoints.resetPaths();
+        
+        for (int i = 1; i < size; i++)
+            horde.addSatellite(createMember(horde, points[0].x + i % side - side / 2, points[0].y + i / side - side / 2));
+        
+        WanderingHorde.register(horde);
+        horde.walk();
+        
+        return horde;
+    }
+    
+    /**
+     * Creates a member at the center of a tile.
+     */
+    public static Member createMember(Horde horde, int tileX, int tileY) throws Exception {
+        Member member = new Member(CreatureTemplateFactory.getInstance().getTemplate(11));
+        
+        member.horde = horde;
+        moveTo(member, tileX, tileY);
+        
+        return member;
+    }
+    
+    /**
+     * Places a creature at the center of a tile and stops its pathing.
+     */
+    public static void moveTo(Member member, int tileX, int tileY) {
+        member.getStatus().setPositionX((tileX << 2) + 2f);
+        member.getStatus().setPositionY((tileY << 2) + 2f);
+        member.getStatus().setPath(null);
+    }
+    
+    /**
+     * @param length Number of tiles.
+     * @return Horde path along the X axis starting at tile 1, 1.
+     */
+    public static HordePath createPath(int length) {
+        LinkedList<PathTile> tiles = new LinkedList<>();
+        
+        for (int i = 0; i < length; i++)
+            tiles.add(new PathTile(1 + i, 1, 0, true, 0));
+        
+        return new HordePath(new Path(tiles));
+    }
+    
+    /**
+     * Removes all hordes and members from WanderingHorde.
+     */
+    public static void reset() {
+        WanderingHorde.getHordes().clear();
+        WanderingHorde.getRegistry().clear();
+        WanderingHorde.getTimers().clear();
+        WanderingHorde.clean();
+    }
+}
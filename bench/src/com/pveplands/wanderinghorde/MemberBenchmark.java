@@ -0,0 +1,70 @@
+package com.pveplands.wanderinghorde;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Member.distanceTo, and the satellite's search for a path tile near it
+ * while walking to a waypoint.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemberBenchmark {
+    /**
+     * Length of the path, the satellite searches back from its end.
+     */
+    @Param({ "16", "256", "1024" })
+    public int length;
+    
+    private Horde horde;
+    private Member satellite;
+    
+    @Setup
+    public void setup() throws Exception {
+        BenchFixture.quiet();
+        BenchFixture.reset();
+        Options.planHordes = false;
+        
+        horde = BenchFixture.createHorde(2, 8, 8, length);
+        satellite = horde.satellites.get(0);
+        horde.waypoints.path().index = length - 1;
+    }
+    
+    @TearDown
+    public void tearDown() {
+        BenchFixture.reset();
+    }
+    
+    @Benchmark
+    public float distanceTo() {
+        return satellite.distanceTo(horde.anchorman);
+    }
+    
+    /**
+     * The satellite is off the path near its start, so it searches back
+     * through the whole path before walking to the first tile.
+     */
+    @Benchmark
+    public boolean satelliteTileSearch() {
+        BenchFixture.moveTo(satellite, 8, 20);
+        satellite.setBrain(MemberStatus.WalkingToWaypoint);
+        horde.lastMovement = 0L;
+        
+        return WanderingHorde.getSatelliteAI().pollMovement(satellite, 0L);
+    }
+}
@@ -0,0 +1,65 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HordePath operations used by the anchor and satellites on every movement
+ * poll, at different path lengths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+    @Param({ "16", "256", "4096" })
+    public int length;
+    
+    private HordePath path;
+    
+    @Setup
+    public void setup() {
+        BenchFixture.quiet();
+        path = BenchFixture.createPath(length);
+    }
+    
+    @Benchmark
+    public PathTile advance() {
+        if (path.index >= length - 1)
+            path.index = 0;
+        
+        return path.advance(Options.anchorAdvance);
+    }
+    
+    @Benchmark
+    public PathTile current() {
+        // the middle of the path, where LinkedList.get is slowest.
+        path.index = length >> 1;
+        
+        return path.current();
+    }
+    
+    @Benchmark
+    public HordePath reversed() {
+        return path.reversed();
+    }
+    
+    @Benchmark
+    public Path hangback() {
+        return path.hangback(3);
+    }
+}
@@ -0,0 +1,89 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.creatures.Creature;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking up the horde of a creature, through the HordeRegistry and by
+ * searching all hordes like WanderingHorde.inHorde does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+    @Param({ "1", "10", "100" })
+    public int hordes;
+    
+    @Param({ "20" })
+    public int members;
+    
+    private Creature[] creatures;
+    private long[] ids;
+    private int next = 0;
+    
+    @Setup
+    public void setup() throws Exception {
+        BenchFixture.quiet();
+        BenchFixture.reset();
+        
+        Random random = new Random(42L);
+        creatures = new Creature[hordes * members];
+        ids = new long[creatures.length];
+        
+        for (int i = 0; i < hordes; i++) {
+            Horde horde = BenchFixture.createHorde(members, 16 + i % 30 * 32, 16 + i / 30 * 32, 16);
+            
+            creatures[i * members] = horde.anchorman;
+            
+            for (int n = 1; n < members; n++)
+                creatures[i * members + n] = horde.satellites.get(n - 1);
+        }
+        
+        // look up members in a random order, so the cache doesn't help.
+        for (int i = creatures.length - 1; i > 0; i--) {
+            int swap = random.nextInt(i + 1);
+            Creature creature = creatures[i];
+            creatures[i] = creatures[swap];
+            creatures[swap] = creature;
+        }
+        
+        for (int i = 0; i < creatures.length; i++)
+            ids[i] = creatures[i].getWurmId();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        BenchFixture.reset();
+    }
+    
+    @Benchmark
+    public int registryGet() {
+        return WanderingHorde.getRegistry().get(ids[next++ % ids.length]);
+    }
+    
+    @Benchmark
+    public boolean registryMiss() {
+        return WanderingHorde.isInHorde(-ids[next++ % ids.length]);
+    }
+    
+    @Benchmark
+    public Horde inHorde() {
+        return WanderingHorde.inHorde(creatures[next++ % creatures.length]);
+    }
+}
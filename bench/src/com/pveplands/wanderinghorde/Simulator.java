@@ -0,0 +1,551 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.math.TilePos;
+import com.wurmonline.mesh.MeshIO;
+import com.wurmonline.server.Server;
+import com.wurmonline.server.Players;
+import com.wurmonline.server.WurmCalendar;
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import com.wurmonline.server.players.Player;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs hordes on a synthetic map without a Wurm server, with a fake clock
+ * and stand-in creature movement, and reports the throughput, allocation
+ * rate and stuck members. Runs with the same seed give the same result.
+ * With --replay, the hordes, ticks, nights and deaths are played back from
+ * an InputRecorder recording of a server instead, on a flat map.
+ *
+ * Hordes are fully simulated unless --lod sets Options.lodDistance, then
+ * only hordes near one of the --players stand-in players are, which walk
+ * across the map one tile per tick.
+ *
+ * With --merges, the hordes are of three kinds, and every that many ticks
+ * the anchor of a random horde is moved to another horde's, which takes it
+ * in. The report counts templates the merged hordes lost.
+ *
+ * Usage: Simulator [--seed 1] [--hordes 200] [--members 50] [--ticks 300]
+ * [--tick 1000] [--map 11] [--report 60] [--stuck 30] [--lod 0]
+ * [--players 0] [--merges 0] [--replay file]
+ */
+public class Simulator {
+    private final long seed;
+    private final int hordeCount;
+    private final int membersPerHorde;
+    private final int ticks;
+    private final int tickMillis;
+    private final int mapLevel;
+    private final int reportTicks;
+    private final int stuckTicks;
+    private final int lodDistance;
+    private final int playerCount;
+    private final int mergeTicks;
+    private final File replay;
+    
+    private final Random random;
+    private final List<Horde> hordes = new ArrayList<>();
+    private final List<Member> members = new ArrayList<>();
+    private final Map<Integer, Horde> byId = new HashMap<>();
+    private final List<Player> players = new ArrayList<>();
+    private final List<TilePos> playerTargets = new ArrayList<>();
+    private int[] lastTileX = new int[0];
+    private int[] lastTileY = new int[0];
+    private int[] lastProgress = new int[0];
+    
+    private long time = 0L;
+    private long memberTicks = 0L;
+    private long blockedMoves = 0L;
+    private int refusedMerges = 0;
+    private int lostTemplates = 0;
+    private int tick = 0;
+    
+    private long reportStart;
+    private long reportAllocated;
+    private long reportMemberTicks = 0L;
+    
+    public Simulator(long seed, int hordes, int members, int ticks, int tickMillis, int mapLevel, int reportTicks, int stuckTicks, int lodDistance, int players, int merges, File replay) {
+        this.seed = seed;
+        this.hordeCount = hordes;
+        this.membersPerHorde = members;
+        this.ticks = ticks;
+        this.tickMillis = tickMillis;
+        this.mapLevel = mapLevel;
+        this.reportTicks = reportTicks;
+        this.stuckTicks = stuckTicks;
+        this.lodDistance = lodDistance;
+        this.playerCount = players;
+        this.mergeTicks = merges;
+        this.replay = replay;
+        this.random = new Random(seed);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        long seed = 1L;
+        int hordes = 200;
+        int members = 50;
+        int ticks = 300;
+        int tick = 1000;
+        int map = 11;
+        int report = 60;
+        int stuck = 30;
+        int lod = 0;
+        int players = 0;
+        int merges = 0;
+        File replay = null;
+        
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            
+            switch (args[i]) {
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--hordes": hordes = Integer.parseInt(value); break;
+                case "--members": members = Integer.parseInt(value); break;
+                case "--ticks": ticks = Integer.parseInt(value); break;
+                case "--tick": tick = Integer.parseInt(value); break;
+                case "--map": map = Integer.parseInt(value); break;
+                case "--report": report = Integer.parseInt(value); break;
+                case "--stuck": stuck = Integer.parseInt(value); break;
+                case "--lod": lod = Integer.parseInt(value); break;
+                case "--players": players = Integer.parseInt(value); break;
+                case "--merges": merges = Integer.parseInt(value); break;
+                case "--replay": replay = new File(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        new Simulator(seed, hordes, members, ticks, tick, map, report, stuck, lod, players, merges, replay).run();
+    }
+    
+    public void run() throws Exception {
+        BenchFixture.quiet();
+        WanderingHorde.setClock(() -> time);
+        WanderingHorde.random.setSeed(seed);
+        BenchFixture.reset();
+        Options.lodDistance = lodDistance;
+        
+        if (replay != null) {
+            replay();
+            return;
+        }
+        
+        createMap();
+        createHordes();
+        createPlayers();
+        
+        System.out.printf("Simulating %d hordes with %d members on a %d x %d map for %d ticks of %d ms, seed %d.%n",
+            hordes.size(), members.size(), 1 << mapLevel, 1 << mapLevel, ticks, tickMillis, seed);
+        
+        if (lodDistance > 0)
+            System.out.printf("Full simulation within %d tiles of %d players.%n", lodDistance, players.size());
+        
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        reportStart = start;
+        reportAllocated = allocated;
+        
+        while (tick < ticks) {
+            time += tickMillis;
+            tick();
+        }
+        
+        finish(start, allocated);
+    }
+    
+    /**
+     * Plays back an input recording, on a flat map that is large enough for
+     * all recorded waypoints.
+     */
+    private void replay() throws Exception {
+        int[] max = new int[1];
+        
+        InputRecorder.replay(replay, new Playback() {
+            @Override
+            public void horde(long time, int hordeId, long seed, int size, Waypoints.WaypointBehaviour behaviour, TilePos[] points) {
+                for (TilePos point : points)
+                    max[0] = Math.max(max[0], Math.max(point.x, point.y));
+            }
+        });
+        
+        int level = 32 - Integer.numberOfLeadingZeros(max[0] + 64);
+        Server.surfaceMesh = new MeshIO(level);
+        
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        reportStart = start;
+        reportAllocated = allocated;
+        
+        System.out.printf("Replaying %s on a %d x %d map.%n", replay, 1 << level, 1 << level);
+        
+        int records = InputRecorder.replay(replay, new Playback() {
+            @Override
+            public void tick(long recorded) {
+                time = recorded;
+                Simulator.this.tick();
+            }
+            
+            @Override
+            public void horde(long recorded, int hordeId, long seed, int size, Waypoints.WaypointBehaviour behaviour, TilePos[] points) throws Exception {
+                time = recorded;
+                track(BenchFixture.createHorde(hordeId, seed, size, behaviour, points));
+            }
+            
+            @Override
+            public void night(long recorded, boolean night) {
+                WurmCalendar.night = night;
+            }
+            
+            @Override
+            public void died(long recorded, int hordeId, boolean anchor) {
+                Horde horde = byId.get(hordeId);
+                
+                if (horde == null || horde.anchorman == null)
+                    return;
+                
+                if (anchor || horde.satellites.isEmpty())
+                    horde.anchorman.die(false);
+                else
+                    horde.satellites.get(horde.satellites.size() - 1).die(false);
+            }
+        });
+        
+        System.out.printf("Replayed %d records with %d hordes.%n", records, hordes.size());
+        finish(start, allocated);
+    }
+    
+    private void finish(long start, long allocated) {
+        WanderingHorde.getPlanner().close();
+        
+        double seconds = (System.nanoTime() - start) / 1e9d;
+        
+        System.out.printf("Total: %d member-ticks in %.2f s, %,.0f member-ticks/s, %.1f MB allocated, %d stuck.%n",
+            memberTicks, seconds, memberTicks / seconds, (allocatedBytes() - allocated) / 1048576d, countStuck());
+        System.out.printf("Checksum of member positions: %016x%n", checksum());
+        
+        if (mergeTicks > 0)
+            System.out.printf("Merge checks: refused=%d lost templates=%d%n", refusedMerges, lostTemplates);
+        
+        WanderingHorde.getMetrics().dump().forEach(System.out::println);
+    }
+    
+    /**
+     * Fills the surface mesh with smooth random heights, tiles below 0 are
+     * water and can't be walked on.
+     */
+    private void createMap() {
+        int size = 1 << mapLevel;
+        int cell = 32;
+        int grid = size / cell + 2;
+        float[] corners = new float[grid * grid];
+        
+        for (int i = 0; i < corners.length; i++)
+            corners[i] = random.nextFloat() * 1000f - 150f;
+        
+        Server.surfaceMesh = new MeshIO(mapLevel);
+        
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int cx = x / cell;
+                int cy = y / cell;
+                float fx = (x % cell) / (float)cell;
+                float fy = (y % cell) / (float)cell;
+                
+                float top = corners[cy * grid + cx] * (1f - fx) + corners[cy * grid + cx + 1] * fx;
+                float bottom = corners[(cy + 1) * grid + cx] * (1f - fx) + corners[(cy + 1) * grid + cx + 1] * fx;
+                short height = (short)(top * (1f - fy) + bottom * fy);
+                
+                Server.surfaceMesh.setTile(x, y, (2 << 24) | (height & 0xFFFF));
+            }
+        }
+    }
+    
+    private void createHordes() throws Exception {
+        int size = 1 << mapLevel;
+        int margin = 64;
+        
+        for (int i = 0; i < hordeCount; i++) {
+            TilePos[] points = new TilePos[4];
+            
+            points[0] = landTile(margin + random.nextInt(size - margin * 2), margin + random.nextInt(size - margin * 2));
+            
+            for (int n = 1; n < points.length; n++)
+                points[n] = landTile(points[n - 1].x + random.nextInt(61) - 30, points[n - 1].y + random.nextInt(61) - 30);
+            
+            // merging hordes of different kinds joins their templates.
+            if (mergeTicks > 0)
+                track(BenchFixture.createHorde(new int[] { 11 + i % 3, 11 + i % 3 }, membersPerHorde, Waypoints.WaypointBehaviour.Loop, points));
+            else
+                track(BenchFixture.createHorde(membersPerHorde, Waypoints.WaypointBehaviour.Loop, points));
+        }
+    }
+    
+    /**
+     * Places the stand-in players on land, each walks to a random tile.
+     */
+    private void createPlayers() throws Exception {
+        int size = 1 << mapLevel;
+        
+        for (int i = 0; i < playerCount; i++) {
+            Player player = new Player();
+            TilePos start = landTile(random.nextInt(size), random.nextInt(size));
+            
+            player.getStatus().setPositionX((start.x << 2) + 2f);
+            player.getStatus().setPositionY((start.y << 2) + 2f);
+            Players.getInstance().addPlayer(player);
+            players.add(player);
+            playerTargets.add(landTile(random.nextInt(size), random.nextInt(size)));
+        }
+    }
+    
+    /**
+     * Adds a horde's members to the simulated creatures.
+     */
+    private void track(Horde horde) {
+        int first = members.size();
+        
+        hordes.add(horde);
+        byId.put(horde.id, horde);
+        members.add(horde.anchorman);
+        members.addAll(horde.satellites);
+        
+        lastTileX = Arrays.copyOf(lastTileX, members.size());
+        lastTileY = Arrays.copyOf(lastTileY, members.size());
+        lastProgress = Arrays.copyOf(lastProgress, members.size());
+        
+        for (int i = first; i < members.size(); i++) {
+            lastTileX[i] = members.get(i).getTileX();
+            lastTileY[i] = members.get(i).getTileY();
+            lastProgress[i] = tick;
+        }
+    }
+    
+    /**
+     * Searches for a land tile near a tile, in a growing square.
+     */
+    private TilePos landTile(int x, int y) {
+        int size = 1 << mapLevel;
+        
+        for (int radius = 0; radius < size; radius++) {
+            for (int n = 0; n < 16; n++) {
+                int tx = Math.max(1, Math.min(size - 2, x + random.nextInt(radius * 2 + 1) - radius));
+                int ty = Math.max(1, Math.min(size - 2, y + random.nextInt(radius * 2 + 1) - radius));
+                
+                if (passable(tx, ty))
+                    return TilePos.fromXY(tx, ty);
+            }
+        }
+        
+        return TilePos.fromXY(x, y);
+    }
+    
+    private boolean passable(int x, int y) {
+        int size = Server.surfaceMesh.getSize();
+        
+        return x >= 0 && y >= 0 && x < size && y < size && (short)(Server.surfaceMesh.getTile(x, y) & 0xFFFF) >= 0;
+    }
+    
+    /**
+     * Polls and moves all members once, and prints a report every report
+     * ticks.
+     */
+    private void tick() {
+        tick++;
+        
+        for (int i = 0; i < players.size(); i++)
+            walk(i);
+        
+        if (mergeTicks > 0 && tick % mergeTicks == 0)
+            merge();
+        
+        // the server poll applies the last plans and makes new ones.
+        WanderingHorde.getInterest().poll(time);
+        WanderingHorde.getStates().poll(time);
+        WanderingHorde.getPlanner().poll(time);
+        WanderingHorde.getTimers().poll(time);
+        
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            
+            if (member.isDead())
+                continue;
+            
+            WanderingHorde.poll(member);
+            memberTicks++;
+            move(member);
+            
+            if (member.getTileX() != lastTileX[i] || member.getTileY() != lastTileY[i]) {
+                lastTileX[i] = member.getTileX();
+                lastTileY[i] = member.getTileY();
+                lastProgress[i] = tick;
+            }
+        }
+        
+        if (tick % reportTicks != 0 && (replay != null || tick != ticks))
+            return;
+        
+        long now = System.nanoTime();
+        long bytes = allocatedBytes();
+        
+        System.out.printf("tick %5d: %,12.0f member-ticks/s, %8.1f MB/s allocated, %5d stuck, %d blocked moves%n",
+            tick, (memberTicks - reportMemberTicks) / ((now - reportStart) / 1e9d),
+            (bytes - reportAllocated) / 1048576d / ((now - reportStart) / 1e9d),
+            countStuck(), blockedMoves);
+        
+        reportStart = now;
+        reportAllocated = bytes;
+        reportMemberTicks = memberTicks;
+    }
+    
+    /**
+     * Moves the anchor of a random horde to another horde's anchor and
+     * merges them, and checks that the horde kept all templates.
+     */
+    private void merge() {
+        List<Horde> live = new ArrayList<>();
+        
+        for (Horde horde : hordes)
+            if (!horde.destroyed && !horde.forming && horde.anchorman != null)
+                live.add(horde);
+        
+        if (live.size() < 2)
+            return;
+        
+        Horde horde = live.get(random.nextInt(live.size()));
+        Horde other = live.get(random.nextInt(live.size()));
+        int[] templates = other.templates;
+        
+        if (other != horde)
+            BenchFixture.moveTo(other.anchorman, horde.anchorman.getTileX(), horde.anchorman.getTileY());
+        
+        if (!horde.merge(other)) {
+            refusedMerges++;
+            return;
+        }
+        
+        for (int template : templates)
+            if (Arrays.stream(horde.templates).noneMatch(x -> x == template))
+                lostTemplates++;
+    }
+    
+    /**
+     * Moves a stand-in player one tile towards its target, and picks a new
+     * target once it's there.
+     */
+    private void walk(int index) {
+        Player player = players.get(index);
+        TilePos target = playerTargets.get(index);
+        int x = player.getTileX() + Integer.signum(target.x - player.getTileX());
+        int y = player.getTileY() + Integer.signum(target.y - player.getTileY());
+        
+        player.getStatus().setPositionX((x << 2) + 2f);
+        player.getStatus().setPositionY((y << 2) + 2f);
+        
+        if (x == target.x && y == target.y)
+            playerTargets.set(index, landTile(random.nextInt(1 << mapLevel), random.nextInt(1 << mapLevel)));
+    }
+    
+    /**
+     * Stand-in for the server's creature movement, walks one tile per tick
+     * towards the first tile of the creature's path.
+     */
+    private void move(Member member) {
+        Path path = member.getStatus().getPath();
+        
+        if (path == null || path.isEmpty())
+            return;
+        
+        PathTile target = path.getFirst();
+        int oldX = member.getTileX();
+        int oldY = member.getTileY();
+        int x = oldX + Integer.signum(target.getTileX() - oldX);
+        int y = oldY + Integer.signum(target.getTileY() - oldY);
+        
+        if (!passable(x, y)) {
+            blockedMoves++;
+            return;
+        }
+        
+        member.getStatus().setPositionX((x << 2) + 2f);
+        member.getStatus().setPositionY((y << 2) + 2f);
+        
+        if (x == target.getTileX() && y == target.getTileY())
+            path.removeFirst();
+        
+        // like the server's movement, which tells the creature it moved.
+        member.moved((x - oldX) * 4, (y - oldY) * 4, 0, x - oldX, y - oldY);
+    }
+    
+    /**
+     * @return Members that haven't changed their tile for the stuck ticks,
+     * while they should be walking.
+     */
+    private int countStuck() {
+        int count = 0;
+        
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            
+            if (member.getBrain() != MemberStatus.WalkingToWaypoint && member.getBrain() != MemberStatus.Scattering)
+                continue;
+            
+            // parked members of abstract hordes don't move on purpose.
+            if (member.horde != null && member.horde.abstracted)
+                continue;
+            
+            if (tick - lastProgress[i] >= stuckTicks)
+                count++;
+        }
+        
+        return count;
+    }
+    
+    private long checksum() {
+        long hash = seed;
+        
+        for (Member member : members)
+            hash = hash * 31L + ((long)member.getTileX() << 16 | member.getTileY()) + member.getBrain().ordinal();
+        
+        return hash;
+    }
+    
+    /**
+     * Replay that ignores everything, override what's needed.
+     */
+    private static class Playback implements InputRecorder.Replay {
+        @Override
+        public void tick(long time) throws Exception {
+        }
+        
+        @Override
+        public void horde(long time, int hordeId, long seed, int size, Waypoints.WaypointBehaviour behaviour, TilePos[] points) throws Exception {
+        }
+        
+        @Override
+        public void night(long time, boolean night) throws Exception {
+        }
+        
+        @Override
+        public void died(long time, int hordeId, boolean anchor) throws Exception {
+        }
+    }
+    
+    /**
+     * @return Bytes allocated by this thread, or 0 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        
+        return 0L;
+    }
+}
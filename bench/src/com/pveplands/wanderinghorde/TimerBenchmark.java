@@ -0,0 +1,71 @@
+package com.pveplands.wanderinghorde;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduling and firing horde timers in the TimerWheel, with many timers
+ * pending up to an hour ahead. Each call moves one timer and turns the
+ * wheels by one tick, firing the timers that are due; fired timers schedule
+ * themselves again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerBenchmark {
+    @Param({ "1000", "1000000" })
+    public int timers;
+    
+    private final Random random = new Random(42L);
+    private TimerWheel wheel;
+    private TimerWheel.Timer[] pending;
+    private long time = 0L;
+    private int next = 0;
+    
+    @Setup
+    public void setup() {
+        WanderingHorde.setClock(() -> time);
+        
+        wheel = new TimerWheel();
+        pending = new TimerWheel.Timer[timers];
+        
+        for (int i = 0; i < timers; i++) {
+            TimerWheel.Timer[] self = new TimerWheel.Timer[1];
+            
+            self[0] = new TimerWheel.Timer(() -> wheel.schedule(self[0], time + 1 + random.nextInt(3600000)));
+            pending[i] = self[0];
+            wheel.schedule(pending[i], 1 + random.nextInt(3600000));
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        WanderingHorde.setClock(System::currentTimeMillis);
+    }
+    
+    @Benchmark
+    public int scheduleAndPoll() {
+        wheel.schedule(pending[next], time + 1 + random.nextInt(3600000));
+        next = (next + 1) % timers;
+        
+        time += Options.timerResolution;
+        wheel.poll(time);
+        
+        return wheel.countPending();
+    }
+}
@@ -0,0 +1,33 @@
+package com.wurmonline.math;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class TilePos {
+    public int x;
+    public int y;
+    
+    public static TilePos fromXY(int x, int y) {
+        TilePos pos = new TilePos();
+        pos.x = x;
+        pos.y = y;
+        
+        return pos;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TilePos && ((TilePos)other).x == x && ((TilePos)other).y == y;
+    }
+    
+    @Override
+    public int hashCode() {
+        return x * 31 + y;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("TilePos [x=%d, y=%d]", x, y);
+    }
+}
@@ -0,0 +1,15 @@
+package com.wurmonline.math;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Vector2f {
+    public float x;
+    public float y;
+    
+    public Vector2f(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+}
@@ -0,0 +1,40 @@
+package com.wurmonline.mesh;
+
+import com.wurmonline.math.TilePos;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class MeshIO {
+    private final int sizeLevel;
+    private final int[] data;
+    
+    /**
+     * @param sizeLevel The map is 2^sizeLevel tiles wide and high.
+     */
+    public MeshIO(int sizeLevel) {
+        this.sizeLevel = sizeLevel;
+        this.data = new int[1 << (sizeLevel << 1)];
+    }
+    
+    public int getTile(int x, int y) {
+        return data[(y << sizeLevel) | x];
+    }
+    
+    public int getTile(TilePos pos) {
+        return getTile(pos.x, pos.y);
+    }
+    
+    public void setTile(int x, int y, int tile) {
+        data[(y << sizeLevel) | x] = tile;
+    }
+    
+    public int getSize() {
+        return 1 << sizeLevel;
+    }
+    
+    public int getSizeLevel() {
+        return sizeLevel;
+    }
+}
@@ -0,0 +1,30 @@
+package com.wurmonline.server;
+
+import com.wurmonline.server.players.Player;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Players {
+    private static final Players instance = new Players();
+    private final List<Player> players = new ArrayList<>();
+    
+    public static Players getInstance() {
+        return instance;
+    }
+    
+    public Player[] getPlayers() {
+        return players.toArray(new Player[players.size()]);
+    }
+    
+    public void addPlayer(Player player) {
+        players.add(player);
+    }
+    
+    public void logoutPlayer(Player player) {
+        players.remove(player);
+    }
+}
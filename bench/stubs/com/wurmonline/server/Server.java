@@ -0,0 +1,34 @@
+package com.wurmonline.server;
+
+import com.wurmonline.mesh.MeshIO;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.Creatures;
+import com.wurmonline.server.creatures.NoSuchCreatureException;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Server {
+    private static final Server instance = new Server();
+    
+    public static MeshIO surfaceMesh = new MeshIO(10);
+    public static MeshIO caveMesh = new MeshIO(10);
+    
+    public static Server getInstance() {
+        return instance;
+    }
+    
+    public Creature getCreatureOrNull(long wurmId) {
+        return Creatures.getInstance().getCreatureOrNull(wurmId);
+    }
+    
+    public Creature getCreature(long wurmId) throws NoSuchCreatureException {
+        Creature creature;
+        
+        if ((creature = getCreatureOrNull(wurmId)) == null)
+            throw new NoSuchCreatureException();
+        
+        return creature;
+    }
+}
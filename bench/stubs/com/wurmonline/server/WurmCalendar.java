@@ -0,0 +1,22 @@
+package com.wurmonline.server;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class WurmCalendar {
+    public static long currentTime = 0L;
+    
+    /**
+     * Set by the benchmark or simulator, it is always day by default.
+     */
+    public static boolean night = false;
+    
+    public static boolean isNight() {
+        return night;
+    }
+    
+    public static void tickSecond() {
+        currentTime++;
+    }
+}
@@ -0,0 +1,15 @@
+package com.wurmonline.server.behaviours;
+
+import com.wurmonline.server.creatures.Creature;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class CreatureBehaviour {
+    public static void blinkTo(Creature creature, float posX, float posY, int layer, int posZDirts, long bridgeId, int floorLevel) {
+        creature.getStatus().setPositionX(posX);
+        creature.getStatus().setPositionY(posY);
+        creature.getStatus().setPath(null);
+    }
+}
@@ -0,0 +1,25 @@
+package com.wurmonline.server.creatures;
+
+import com.wurmonline.server.players.Player;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Communicator {
+    private final Player player;
+    
+    public Communicator(Player player) {
+        this.player = player;
+    }
+    
+    public Player getPlayer() {
+        return player;
+    }
+    
+    public void sendNormalServerMessage(String message) {
+    }
+    
+    public void sendAlertServerMessage(String message) {
+    }
+}
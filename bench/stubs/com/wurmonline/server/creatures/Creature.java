@@ -0,0 +1,189 @@
+package com.wurmonline.server.creatures;
+
+import com.wurmonline.server.creatures.ai.CreatureAIData;
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.LinkedList;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Creature {
+    private static long nextId = 1L;
+    
+    private final long wurmId;
+    private final CreatureTemplate template;
+    private final CreatureStatus status = new CreatureStatus();
+    private CreatureAIData aiData;
+    private Creature target;
+    private boolean surface = true;
+    private boolean fighting = false;
+    private boolean dead = false;
+    
+    public Creature() throws Exception {
+        this(null, nextId++);
+    }
+    
+    public Creature(CreatureTemplate template) throws Exception {
+        this(template, nextId++);
+    }
+    
+    public Creature(long wurmId) throws Exception {
+        this(null, wurmId);
+    }
+    
+    private Creature(CreatureTemplate template, long wurmId) {
+        this.template = template;
+        this.wurmId = wurmId;
+        nextId = Math.max(nextId, wurmId + 1);
+        Creatures.getInstance().addCreature(this);
+    }
+    
+    /**
+     * Creates horde members, this method is added to the server by the mod.
+     */
+    public static Creature doNewHordemember(int templateid, boolean createPossessions, float aPosX, float aPosY, float aRot, int layer, String name, byte gender, byte kingdom, byte ctype, boolean reborn, byte age) throws Exception {
+        throw new UnsupportedOperationException("Added to the server by the mod at runtime.");
+    }
+    
+    public long getWurmId() {
+        return wurmId;
+    }
+    
+    public CreatureTemplate getTemplate() {
+        return template;
+    }
+    
+    public String getName() {
+        return template == null ? "creature" : template.getName();
+    }
+    
+    public String getHitSound() {
+        return "sound.combat.hit";
+    }
+    
+    public CreatureStatus getStatus() {
+        return status;
+    }
+    
+    public CreatureAIData getCreatureAIData() {
+        if (aiData == null) {
+            aiData = new CreatureAIData();
+            aiData.setCreature(this);
+        }
+        
+        return aiData;
+    }
+    
+    public float getPosX() {
+        return status.getPositionX();
+    }
+    
+    public float getPosY() {
+        return status.getPositionY();
+    }
+    
+    public int getTileX() {
+        return (int)status.getPositionX() >> 2;
+    }
+    
+    public int getTileY() {
+        return (int)status.getPositionY() >> 2;
+    }
+    
+    public boolean isOnSurface() {
+        return surface;
+    }
+    
+    public int getLayer() {
+        return surface ? 0 : -1;
+    }
+    
+    public int getPosZDirts() {
+        return 0;
+    }
+    
+    public long getBridgeId() {
+        return -10L;
+    }
+    
+    public int getFloorLevel() {
+        return 0;
+    }
+    
+    public boolean isWithinTileDistanceTo(int tileX, int tileY, int heightOffset, int maxDistance) {
+        return Math.abs(getTileX() - tileX) <= maxDistance && Math.abs(getTileY() - tileY) <= maxDistance;
+    }
+    
+    public boolean isWithinDistanceTo(Creature creature, float distance) {
+        float x = creature.getPosX() - getPosX();
+        float y = creature.getPosY() - getPosY();
+        
+        return x * x + y * y <= distance * distance;
+    }
+    
+    /**
+     * Sets a path with the single target tile, walking it is up to whoever
+     * moves the creatures.
+     */
+    public void startPathingToTile(PathTile tile) {
+        LinkedList<PathTile> tiles = new LinkedList<>();
+        tiles.add(tile);
+        
+        status.setPath(new Path(tiles));
+    }
+    
+    public void rotateRandom(float rotation, int modifier) {
+        status.setRotation(rotation + modifier % 360);
+    }
+    
+    public void moved(int diffX, int diffY, int diffZ, int diffTileX, int diffTileY) {
+    }
+    
+    public Creature getTarget() {
+        return target;
+    }
+    
+    public void setTarget(long targetId, boolean switchTarget) {
+        target = Creatures.getInstance().getCreatureOrNull(targetId);
+    }
+    
+    public void attackTarget() {
+        fighting = target != null;
+    }
+    
+    public boolean isFighting() {
+        return fighting;
+    }
+    
+    public boolean isDead() {
+        return dead;
+    }
+    
+    public boolean isPlayer() {
+        return false;
+    }
+    
+    public int getPower() {
+        return 0;
+    }
+    
+    public void hunt() {
+    }
+    
+    public void die(boolean freeDeath) {
+        dead = true;
+        Creatures.getInstance().removeCreature(this);
+    }
+    
+    public void destroy() {
+        dead = true;
+        Creatures.getInstance().removeCreature(this);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Creature [id=%d, name=%s, tile=%d,%d]", wurmId, getName(), getTileX(), getTileY());
+    }
+}
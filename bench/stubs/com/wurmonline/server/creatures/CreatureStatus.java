@@ -0,0 +1,46 @@
+package com.wurmonline.server.creatures;
+
+import com.wurmonline.server.creatures.ai.Path;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class CreatureStatus {
+    private Path path;
+    private float positionX;
+    private float positionY;
+    private float rotation;
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public void setPath(Path path) {
+        this.path = path;
+    }
+    
+    public float getPositionX() {
+        return positionX;
+    }
+    
+    public void setPositionX(float positionX) {
+        this.positionX = positionX;
+    }
+    
+    public float getPositionY() {
+        return positionY;
+    }
+    
+    public void setPositionY(float positionY) {
+        this.positionY = positionY;
+    }
+    
+    public float getRotation() {
+        return rotation;
+    }
+    
+    public void setRotation(float rotation) {
+        this.rotation = rotation;
+    }
+}
@@ -0,0 +1,23 @@
+package com.wurmonline.server.creatures;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class CreatureTemplate {
+    private final int templateId;
+    private final String name;
+    
+    public CreatureTemplate(int templateId, String name) {
+        this.templateId = templateId;
+        this.name = name;
+    }
+    
+    public int getTemplateId() {
+        return templateId;
+    }
+    
+    public String getName() {
+        return name;
+    }
+}
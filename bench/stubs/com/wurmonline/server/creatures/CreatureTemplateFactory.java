@@ -0,0 +1,39 @@
+package com.wurmonline.server.creatures;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class CreatureTemplateFactory {
+    private static final CreatureTemplateFactory instance = new CreatureTemplateFactory();
+    private final Map<Integer, CreatureTemplate> templates = new TreeMap<>();
+    
+    public static CreatureTemplateFactory getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Unknown Ids are created on first use, so any template Id works.
+     */
+    public CreatureTemplate getTemplate(int templateId) throws NoSuchCreatureTemplateException {
+        if (templateId <= 0)
+            throw new NoSuchCreatureTemplateException();
+        
+        return templates.computeIfAbsent(templateId, x -> new CreatureTemplate(x, "creature " + x));
+    }
+    
+    public CreatureTemplate getTemplate(String name) throws NoSuchCreatureTemplateException {
+        for (CreatureTemplate template : templates.values())
+            if (template.getName().equalsIgnoreCase(name))
+                return template;
+        
+        throw new NoSuchCreatureTemplateException();
+    }
+    
+    public CreatureTemplate[] getTemplates() {
+        return templates.values().toArray(new CreatureTemplate[templates.size()]);
+    }
+}
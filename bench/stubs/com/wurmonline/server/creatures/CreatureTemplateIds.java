@@ -0,0 +1,17 @@
+package com.wurmonline.server.creatures;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public interface CreatureTemplateIds {
+    int COW_BROWN_CID = 3;
+    int TROLL_CID = 11;
+    int BULL_CID = 49;
+    int DEMON_SOL_CID = 72;
+    int BISON_CID = 82;
+    int HELL_HORSE_CID = 83;
+    int HELL_HOUND_CID = 84;
+    int HELL_SCORPION_CID = 85;
+    int DOLPHIN_CID = 91;
+}
@@ -0,0 +1,37 @@
+package com.wurmonline.server.creatures;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Creatures {
+    private static final Creatures instance = new Creatures();
+    private final Map<Long, Creature> creatures = new HashMap<>();
+    
+    public static Creatures getInstance() {
+        return instance;
+    }
+    
+    public Creature getCreatureOrNull(long wurmId) {
+        return creatures.get(wurmId);
+    }
+    
+    public void addCreature(Creature creature) {
+        creatures.put(creature.getWurmId(), creature);
+    }
+    
+    public void removeCreature(Creature creature) {
+        creatures.remove(creature.getWurmId());
+    }
+    
+    public int loadAllCreatures() throws NoSuchCreatureException {
+        return creatures.size();
+    }
+    
+    public int getNumberOfCreatures() {
+        return creatures.size();
+    }
+}
@@ -0,0 +1,29 @@
+package com.wurmonline.server.creatures.ai;
+
+import com.wurmonline.server.creatures.Creature;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public abstract class CreatureAI {
+    protected abstract boolean pollMovement(Creature creature, long delta);
+    
+    protected abstract boolean pollAttack(Creature creature, long delta);
+    
+    protected abstract boolean pollBreeding(Creature creature, long delta);
+    
+    public abstract CreatureAIData createCreatureAIData();
+    
+    public abstract void creatureCreated(Creature creature);
+    
+    public boolean pollCreature(Creature creature, long delta) {
+        boolean result = pollMovement(creature, delta) || pollAttack(creature, delta) || pollBreeding(creature, delta);
+        
+        creature.getCreatureAIData().setLastPollTime(System.currentTimeMillis());
+        return result;
+    }
+    
+    public void creatureDied(Creature creature) {
+    }
+}
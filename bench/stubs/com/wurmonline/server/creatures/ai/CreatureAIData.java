@@ -0,0 +1,28 @@
+package com.wurmonline.server.creatures.ai;
+
+import com.wurmonline.server.creatures.Creature;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class CreatureAIData {
+    private Creature creature;
+    private long lastPollTime = System.currentTimeMillis();
+    
+    public Creature getCreature() {
+        return creature;
+    }
+    
+    public void setCreature(Creature creature) {
+        this.creature = creature;
+    }
+    
+    public long getLastPollTime() {
+        return lastPollTime;
+    }
+    
+    public void setLastPollTime(long lastPollTime) {
+        this.lastPollTime = lastPollTime;
+    }
+}
@@ -0,0 +1,43 @@
+package com.wurmonline.server.creatures.ai;
+
+import java.util.LinkedList;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Path {
+    private final LinkedList<PathTile> tiles;
+    
+    public Path(LinkedList<PathTile> tiles) {
+        this.tiles = tiles;
+    }
+    
+    public LinkedList<PathTile> getPathTiles() {
+        return tiles;
+    }
+    
+    public PathTile getFirst() {
+        return tiles.getFirst();
+    }
+    
+    public PathTile getTargetTile() {
+        return tiles.getLast();
+    }
+    
+    public boolean isEmpty() {
+        return tiles.isEmpty();
+    }
+    
+    public int getSize() {
+        return tiles.size();
+    }
+    
+    public void removeFirst() {
+        tiles.removeFirst();
+    }
+    
+    public void clear() {
+        tiles.clear();
+    }
+}
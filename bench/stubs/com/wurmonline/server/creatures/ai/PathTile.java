@@ -0,0 +1,41 @@
+package com.wurmonline.server.creatures.ai;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class PathTile {
+    private final int tileX;
+    private final int tileY;
+    private final int tile;
+    private final boolean surface;
+    private final int floorLevel;
+    
+    public PathTile(int tileX, int tileY, int tile, boolean surface, int floorLevel) {
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.tile = tile;
+        this.surface = surface;
+        this.floorLevel = floorLevel;
+    }
+    
+    public int getTileX() {
+        return tileX;
+    }
+    
+    public int getTileY() {
+        return tileY;
+    }
+    
+    public int getTile() {
+        return tile;
+    }
+    
+    public boolean isOnSurface() {
+        return surface;
+    }
+    
+    public int getFloorLevel() {
+        return floorLevel;
+    }
+}
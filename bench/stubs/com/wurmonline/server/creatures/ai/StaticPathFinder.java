@@ -0,0 +1,29 @@
+package com.wurmonline.server.creatures.ai;
+
+import com.wurmonline.server.Server;
+import com.wurmonline.server.creatures.Creature;
+import java.util.LinkedList;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name. Instead of
+ * A* it returns the straight line between both tiles, one tile per step, up
+ * to maxDistance tiles long.
+ */
+public class StaticPathFinder extends PathFinder {
+    public StaticPathFinder(boolean ignoreWater) {
+    }
+    
+    public Path findPath(Creature creature, int startX, int startY, int endX, int endY, boolean surface, int maxDistance) throws Exception {
+        LinkedList<PathTile> tiles = new LinkedList<>();
+        int x = startX;
+        int y = startY;
+        
+        while ((x != endX || y != endY) && tiles.size() < maxDistance) {
+            x += Integer.signum(endX - x);
+            y += Integer.signum(endY - y);
+            tiles.add(new PathTile(x, y, Server.surfaceMesh.getTile(x, y), surface, 0));
+        }
+        
+        return new Path(tiles);
+    }
+}
@@ -0,0 +1,13 @@
+package com.wurmonline.server.items;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Item {
+    private short temperature;
+    
+    public void setTemperature(short temperature) {
+        this.temperature = temperature;
+    }
+}
@@ -0,0 +1,11 @@
+package com.wurmonline.server.items;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class ItemFactory {
+    public static Item createItem(int templateId, float qualityLevel, float posX, float posY, float rotation, boolean surface, byte rarity, byte auxData, long bridgeId, String creator, byte material) throws Exception {
+        return new Item();
+    }
+}
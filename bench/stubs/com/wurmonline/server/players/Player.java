@@ -0,0 +1,25 @@
+package com.wurmonline.server.players;
+
+import com.wurmonline.server.creatures.Communicator;
+import com.wurmonline.server.creatures.Creature;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Player extends Creature {
+    private final Communicator communicator = new Communicator(this);
+    
+    public Player() throws Exception {
+        super();
+    }
+    
+    public Communicator getCommunicator() {
+        return communicator;
+    }
+    
+    @Override
+    public boolean isPlayer() {
+        return true;
+    }
+}
@@ -0,0 +1,10 @@
+package com.wurmonline.server.sounds;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class SoundPlayer {
+    public static void playSound(String sound, int tileX, int tileY, boolean surface, float offsetZ) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.wurmonline.server.zones;
+
+import com.wurmonline.server.creatures.Creature;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class VolaTile {
+    private static final Creature[] emptyCreatures = new Creature[0];
+    
+    public Creature[] getCreatures() {
+        return emptyCreatures;
+    }
+}
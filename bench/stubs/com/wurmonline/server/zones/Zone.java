@@ -0,0 +1,8 @@
+package com.wurmonline.server.zones;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name, with only
+ * what the mod uses, so benchmarks and the simulator run without a server.
+ */
+public class Zone {
+}
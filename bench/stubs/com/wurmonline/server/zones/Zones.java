@@ -0,0 +1,16 @@
+package com.wurmonline.server.zones;
+
+import com.wurmonline.server.Server;
+
+/**
+ * Stand-in for the Wurm Unlimited server class of the same name. There are no
+ * tiles with creatures on them, so threat scans find nothing.
+ */
+public class Zones {
+    public static int worldTileSizeX = Server.surfaceMesh.getSize();
+    public static int worldTileSizeY = Server.surfaceMesh.getSize();
+    
+    public static VolaTile getTileOrNull(int tileX, int tileY, boolean surface) {
+        return null;
+    }
+}
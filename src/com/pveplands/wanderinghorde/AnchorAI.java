@@ -1,9 +1,8 @@
 package com.pveplands.wanderinghorde;
 
+import com.pveplands.wanderinghorde.HordeLog.Category;
 import com.wurmonline.math.TilePos;
 import com.wurmonline.math.Vector2f;
-import com.wurmonline.server.Server;
-import com.wurmonline.server.WurmCalendar;
 import com.wurmonline.server.creatures.Creature;
 import com.wurmonline.server.creatures.ai.CreatureAI;
 import com.wurmonline.server.creatures.ai.CreatureAIData;
@@ -27,8 +26,7 @@ public class AnchorAI extends CreatureAI {
         
         creature.getStatus().setPath(WanderingHorde.getEmptyPath());
         
-        if (WanderingHorde.logger.isLoggable(Level.FINE))
-            WanderingHorde.logger.fine("Setting empty path for anchor.");
+        HordeLog.log(Level.FINE, Category.AI, "Setting empty path for anchor.");
     }
     
     @Override
@@ -39,21 +37,25 @@ public class AnchorAI extends CreatureAI {
         Horde horde;
         
         if ((horde = WanderingHorde.inHorde(creature)) == null) {
-            WanderingHorde.logger.warning(String.format("Polling movement for anchor AI but is not in horde? %s", creature));
+            HordeLog.log(Level.WARNING, Category.AI, "Polling movement for anchor AI but is not in horde? %s", creature);
             creature.getStatus().setPath(WanderingHorde.getEmptyPath());
             return false;
         }
 
         if (horde.destroyed) {
-            WanderingHorde.logger.warning(String.format("Polling movement for anchor in destroyed horde: %s.", horde));
+            HordeLog.log(Level.WARNING, Category.AI, "Polling movement for anchor in destroyed horde: %s.", horde);
             return false;
         }
         
-        horde.poll();
+        // don't start moving a half spawned horde.
+        if (horde.forming) {
+            hold(creature, false);
+            return false;
+        }
         
-        long current = System.currentTimeMillis();
+        long current = WanderingHorde.now();
         
-        if (current - horde.lastMovement < Options.anchorMovement) {
+        if (current - horde.lastMovement < WanderingHorde.getLoad().anchorMovement()) {
             hold(creature, true);
             return false;
         }
@@ -63,27 +65,25 @@ public class AnchorAI extends CreatureAI {
         Member anchorman;
         
         if ((anchorman = horde.isAnchor(creature)) == null) {
-            WanderingHorde.logger.warning(String.format("Anchor does not match horde anchor? %s, %s, %s", horde, horde.anchorman, creature));
+            HordeLog.log(Level.WARNING, Category.AI, "Anchor does not match horde anchor? %s, %s, %s", horde, horde.anchorman, creature);
             return false;
         }
         
         if (anchorman.isDead()) {
-            WanderingHorde.logger.warning(String.format("Polling destroyed anchor %s in %s.", anchorman, horde));
+            HordeLog.log(Level.WARNING, Category.AI, "Polling destroyed anchor %s in %s.", anchorman, horde);
             return false;
         }
         
-        if (WanderingHorde.logger.isLoggable(Level.FINE))
-            WanderingHorde.logger.fine(String.format("Polling movement for anchor in horde: %s, %s", horde, anchorman));
+        HordeLog.log(Level.FINE, Category.AI, "Polling movement for anchor in horde: %s, %s", horde, anchorman);
 
         if (anchorman.checkHordeCombat()) {
-            WanderingHorde.logger.warning("Anchor involved in combat.");
+            HordeLog.log(Level.INFO, Category.COMBAT, "Anchor %s involved in combat.", anchorman);
         }
         
         Path path;
         
         if ((path = anchorman.getStatus().getPath()) != null && !path.isEmpty()) {
-            if (WanderingHorde.logger.isLoggable(Level.FINE))
-                WanderingHorde.logger.fine(String.format("Anchor is still pathing, skipping movement poll: %s, %s", anchorman, horde));
+            HordeLog.log(Level.FINE, Category.AI, "Anchor is still pathing, skipping movement poll: %s, %s", anchorman, horde);
             
             return false;
         }
@@ -91,111 +91,59 @@ public class AnchorAI extends CreatureAI {
         HordePath hp = horde.waypoints.path();
         
 switchbreak:
-        switch (anchorman.brain) {
+        switch (anchorman.getBrain()) {
             case Idle:
                 hold(anchorman, false);
                 break;
             case WalkingToTarget:
-                if (anchorman.walkingTarget == null || anchorman.walkingTarget.isDead()) {
-                    anchorman.brain = MemberStatus.WalkingToWaypoint;
-                    anchorman.walkingTarget = null;
+                if (anchorman.getWalkingTarget() == null || anchorman.getWalkingTarget().isDead()) {
+                    horde.targets.release(anchorman);
+                    WanderingHorde.getStates().fire(anchorman, StateMachine.Trigger.TargetLost);
+                    anchorman.setWalkingTarget(null);
                     break;
                 }
                 
-                if (anchorman.isWithinDistanceTo(anchorman.walkingTarget, 4f)) {
+                // approach moves are issued by the horde's target allocator.
+                if (anchorman.isWithinDistanceTo(anchorman.getWalkingTarget(), 4f)) {
                     hold(anchorman, false);
-                    anchorman.setTarget(anchorman.walkingTarget.getWurmId(), true);
+                    anchorman.setTarget(anchorman.getWalkingTarget().getWurmId(), true);
                     anchorman.attackTarget();
                 }
-                else {
-                    int targetDistX = anchorman.walkingTarget.getTileX() - anchorman.getTileX() - 1;
-                    int targetDistY = anchorman.walkingTarget.getTileY() - anchorman.getTileY() - 1;
-                    boolean surface = anchorman.isOnSurface();
-                    int toX = anchorman.getTileX() + targetDistX;
-                    int toY = anchorman.getTileY() + targetDistY;
-                    int tile = (surface ? Server.surfaceMesh.getTile(toX, toY) : Server.caveMesh.getTile(toX, toY));
-                    anchorman.startPathingToTile(new PathTile(toX, toY, tile, surface, anchorman.getFloorLevel()));
-                }
                 break;
             case WaitingOneTurn:
+                // the horde's pause timer walks on.
                 hold(anchorman, false);
-                
-                hp.index = 0;
-                
-                if (!horde.waypoints.hasNext()) {
-                    WanderingHorde.logger.warning(String.format("No more waypoints for %s.", horde));
-                    horde.destroy();
-                    break;
-                }
-                
-                horde.moving = true;
-                horde.unscatter();
-                horde.walk();
-                
-                WanderingHorde.logger.info(String.format("Horde moving to next waypoint at %s.", horde.waypoints.next()));
                 break;
             case WaitingForSatellites:
-                if (horde.allNearDestination(Options.scatterDistance)) {
-                    WanderingHorde.logger.info("All satellites within scatter distance, waiting one turn.");
-
-                    horde.reachedWaypoint = Long.MAX_VALUE;
-                    
-                    horde.scatter();
-                    horde.moving = false;
-                    horde.lastMovement = current + Options.pauseAtWaypoint;
-                    hold(anchorman, false);
-                    
-                    anchorman.brain = MemberStatus.WaitingOneTurn;
-                }
-
-                else {
-                    WanderingHorde.logger.info("Not all satellites within scatter distance");
-                }
-                
+                // the squads report when they arrived, see Horde.checkGathered().
                 break;
             case WalkingToWaypoint:
-                if (WurmCalendar.isNight()) {
-                    WanderingHorde.logger.warning(String.format("Anchor will camp tonight (%s, %s).", anchorman, horde));
-                    anchorman.brain = MemberStatus.CampAtNight;
-                    horde.satellites.forEach(x -> { x.brain = MemberStatus.GatherAroundAnchor; });
-                    hold(anchorman, false);
-                    break;
-                }
-                
-                if (hp.nearDestination(anchorman, 0)) {
-                    WanderingHorde.logger.info(String.format("Anchor has reached the waypoint %s. (%s, %s)", hp.end, anchorman, horde));
-                    anchorman.horde.reachedWaypoint = System.currentTimeMillis();
-                    anchorman.brain = MemberStatus.WaitingForSatellites;
-                    hold(anchorman, false);
-                    break;
-                }
-                
-                if ((path = anchorman.getStatus().getPath()) != null && !path.isEmpty())
-                    break; // is pathing.
 
-                float closest = Float.MAX_VALUE;
-                for (Member satellite : horde.satellites.toArray(Horde.emptyMembers))
-                    closest = Math.min(closest, satellite.distanceTo(anchorman));
+                // the followers keep up with the squad leaders, so only those are waited for.
+                float closest = horde.closestSquad();
                 
-                if (WanderingHorde.logger.isLoggable(Level.FINER))
-                    WanderingHorde.logger.finer(String.format("Closest satellite is %.2f", closest));
+                if (HordeLog.isLoggable(Level.FINER, Category.AI))
+                    HordeLog.log(Level.FINER, Category.AI, "Closest squad leader is %.2f", closest);
                 
                 if (closest >= Options.anchorWaitDistance) {
                     hold(anchorman, false);
-                    WanderingHorde.logger.info("Anchor is waiting for closest satellite.");
+                    HordeLog.log(Level.FINE, Category.AI, "Anchor is waiting for closest squad leader.");
                     break;
                 }
                 
                 TilePos dest = TilePos.fromXY(hp.current().getTileX(), hp.current().getTileY());
 
                 if (anchorman.isWithinTileDistanceTo(dest.x, dest.y, 0, 0)) {
-                    WanderingHorde.logger.info(String.format("Anchorman has reached sub-point %s.", dest));
+                    HordeLog.log(Level.FINE, Category.AI, "Anchorman has reached sub-point %s.", dest);
                     hp.advance(Options.anchorAdvance);
                 }
                 
                 if (anchorman.isWithinTileDistanceTo(hp.current().getTileX(), hp.current().getTileY(), 0, 0)) {
-                    WanderingHorde.logger.info("Stopping anchor to pathfind on same tile.");
+                    HordeLog.log(Level.FINE, Category.AI, "Stopping anchor to pathfind on same tile.");
                     hold(anchorman, false);
+                    
+                    // already where the path leads, e.g. after a teleport.
+                    horde.pathFinished(anchorman);
                     break;
                 }
                 
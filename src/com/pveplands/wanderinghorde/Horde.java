@@ -1,5 +1,6 @@
 package com.pveplands.wanderinghorde;
 
+import com.pveplands.wanderinghorde.HordeLog.Category;
 import com.wurmonline.math.TilePos;
 import com.wurmonline.math.Vector2f;
 import com.wurmonline.server.creatures.Communicator;
@@ -16,20 +17,34 @@ import com.wurmonline.server.sounds.SoundPlayer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.logging.Level;
 
 public class Horde {
     private static int nextId = 0;
     protected static final Member[] emptyMembers = new Member[0];
+    protected static final Squad[] emptySquads = new Squad[0];
     static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
     
     Waypoints waypoints;
     Member anchorman;
     List<Member> satellites;
+    
+    /**
+     * Squads of the satellites, each led by one of them, see Squad.
+     */
+    final List<Squad> squads = new ArrayList<>();
+    
+    /**
+     * AI state of the anchor and satellites, see Member.row().
+     */
+    final MemberTable table = new MemberTable();
     Player creator;
+    String creatorName;
     Date created;
     int id;
     int size;
@@ -38,17 +53,93 @@ public class Horde {
     String[] sounds;
     boolean campfires = false;
     
+    /**
+     * Seed of the horde's random numbers, saved with the horde and recorded
+     * by the InputRecorder, so the horde's decisions can be replayed.
+     */
+    long seed;
+    
+    /**
+     * Random numbers of this horde only, for spawn positions, templates,
+     * scattering, path deviation and sounds.
+     */
+    SplittableRandom random;
+    
+    /**
+     * Hostile creatures around the horde, shared by all members.
+     */
+    final ThreatScan threats = new ThreatScan(this);
+    
+    /**
+     * Spreads the horde's attackers across the hostile creatures.
+     */
+    final TargetAllocator targets = new TargetAllocator(this);
+    
     protected boolean spawned = false;
     protected boolean moving = false;
     protected boolean destroyed = false;
     protected boolean scattered = false;
     
-    long lastMovement = System.currentTimeMillis();
-    long lastSound = System.currentTimeMillis();
+    /**
+     * True while satellites are still being spawned. The horde does not move
+     * until it has formed completely.
+     */
+    protected boolean forming = false;
+    
+    /**
+     * Whether walk() was called while the horde was still forming.
+     */
+    protected boolean walkWhenFormed = false;
+    
+    /**
+     * True while no player is near and the horde only moves as a token along
+     * its path, see LevelOfDetail.
+     */
+    protected boolean abstracted = false;
+    
+    /**
+     * Next time in milliseconds LevelOfDetail looks for players near the
+     * horde.
+     */
+    long nextLodCheck = 0L;
+    
+    /**
+     * Next time in milliseconds the HordePlanner plans the satellites.
+     */
+    long nextPlan = 0L;
+    
+    /**
+     * True while the horde waits and its members aren't polled, see
+     * HordeRest.
+     */
+    protected boolean resting = false;
+    
+    /**
+     * Next time in milliseconds a resting horde checks if it wakes up.
+     */
+    long wakeAt = 0L;
+    
+    long lastMovement = WanderingHorde.now();
     
     long reachedWaypoint = Long.MAX_VALUE;
     long teleportTimeout = 120000L;
     
+    /**
+     * True once the teleport timeout since reaching the waypoint has passed,
+     * satellites that are still missing are teleported or expelled.
+     */
+    boolean overdue = false;
+    
+    /**
+     * Timers of the horde in WanderingHorde.getTimers(), they only run while
+     * the horde is added.
+     */
+    final TimerWheel.Timer soundTimer = new TimerWheel.Timer(this::sound);
+    final TimerWheel.Timer stragglerTimer = new TimerWheel.Timer(() -> { overdue = true; checkGathered(); });
+    final TimerWheel.Timer pauseTimer = new TimerWheel.Timer(this::pauseOver);
+    final TimerWheel.Timer replenishTimer = new TimerWheel.Timer(() -> WanderingHorde.getReplenisher().replenish(this, WanderingHorde.now()));
+    final TimerWheel.Timer planTimer = new TimerWheel.Timer(() -> WanderingHorde.getPlanner().submit(this, WanderingHorde.now()));
+    
     /**
      * Whether or not to respawn killed creatures and insert into the horde.
      */
@@ -68,7 +159,13 @@ public class Horde {
     /**
      * Last time in milliseconds when creatures respawned.
      */
-    long lastReplenish = System.currentTimeMillis();
+    long lastReplenish = WanderingHorde.now();
+    
+    /**
+     * Time in milliseconds when the horde is replenished next, or 0 if it
+     * hasn't been scheduled yet. See Replenisher.
+     */
+    long nextReplenish = 0L;
     
     /**
      * Creates a new instance of Horde.
@@ -92,10 +189,66 @@ public class Horde {
         
         this.templates = templates;
         this.creator = creator;
+        this.creatorName = creator.getName();
         this.created = new Date();
         this.size = size;
         satellites = new ArrayList<>();
         id = ++nextId;
+        setSeed(WanderingHorde.nextSeed());
+    }
+    
+    /**
+     * Creates a horde that was loaded from the HordeStore, the creator may
+     * not be online.
+     * @param id Id of the saved horde.
+     * @param creatorName Name of the player who created the horde.
+     * @param created Time in milliseconds when the horde was created.
+     * @param size Size of the horde.
+     * @param templates Template Ids of the horde, see Horde(Player, int, int...).
+     */
+    protected Horde(int id, String creatorName, long created, int size, int[] templates) {
+        this.id = id;
+        this.creatorName = creatorName;
+        this.created = new Date(created);
+        this.size = size;
+        this.templates = templates;
+        satellites = new ArrayList<>();
+        nextId = Math.max(nextId, id);
+        setSeed(WanderingHorde.nextSeed());
+    }
+    
+    /**
+     * Creates a horde that splits off another one, with the same creator,
+     * templates and replenishing, see split().
+     * @param parent Horde that is split.
+     */
+    private Horde(Horde parent) {
+        this.creator = parent.creator;
+        this.creatorName = parent.creatorName;
+        this.created = new Date();
+        this.templates = parent.templates;
+        this.creatureTemplates = parent.creatureTemplates;
+        this.sounds = parent.sounds;
+        this.replenish = parent.replenish;
+        this.replenishQuantity = parent.replenishQuantity;
+        this.replenishInterval = parent.replenishInterval;
+        this.teleportTimeout = parent.teleportTimeout;
+        this.spawned = true;
+        this.moving = parent.moving;
+        this.scattered = parent.scattered;
+        this.lastMovement = parent.lastMovement;
+        satellites = new ArrayList<>();
+        id = ++nextId;
+        setSeed(parent.random.nextLong());
+    }
+    
+    /**
+     * Starts the horde's random numbers over from a seed.
+     * @param seed Seed, e.g. a saved or recorded one.
+     */
+    protected final void setSeed(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
     }
     
     /**
@@ -135,7 +288,7 @@ public class Horde {
             
             creature = anchorman;
         }
-        else creature = satellites.get(WanderingHorde.random.nextInt(satellites.size()));
+        else creature = satellites.get(random.nextInt(satellites.size()));
 
         SoundPlayer.playSound(creature.getHitSound(), creature.getTileX(), creature.getTileY(), creature.isOnSurface(), .3f);
         creature = null;
@@ -152,27 +305,45 @@ public class Horde {
             return false;
         }
 
-        List<Member> list = new ArrayList<>(satellites);
-        list.sort((left, right) -> Float.compare(left.distanceTo(anchorman), right.distanceTo(anchorman)));
+        // only the squad leaders are close to the anchor's path.
+        Member closest = null;
+        float closestDistance = Float.MAX_VALUE;
+        
+        for (Squad squad : squads) {
+            float next = squad.leader.distanceTo(anchorman);
+            
+            if (closest == null || next < closestDistance) {
+                closest = squad.leader;
+                closestDistance = next;
+            }
+        }
         
         // waypoint reference was the anchorman?
         boolean anchormanRef = waypoints.referenceCreature != null && waypoints.referenceCreature.equals(anchorman);
-
-        WanderingHorde.switchAnchorman(anchorman, list.get(0));
-        anchorman = list.get(0);
-        satellites.remove(anchorman);
+        long oldAnchor = anchorman.getWurmId();
+        
+        WanderingHorde.switchAnchorman(anchorman, closest);
+        anchorman = closest;
+        removeSatellite(anchorman);
+        HordeEvents.newAnchor(this, oldAnchor);
         
         // set new waypoint reference creature to new anchorman.
         if (anchormanRef) waypoints.referenceCreature = anchorman;
         
-        list.clear();
-        list = null;
+        WanderingHorde.logger.info(String.format("New anchor. Closest squad leader %s is new anchor for %s.", anchorman, this));
         
-        WanderingHorde.logger.info(String.format("New anchor. Closest satellite %s is new anchor for %s.", anchorman, this));
-
-        /**
-         * Finding the closest tile in the path to the new anchorman.
-         */
+        // the token of an abstract horde stays where it is.
+        if (!abstracted)
+            rejoinPath();
+        
+        return true;
+    }
+    
+    /**
+     * Moves the index of the current path to the tile closest to the
+     * anchor, after another member took over as anchor.
+     */
+    private void rejoinPath() {
         HordePath path = waypoints.path();
         LinkedList<PathTile> tiles = path.get().getPathTiles();
         int minDist = Integer.MAX_VALUE;
@@ -191,10 +362,246 @@ public class Horde {
         }
         
         WanderingHorde.logger.info(String.format("Found that %s is dist=%d closest to %s.", path.current(), minDist, anchorman));
+    }
+    
+    /**
+     * Splits the rear half of the formation off into a new horde, e.g. to
+     * get through narrow terrain. The squads whose leaders are farthest from
+     * the anchor move over as they are, led by the rearmost squad leader.
+     * The new horde walks the same route on the same paths, so no path is
+     * found again, and its creatures are neither destroyed nor respawned.
+     * @return The new horde, or null if this horde can't split now.
+     */
+    public Horde split() {
+        if (destroyed || forming || abstracted || anchorman == null || waypoints == null || waypoints.isDirty() || squads.size() < 2)
+            return null;
+        
+        WanderingHorde.getRest().wake(this, "it splits");
+        
+        List<Squad> rear = new ArrayList<>(squads);
+        rear.sort((left, right) -> Float.compare(right.leader.distanceTo(anchorman), left.leader.distanceTo(anchorman)));
+        rear = rear.subList(0, rear.size() / 2);
+        
+        Horde part = new Horde(this);
+        List<Member> moved = new ArrayList<>();
+        
+        for (Squad squad : rear) {
+            squad.checkedPath = null;
+            part.squads.add(squad);
+            moved.add(squad.leader);
+            moved.addAll(squad.followers);
+        }
+        
+        for (Member member : moved) {
+            targets.release(member);
+            member.horde = part;
+            // takes the member's row along to the part's table.
+            member.setWalkingTarget(null);
+            part.satellites.add(member);
+        }
+        
+        // one pass instead of removing the moved members one by one.
+        squads.removeIf(x -> x.leader.horde != this);
+        satellites.removeIf(x -> x.horde != this);
+        
+        part.anchorman = rear.get(0).leader;
+        part.removeSatellite(part.anchorman);
+        part.waypoints = waypoints.share(part.anchorman);
+        part.rejoinPath();
+        part.size = part.satellites.size();
+        size = Math.max(satellites.size(), size - moved.size());
         
+        // the new anchor takes up where this horde's anchor is.
+        WanderingHorde.getStates().fire(part.anchorman, trigger(anchorman.getBrain(), true));
+        WanderingHorde.registerSplit(this, part, moved);
+        HordeEvents.split(this, part);
+        
+        HordeLog.log(Level.INFO, Category.AI, "%s split off %s.", this, part);
+        return part;
+    }
+    
+    /**
+     * Takes another horde that is near into this one, e.g. when two hordes
+     * meet on a shared route. The other horde's squads join as they are, its
+     * anchor joins as a satellite, its templates are added to this horde's,
+     * and its members walk this horde's route from now on. The other horde
+     * is gone afterwards, without destroying or respawning any creature.
+     * @param other Horde whose anchor is within Options.mergeDistance tiles
+     * of this horde's anchor.
+     * @return False if the hordes can't merge now.
+     */
+    public boolean merge(Horde other) {
+        if (other == this || destroyed || forming || abstracted || anchorman == null || waypoints == null || waypoints.isDirty())
+            return false;
+        
+        if (other.destroyed || other.forming || other.abstracted || other.anchorman == null)
+            return false;
+        
+        if (Math.max(Math.abs(anchorman.getTileX() - other.anchorman.getTileX()), Math.abs(anchorman.getTileY() - other.anchorman.getTileY())) > Options.mergeDistance)
+            return false;
+        
+        WanderingHorde.getRest().wake(this, "another horde joins it");
+        
+        Member oldAnchor = other.anchorman;
+        List<Member> moved = new ArrayList<>(other.satellites.size() + 1);
+        moved.add(oldAnchor);
+        moved.addAll(other.satellites);
+        
+        for (Member member : moved) {
+            other.targets.release(member);
+            member.horde = this;
+            member.setWalkingTarget(null);
+        }
+        
+        for (Squad squad : other.squads)
+            squad.checkedPath = null;
+        
+        squads.addAll(other.squads);
+        satellites.addAll(other.satellites);
+        addSatellite(oldAnchor);
+        addTemplates(other);
+        size += other.size + 1;
+        
+        other.squads.clear();
+        other.satellites.clear();
+        other.anchorman = null;
+        other.destroyed = true;
+        
+        // the members fall in with what this horde is doing.
+        StateMachine.Trigger trigger = trigger(anchorman.getBrain(), false);
+        
+        for (Member member : moved)
+            WanderingHorde.getStates().fire(member, trigger);
+        
+        WanderingHorde.registerMerge(this, other, moved);
+        HordeEvents.merged(this, other, moved.size());
+        
+        if (other.waypoints != null)
+            other.waypoints.dispose();
+        other.waypoints = null;
+        
+        HordeLog.log(Level.INFO, Category.AI, "%s merged into %s.", other, this);
         return true;
     }
     
+    /**
+     * Adds the templates of a horde that merges into this one, so its
+     * members' prey is hunted, and replenishing spawns its kinds too.
+     */
+    private void addTemplates(Horde other) {
+        int[] joined = joinTemplates(templates, other.templates);
+        
+        if (joined == templates)
+            return;
+        
+        if (creatureTemplates != null && other.creatureTemplates != null) {
+            CreatureTemplate[] creatures = Arrays.copyOf(creatureTemplates, joined.length);
+            
+            for (int i = templates.length; i < joined.length; i++)
+                creatures[i] = other.creatureTemplates[indexOf(other.templates, 0, other.templates.length, joined[i])];
+            
+            creatureTemplates = creatures;
+        }
+        
+        templates = joined;
+        
+        // the prey row is made from the new templates on the next scan.
+        threats.resetPrey();
+    }
+    
+    /**
+     * Adds templates that aren't in a horde's templates yet, the first
+     * template stays the anchor's.
+     * @param templates Template Ids of the horde.
+     * @param others Template Ids of a horde that merges into it.
+     * @return The joined templates, or the same array if nothing was added.
+     */
+    static int[] joinTemplates(int[] templates, int[] others) {
+        int[] joined = Arrays.copyOf(templates, templates.length + others.length);
+        int count = templates.length;
+        
+        for (int template : others) {
+            // the store saves the number of templates in a byte.
+            if (count == 255)
+                break;
+            
+            if (indexOf(joined, 1, count, template) < 0)
+                joined[count++] = template;
+        }
+        
+        return count == templates.length ? templates : Arrays.copyOf(joined, count);
+    }
+    
+    private static int indexOf(int[] templates, int from, int to, int template) {
+        for (int i = from; i < to; i++)
+            if (templates[i] == template)
+                return i;
+        
+        return -1;
+    }
+    
+    /**
+     * @param status Status of the anchor of the horde that members join.
+     * @param anchor True if the member becomes the anchor.
+     * @return Event that puts a joining member into a status that fits.
+     */
+    private static StateMachine.Trigger trigger(MemberStatus status, boolean anchor) {
+        switch (status) {
+            case Idle:
+                return StateMachine.Trigger.Halt;
+            case CampAtNight:
+                // an anchor that walks on at night camps right away.
+                return anchor ? StateMachine.Trigger.Walk : StateMachine.Trigger.NightFell;
+            default:
+                return StateMachine.Trigger.Walk;
+        }
+    }
+    
+    /**
+     * Adds a satellite to the first squad that has room, or makes it the
+     * leader of a new squad.
+     * @param satellite Satellite that joins the horde.
+     */
+    protected void addSatellite(Member satellite) {
+        satellites.add(satellite);
+        
+        for (Squad squad : squads) {
+            if (squad.hasRoom()) {
+                squad.add(satellite);
+                return;
+            }
+        }
+        
+        squads.add(new Squad(satellite));
+    }
+    
+    /**
+     * Removes a satellite from the horde and its squad, a squad that lost
+     * its leader is led by its closest follower.
+     * @param satellite Satellite that leaves the horde.
+     */
+    protected void removeSatellite(Member satellite) {
+        satellites.remove(satellite);
+        
+        Squad squad = satellite.squad;
+        
+        if (squad != null && !squad.remove(satellite))
+            squads.remove(squad);
+    }
+    
+    /**
+     * @return Distance of the squad leader closest to the anchor, or
+     * Float.MAX_VALUE without satellites.
+     */
+    public float closestSquad() {
+        float closest = Float.MAX_VALUE;
+        
+        for (int i = 0; i < squads.size(); i++)
+            closest = Math.min(closest, squads.get(i).leader.distanceTo(anchorman));
+        
+        return closest;
+    }
+    
     /**
      * Scatters all satellites around the waypoint.
      */
@@ -202,32 +609,198 @@ public class Horde {
         /*HordePath hp = waypoints.path();
         
         for (int i = 0; i < satellites.size(); i++) {
-            TilePos to = hp.scatter(Options.scatterDistance, 0);
+            TilePos to = hp.scatter(Options.scatterDistance, 0, random);
             satellites.get(i).startPathingToTile(new PathTile(to.x, to.y, Server.surfaceMesh.getTile(to), true, 0));
         }*/
         
-        WanderingHorde.logger.warning("HORDE IS SCATTERED!");
+        HordeLog.log(Level.WARNING, Category.AI, "HORDE IS SCATTERED!");
         scattered = true;
     }
     
     protected void unscatter() {
         scattered = false;
-        satellites.forEach(x -> { x.scattered = false; x.atDestination = false; });
+        satellites.forEach(x -> { x.setScattered(false); x.setAtDestination(false); });
     }
     
     protected void walk() {
+        if (forming) {
+            walkWhenFormed = true;
+            return;
+        }
+        
         if (waypoints.isDirty()) {
             WanderingHorde.logger.warning(String.format("Waypoints are dirty, can't start walking %s.", this));
             return;
         }
         
-        anchorman.walkToNextWaypoint();
+        WanderingHorde.getRest().wake(this, "it walks on");
+        
+        // the anchor last, at night it camps and gathers the satellites.
         satellites.forEach(x -> { x.walkToNextWaypoint(); });
+        anchorman.walkToNextWaypoint();
+    }
+    
+    /**
+     * Called when the anchor reached the waypoint, the satellites have until
+     * the teleport timeout to catch up.
+     * @param current Current time in milliseconds.
+     */
+    protected void waitForSatellites(long current) {
+        reachedWaypoint = current;
+        overdue = false;
+        WanderingHorde.getTimers().schedule(stragglerTimer, current + teleportTimeout);
+    }
+    
+    /**
+     * Called when the anchor stops waiting for the satellites.
+     */
+    protected void stopWaiting() {
+        reachedWaypoint = Long.MAX_VALUE;
+        overdue = false;
+        WanderingHorde.getTimers().cancel(stragglerTimer);
+    }
+    
+    /**
+     * Called when a squad reported that it arrived, or the teleport timeout
+     * has passed. Pauses at the waypoint if all squads are there.
+     */
+    void checkGathered() {
+        if (destroyed || abstracted || anchorman == null || anchorman.getBrain() != MemberStatus.WaitingForSatellites)
+            return;
+        
+        if (!allNearDestination(Options.scatterDistance))
+            return;
+        
+        HordeLog.log(Level.INFO, Category.AI, "All satellites within scatter distance, waiting one turn.");
+        arrived(WanderingHorde.now());
+        anchorman.getStatus().setPath(WanderingHorde.getEmptyPath());
+    }
+    
+    /**
+     * Called when a member walked to the end of its path, or holds on the
+     * tile its movement leads to. The anchor arrives at the waypoint, a
+     * satellite near it scatters, and a scattering satellite settles at its
+     * scatter point.
+     * @param member Member of this horde.
+     */
+    void pathFinished(Member member) {
+        if (destroyed || forming || abstracted || member.horde != this || waypoints == null || waypoints.isDirty())
+            return;
+        
+        HordePath hp = waypoints.path();
+        
+        switch (member.getBrain()) {
+            case WalkingToWaypoint:
+                if (member == anchorman) {
+                    if (!hp.nearDestination(member, 0))
+                        break;
+                    
+                    HordeLog.log(Level.INFO, Category.AI, "Anchor has reached the waypoint %s. (%s, %s)", hp.end, member, this);
+                    WanderingHorde.getStates().fire(member, StateMachine.Trigger.Arrived);
+                    member.getStatus().setPath(WanderingHorde.getEmptyPath());
+                }
+                else if (hp.nearDestination(member, Options.scatterDistance)) {
+                    WanderingHorde.getStates().fire(member, StateMachine.Trigger.Arrived);
+                    member.scatter(Options.scatterDistance);
+                }
+                
+                break;
+            case Scattering:
+                PathTile tile = member.getScatterTile();
+                
+                if (tile != null && member.isWithinTileDistanceTo(tile.getTileX(), tile.getTileY(), 0, 0))
+                    WanderingHorde.getSatelliteAI().settle(member, this);
+                
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Called when the anchor starts pausing at the waypoint, the pause timer
+     * walks on once the anchor may move again.
+     */
+    void pause() {
+        WanderingHorde.getTimers().schedule(pauseTimer, lastMovement + WanderingHorde.getLoad().anchorMovement());
+    }
+    
+    /**
+     * Ends the pause at the waypoint, or waits longer if the movement
+     * interval was stretched since.
+     */
+    private void pauseOver() {
+        if (destroyed || anchorman == null || anchorman.getBrain() != MemberStatus.WaitingOneTurn)
+            return;
+        
+        long current = WanderingHorde.now();
+        
+        if (forming || current - lastMovement < WanderingHorde.getLoad().anchorMovement()) {
+            WanderingHorde.getTimers().schedule(pauseTimer, Math.max(current + 1L, lastMovement + WanderingHorde.getLoad().anchorMovement()));
+            return;
+        }
+        
+        lastMovement = current;
+        
+        // the parked anchor of an abstract horde isn't moved.
+        if (!abstracted)
+            anchorman.getStatus().setPath(WanderingHorde.getEmptyPath());
+        
+        WanderingHorde.getStates().fire(anchorman, StateMachine.Trigger.Timeout);
+    }
+    
+    /**
+     * Called when all members arrived at the waypoint, the horde scatters
+     * and pauses there.
+     * @param current Current time in milliseconds.
+     */
+    protected void arrived(long current) {
+        scatter();
+        moving = false;
+        lastMovement = current + Options.pauseAtWaypoint;
+        WanderingHorde.getStates().fire(anchorman, StateMachine.Trigger.Gathered);
+    }
+    
+    /**
+     * Sets off to the next waypoint after the pause, or destroys the horde
+     * if there is none.
+     * @return False if the horde has been destroyed.
+     */
+    protected boolean nextWaypoint() {
+        waypoints.path().index = 0;
+        
+        if (!waypoints.hasNext()) {
+            // stays at the last waypoint for good.
+            if (waypoints.getBehaviour() == Waypoints.WaypointBehaviour.Persist) {
+                WanderingHorde.getStates().fire(anchorman, StateMachine.Trigger.Halt);
+                return true;
+            }
+            
+            HordeLog.log(Level.WARNING, Category.AI, "No more waypoints for %s.", this);
+            destroy();
+            return false;
+        }
+        
+        moving = true;
+        unscatter();
+        walk();
+        
+        // next() moves the horde on to the next waypoint.
+        TilePos next = waypoints.next();
+        HordeLog.log(Level.INFO, Category.AI, "Horde moving to next waypoint at %s.", next);
+        return true;
+    }
+    
+    /**
+     * Walks on in the morning, leaving the camp puts the campfires out.
+     */
+    protected void breakCamp() {
+        walk();
     }
     
     protected void halt() {
-        anchorman.brain = MemberStatus.Idle;
-        satellites.forEach(x -> { x.brain = MemberStatus.Idle; });
+        WanderingHorde.getStates().fire(anchorman, StateMachine.Trigger.Halt);
+        satellites.forEach(x -> { WanderingHorde.getStates().fire(x, StateMachine.Trigger.Halt); });
     }
     
     /**
@@ -256,74 +829,60 @@ public class Horde {
         return destroyed;
     }
 
-    public void poll() {
+    /**
+     * Starts the timers of a horde that was added.
+     * @param current Current time in milliseconds.
+     */
+    void startTimers(long current) {
+        WanderingHorde.getTimers().schedule(soundTimer, current + Options.soundCooldown);
+        WanderingHorde.getTimers().schedule(planTimer, current);
+        WanderingHorde.getReplenisher().start(this, current);
+        
+        if (reachedWaypoint != Long.MAX_VALUE)
+            WanderingHorde.getTimers().schedule(stragglerTimer, reachedWaypoint + teleportTimeout);
+        
+        // restored or split off while pausing at the waypoint.
+        if (anchorman != null && anchorman.getBrain() == MemberStatus.WaitingOneTurn)
+            pause();
+    }
+    
+    /**
+     * Stops the timers of a horde that was removed.
+     */
+    void cancelTimers() {
+        WanderingHorde.getTimers().cancel(soundTimer);
+        WanderingHorde.getTimers().cancel(stragglerTimer);
+        WanderingHorde.getTimers().cancel(replenishTimer);
+        WanderingHorde.getTimers().cancel(planTimer);
+        WanderingHorde.getTimers().cancel(pauseTimer);
+    }
+    
+    /**
+     * Plays a random sound from the horde by chance, and schedules the next
+     * one after the cooldown.
+     */
+    private void sound() {
         if (destroyed)
             return;
         
-        long current = System.currentTimeMillis();
+        WanderingHorde.getTimers().schedule(soundTimer, WanderingHorde.now() + Options.soundCooldown + random.nextInt(Options.soundCooldown));
         
-        // Play random sound from the horde after cooldown has passed.
-        if (current - lastSound >= Options.soundCooldown) {
-            lastSound = current + WanderingHorde.random.nextInt(Options.soundCooldown);
-            
-            float chance = Options.soundChance + (this.size / 100f);
-            
-            // Chance to play sound.
-            if (WanderingHorde.random.nextFloat() <= chance)
-                playSound();
-        }
+        // nobody hears the parked members of an abstract horde.
+        if (forming || abstracted)
+            return;
         
-        // Replenish/respawn killed or lost satellites.
-        if (replenish && (System.currentTimeMillis() - lastReplenish >= replenishInterval)) {
-            Member satellite = null;
-
-            try {
-                int count = 0;
-                
-                for (int i = satellites.size(); i < size; i++) {
-                    CreatureTemplate template = CreatureTemplateFactory.getInstance().getTemplate(templates[WanderingHorde.random.nextInt(templates.length - 1) + 1]);
-                    byte mod = (byte)(WanderingHorde.random.nextFloat() > 0.025f ? 0 : WanderingHorde.random.nextInt(11) + 1); // see C_MOD in CreatureTypes.java
-
-                    satellite = (Member)Creature.doNewHordemember(
-                        template.getTemplateId(),
-                        true, 
-                        getSpawnPos(anchorman.getTileX()),
-                        getSpawnPos(anchorman.getTileY()),
-                        WanderingHorde.random.nextFloat() * 360f,
-                        0, 
-                        template.getName() + " member", 
-                        (byte)(WanderingHorde.random.nextBoolean() ? 0 : 1),
-                        (byte)0,
-                        (byte)mod, /* fierce, greenish, diseased, et cetera */
-                        false,
-                        (byte)0);
-                    satellite.horde = this;
-                    satellites.add(satellite);
-                    
-                    WanderingHorde.logger.info(String.format("Respawned %s for %s.", satellite.getName(), this));
-                    
-                    if (++count >= replenishQuantity && replenishQuantity > 0)
-                        break;
-                }
-                
-                WanderingHorde.logger.info(String.format("%d creatures have been respawned.", count));
-            }
-            catch (Exception e) {
-                WanderingHorde.logger.log(Level.SEVERE, String.format("Error RE-spawning satellites for %s.", this), e);
-                
-                if (satellite != null) {
-                    satellite.destroy();
-                    satellite = null;
-                }
-            }
-        }
+        float chance = Options.soundChance + (this.size / 100f);
+        
+        // Chance to play sound.
+        if ((float)random.nextDouble() <= chance)
+            playSound();
     }
     
     /**
      * Checks if all satellites are within proximity to the end point/tile of
-     * the current path to walk on. If the specified timeout has been hit,
-     * fighting horde members will be left behind and kicked out of the horde,
-     * and others will be teleported to help avoid deadlocks.
+     * the current path to walk on. Each squad leader checks its own squad
+     * while the anchor waits, only squads that didn't report since the
+     * anchor arrived are checked here, once the timeout has been hit.
      * @param proximity Proximity in tiles.
      * @return True if all members are now withing proximity of the end tile.
      */
@@ -331,38 +890,61 @@ public class Horde {
         HordePath hp = waypoints.path();
         boolean value = hp.nearDestination(anchorman, proximity);
         
-        for (int i = 0; value && i < satellites.size(); i++) {
-            Member member = satellites.get(i);
-            value = hp.nearDestination(member, proximity);
+        for (Squad squad : squads.toArray(emptySquads)) {
+            if (!value)
+                break;
             
-            if (!value) {
-                float timeout = (teleportTimeout - (System.currentTimeMillis() - reachedWaypoint)) / 1000f;
-                
-                WanderingHorde.logger.log(WanderingHorde.devlog, String.format("SATELLITE NOT WITHIN PROXIMITY (Timeout in %.2f sec): %s IN %s", timeout, satellites.get(i), this));
-                
-                if (timeout <= 0f) {
-                    if (member.isFighting()) {
-                        WanderingHorde.logger.warning(String.format("Horde member %s is fighting while horde is waiting, but timeout was hit. It will be expelled from %s.",
-                            member, this));
-                        
-                        satellites.remove(member);
-                        WanderingHorde.remove(member);
-                        member.horde = null;
-                    }
-                    else {
-                        WanderingHorde.logger.warning(String.format("Horde member %s fell behind while horde is waiting, teleporting it to %s.", member, this));
-                        member.scatterTeleport(proximity);
-                    }
-                    
-                    // prevent iteration from aborting, continue teleporting or removing.
-                    value = true;
-                }
-            }
+            // removed by an expulsion of another squad's check.
+            if (squad.leader == null)
+                continue;
+            
+            if (squad.checkedPath == hp && squad.checked >= reachedWaypoint)
+                value = squad.arrived;
+            else
+                value = overdue && squad.check(this, proximity, WanderingHorde.now());
         }
         
         return value;
     }
     
+    /**
+     * Called for a member that isn't within proximity to the end of the
+     * path. If the timeout has been hit, fighting horde members will be left
+     * behind and kicked out of the horde, and others will be teleported to
+     * help avoid deadlocks.
+     * @param member Satellite that isn't near the end of the path.
+     * @param proximity Proximity in tiles.
+     * @return True if the member was teleported or expelled.
+     */
+    boolean straggler(Member member, int proximity) {
+        float timeout = (teleportTimeout - (WanderingHorde.now() - reachedWaypoint)) / 1000f;
+        
+        if (HordeLog.isLoggable(WanderingHorde.devlog, Category.STRAGGLER))
+            HordeLog.log(WanderingHorde.devlog, Category.STRAGGLER, "SATELLITE NOT WITHIN PROXIMITY (Timeout in %.2f sec): %s IN %s", timeout, member, this);
+        
+        if (!overdue)
+            return false;
+        
+        if (member.isFighting()) {
+            HordeLog.log(Level.WARNING, Category.AI, "Horde member %s is fighting while horde is waiting, but timeout was hit. It will be expelled from %s.",
+                member, this);
+            
+            removeSatellite(member);
+            targets.release(member);
+            WanderingHorde.getMetrics().expulsions.increment();
+            WanderingHorde.remove(member);
+            member.release();
+            member.horde = null;
+        }
+        else {
+            HordeLog.log(Level.WARNING, Category.AI, "Horde member %s fell behind while horde is waiting, teleporting it to %s.", member, this);
+            member.scatterTeleport(proximity);
+        }
+        
+        // continue teleporting or removing the others.
+        return true;
+    }
+    
     /**
      * Spawns the anchorman and all satellites around it.
      * @param initiator The player/GM who spawned the horde.
@@ -392,10 +974,10 @@ public class Horde {
                     true, 
                     (float)((start.x << 2) + 2),
                     (float)((start.y << 2) + 2),
-                    WanderingHorde.random.nextFloat() * 360f,
+                    (float)random.nextDouble() * 360f,
                     0, 
                     template.getName() + " leader", 
-                    (byte)(WanderingHorde.random.nextBoolean() ? 0 : 1),
+                    (byte)(random.nextBoolean() ? 0 : 1),
                     (byte)0,
                     (byte)CreatureTypes.C_MOD_CHAMPION,
                     false,
@@ -409,38 +991,62 @@ public class Horde {
             return false;
         }
 
-        try {
-            for (int i = 0; i < size; i++) {
-                CreatureTemplate template = CreatureTemplateFactory.getInstance().getTemplate(templates[WanderingHorde.random.nextInt(templates.length - 1) + 1]);
-                byte mod = (byte)(WanderingHorde.random.nextFloat() > 0.025f ? 0 : WanderingHorde.random.nextInt(11) + 1); // see C_MOD in CreatureTypes.java
-                
-                Member satellite = (Member)Creature.doNewHordemember(
-                    template.getTemplateId(),
-                    true, 
-                    getSpawnPos(start.x),
-                    getSpawnPos(start.y),
-                    WanderingHorde.random.nextFloat() * 360f,
-                    0, 
-                    template.getName() + " member", 
-                    (byte)(WanderingHorde.random.nextBoolean() ? 0 : 1),
-                    (byte)0,
-                    (byte)mod, /* fierce, greenish, diseased, et cetera */
-                    false,
-                    (byte)0);
-                satellite.horde = this;
-                satellites.add(satellite);
-            }
-        }
-        catch (Exception e) {
-            comm.sendAlertServerMessage(String.format("Can't spawn all satellites for %s.", this));
-            WanderingHorde.logger.log(Level.SEVERE, String.format("Error spawning satellites for %s.", this), e);
-            return false;
-        }
+        // satellites are spawned over the next server polls.
+        spawned = true;
+        forming = true;
+        comm.sendNormalServerMessage(String.format("Forming %s, spawning %d satellites.", this, size));
+        WanderingHorde.getSpawnQueue().enqueue(this, initiator, start.x, start.y, size);
+        HordeEvents.spawned(this, start.x, start.y);
         
-        comm.sendNormalServerMessage(String.format("Spawned %s.", this));
         return true;
     }
     
+    /**
+     * Spawns a single satellite with a random template around a center tile
+     * and adds it to the horde.
+     * @param centerX Tile X coordinate to spawn the satellite around.
+     * @param centerY Tile Y coordinate to spawn the satellite around.
+     * @return The new satellite.
+     * @throws Exception If the satellite could not be created.
+     */
+    protected Member spawnSatellite(int centerX, int centerY) throws Exception {
+        CreatureTemplate template = CreatureTemplateFactory.getInstance().getTemplate(templates[random.nextInt(templates.length - 1) + 1]);
+        byte mod = (byte)((float)random.nextDouble() > 0.025f ? 0 : random.nextInt(11) + 1); // see C_MOD in CreatureTypes.java
+        
+        Member satellite = (Member)Creature.doNewHordemember(
+            template.getTemplateId(),
+            true, 
+            getSpawnPos(centerX),
+            getSpawnPos(centerY),
+            (float)random.nextDouble() * 360f,
+            0, 
+            template.getName() + " member", 
+            (byte)(random.nextBoolean() ? 0 : 1),
+            (byte)0,
+            (byte)mod, /* fierce, greenish, diseased, et cetera */
+            false,
+            (byte)0);
+        satellite.horde = this;
+        addSatellite(satellite);
+        
+        return satellite;
+    }
+    
+    /**
+     * Called once all satellites have been spawned, the horde may start
+     * moving now.
+     */
+    protected void formed() {
+        forming = false;
+        
+        WanderingHorde.logger.info(String.format("Finished forming %s.", this));
+        
+        if (walkWhenFormed) {
+            walkWhenFormed = false;
+            walk();
+        }
+    }
+    
     /**
      * Destroys all satellites and the anchorman, and respawns them at their
      * initial location.
@@ -450,6 +1056,7 @@ public class Horde {
     public boolean respawn(Player initiator) {
         WanderingHorde.logger.info(String.format("%s respawning %s.", initiator, this));
         
+        WanderingHorde.getSpawnQueue().cancel(this);
         satellites.forEach(x -> x.destroy());
         anchorman.destroy();
         spawned = false;
@@ -467,16 +1074,16 @@ public class Horde {
     public float getSpawnPos(int start) {
         int distance = Options.scatterDistance;
         
-        int deviation = (WanderingHorde.random.nextInt(distance) + 1);
+        int deviation = (random.nextInt(distance) + 1);
         
-        if (WanderingHorde.random.nextBoolean())
+        if (random.nextBoolean())
             deviation *= -1;
         
-        return ((start + deviation) << 2) + WanderingHorde.random.nextFloat() * 4;
+        return ((start + deviation) << 2) + (float)random.nextDouble() * 4;
     }
     
     public int getSatellitePos(int center) {
-        return center + ((WanderingHorde.random.nextInt(Options.scatterDistance) + 1) * (WanderingHorde.random.nextBoolean() ? -1 : 1));
+        return center + ((random.nextInt(Options.scatterDistance) + 1) * (random.nextBoolean() ? -1 : 1));
     }
     
     protected void createCampfires() {
@@ -505,13 +1112,21 @@ public class Horde {
         return creature.equals(anchorman) ? anchorman : null;
     }
     
+    /**
+     * @param creature Creature to check.
+     * @return The creature as a member if it's a satellite of this horde,
+     * found through the member and the registry instead of the satellites.
+     */
     public Member isSatellite(Creature creature) {
-        int index = satellites.indexOf(creature);
+        if (!(creature instanceof Member) || ((Member)creature).horde != this)
+            return null;
+        
+        int value = WanderingHorde.getRegistry().get(creature.getWurmId());
         
-        if (index < 0)
+        if (value < 0 || HordeRegistry.isAnchor(value) || HordeRegistry.hordeId(value) != id)
             return null;
         
-        return satellites.get(index);
+        return (Member)creature;
     }
     
     public boolean contains(Creature creature) {
@@ -521,6 +1136,6 @@ public class Horde {
     @Override
     public String toString() {
         return String.format("Horde [id: %d, created: %s, by %s, size: %d / %d]",
-            id, dateFormat.format(created), creator.getName(), satellites.size(), this.size);
+            id, dateFormat.format(created), creatorName, satellites.size(), this.size);
     }
 }
@@ -0,0 +1,402 @@
+package com.pveplands.wanderinghorde;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of the hordes, so horde behaviour can be seen next
+ * to GC pauses and server tick stalls in the same recording. When nothing
+ * is recording, an event costs a check of a flag and is never committed.
+ *
+ * Older Java 8 servers don't have jdk.jfr, the event classes are only
+ * touched when it exists, so this class must be the only one using them.
+ */
+public class HordeEvents {
+    private static final boolean AVAILABLE = available();
+    
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+    
+    /**
+     * @param start System.nanoTime() when pathfinding started.
+     * @param startX Tile X coordinate of the start.
+     * @param startY Tile Y coordinate of the start.
+     * @param endX Tile X coordinate of the destination.
+     * @param endY Tile Y coordinate of the destination.
+     * @param tiles Number of tiles in the found path.
+     * @param legs Number of pathfinder calls needed.
+     * @param complete True if the path reaches the destination.
+     */
+    public static void findPath(long start, int startX, int startY, int endX, int endY, int tiles, int legs, boolean complete) {
+        if (!AVAILABLE)
+            return;
+        
+        FindPathEvent event = new FindPathEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.elapsed = System.nanoTime() - start;
+        event.startX = startX;
+        event.startY = startY;
+        event.endX = endX;
+        event.endY = endY;
+        event.tiles = tiles;
+        event.legs = legs;
+        event.complete = complete;
+        event.commit();
+    }
+    
+    /**
+     * @param start System.nanoTime() when polling the anchor started.
+     * @param horde Polled horde.
+     */
+    public static void hordeTick(long start, Horde horde) {
+        if (!AVAILABLE)
+            return;
+        
+        HordeTickEvent event = new HordeTickEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.elapsed = System.nanoTime() - start;
+        event.hordeId = horde.id;
+        event.satellites = horde.satellites.size();
+        event.commit();
+    }
+    
+    /**
+     * @param member Horde member that changed its brain state in a movement poll.
+     * @param from Brain state before the poll.
+     */
+    public static void brainChanged(Member member, MemberStatus from) {
+        if (!AVAILABLE)
+            return;
+        
+        BrainEvent event = new BrainEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = member.horde == null ? -1 : member.horde.id;
+        event.wurmId = member.getWurmId();
+        event.anchor = member.horde != null && member.horde.anchorman == member;
+        event.from = from.name();
+        event.to = member.getBrain().name();
+        event.commit();
+    }
+    
+    /**
+     * @param horde Spawned horde.
+     * @param tileX Tile X coordinate of the anchor.
+     * @param tileY Tile Y coordinate of the anchor.
+     */
+    public static void spawned(Horde horde, int tileX, int tileY) {
+        if (!AVAILABLE)
+            return;
+        
+        SpawnEvent event = new SpawnEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = horde.id;
+        event.size = horde.size;
+        event.tileX = tileX;
+        event.tileY = tileY;
+        event.commit();
+    }
+    
+    /**
+     * @param horde Horde with the new anchor.
+     * @param oldAnchor Wurm Id of the previous anchor.
+     */
+    public static void newAnchor(Horde horde, long oldAnchor) {
+        if (!AVAILABLE)
+            return;
+        
+        NewAnchorEvent event = new NewAnchorEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = horde.id;
+        event.oldAnchor = oldAnchor;
+        event.newAnchor = horde.anchorman.getWurmId();
+        event.satellites = horde.satellites.size();
+        event.commit();
+    }
+    
+    /**
+     * @param horde Horde that was split.
+     * @param part New horde that split off.
+     */
+    public static void split(Horde horde, Horde part) {
+        if (!AVAILABLE)
+            return;
+        
+        SplitEvent event = new SplitEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = horde.id;
+        event.partId = part.id;
+        event.satellites = horde.satellites.size();
+        event.moved = part.satellites.size() + 1;
+        event.commit();
+    }
+    
+    /**
+     * @param horde Horde that took the other one in.
+     * @param other Horde that is gone now.
+     * @param moved Number of members that joined.
+     */
+    public static void merged(Horde horde, Horde other, int moved) {
+        if (!AVAILABLE)
+            return;
+        
+        MergeEvent event = new MergeEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = horde.id;
+        event.otherId = other.id;
+        event.satellites = horde.satellites.size();
+        event.moved = moved;
+        event.commit();
+    }
+    
+    /**
+     * @param member Teleported horde member.
+     * @param toX Tile X coordinate it was teleported to.
+     * @param toY Tile Y coordinate it was teleported to.
+     */
+    public static void teleported(Member member, int toX, int toY) {
+        if (!AVAILABLE)
+            return;
+        
+        TeleportEvent event = new TeleportEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = member.horde.id;
+        event.wurmId = member.getWurmId();
+        event.fromX = member.getTileX();
+        event.fromY = member.getTileY();
+        event.toX = toX;
+        event.toY = toY;
+        event.commit();
+    }
+    
+    /**
+     * @param horde Replenished horde.
+     * @param queued Number of satellites queued to respawn.
+     * @param missing Number of satellites the horde is missing.
+     */
+    public static void replenished(Horde horde, int queued, int missing) {
+        if (!AVAILABLE)
+            return;
+        
+        ReplenishEvent event = new ReplenishEvent();
+        
+        if (!event.isEnabled())
+            return;
+        
+        event.hordeId = horde.id;
+        event.queued = queued;
+        event.missing = missing;
+        event.commit();
+    }
+    
+    @Name("wanderinghorde.FindPath")
+    @Label("Find Horde Path")
+    @Category({ "Wandering Horde" })
+    @Description("Path of a horde found with the Wurm pathfinder.")
+    static class FindPathEvent extends Event {
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        
+        @Label("Start X")
+        int startX;
+        
+        @Label("Start Y")
+        int startY;
+        
+        @Label("End X")
+        int endX;
+        
+        @Label("End Y")
+        int endY;
+        
+        @Label("Tiles")
+        int tiles;
+        
+        @Label("Legs") @Description("Number of pathfinder calls for the path.")
+        int legs;
+        
+        @Label("Complete") @Description("Whether the path reaches the destination.")
+        boolean complete;
+    }
+    
+    @Name("wanderinghorde.HordeTick")
+    @Label("Horde Tick")
+    @Category({ "Wandering Horde" })
+    @Description("Movement poll of a horde's anchor.")
+    static class HordeTickEvent extends Event {
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Satellites")
+        int satellites;
+    }
+    
+    @Name("wanderinghorde.BrainChange")
+    @Label("Horde Member State Change")
+    @Category({ "Wandering Horde" })
+    @Description("Brain state of a horde member changed during its movement poll.")
+    static class BrainEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Wurm Id")
+        long wurmId;
+        
+        @Label("Anchor")
+        boolean anchor;
+        
+        @Label("From")
+        String from;
+        
+        @Label("To")
+        String to;
+    }
+    
+    @Name("wanderinghorde.Spawn")
+    @Label("Horde Spawn")
+    @Category({ "Wandering Horde" })
+    @Description("A horde spawned its anchor and queued its satellites.")
+    static class SpawnEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Size")
+        int size;
+        
+        @Label("Tile X")
+        int tileX;
+        
+        @Label("Tile Y")
+        int tileY;
+    }
+    
+    @Name("wanderinghorde.NewAnchor")
+    @Label("New Horde Anchor")
+    @Category({ "Wandering Horde" })
+    @Description("A satellite replaced the dead or destroyed anchor.")
+    static class NewAnchorEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Old Anchor")
+        long oldAnchor;
+        
+        @Label("New Anchor")
+        long newAnchor;
+        
+        @Label("Satellites")
+        int satellites;
+    }
+    
+    @Name("wanderinghorde.Split")
+    @Label("Horde Split")
+    @Category({ "Wandering Horde" })
+    @Description("The rear of a horde's formation split off into a new horde.")
+    static class SplitEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("New Horde Id")
+        int partId;
+        
+        @Label("Satellites") @Description("Satellites left in the horde.")
+        int satellites;
+        
+        @Label("Moved") @Description("Members of the new horde.")
+        int moved;
+    }
+    
+    @Name("wanderinghorde.Merge")
+    @Label("Horde Merge")
+    @Category({ "Wandering Horde" })
+    @Description("A horde took the members of another horde nearby in.")
+    static class MergeEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Other Horde Id")
+        int otherId;
+        
+        @Label("Satellites") @Description("Satellites of the horde after the merge.")
+        int satellites;
+        
+        @Label("Moved") @Description("Members that joined.")
+        int moved;
+    }
+    
+    @Name("wanderinghorde.Teleport")
+    @Label("Horde Member Teleport")
+    @Category({ "Wandering Horde" })
+    @Description("A horde member that fell behind or got stuck was teleported to its horde.")
+    static class TeleportEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Wurm Id")
+        long wurmId;
+        
+        @Label("From X")
+        int fromX;
+        
+        @Label("From Y")
+        int fromY;
+        
+        @Label("To X")
+        int toX;
+        
+        @Label("To Y")
+        int toY;
+    }
+    
+    @Name("wanderinghorde.Replenish")
+    @Label("Horde Replenish")
+    @Category({ "Wandering Horde" })
+    @Description("Missing satellites of a horde were queued to respawn.")
+    static class ReplenishEvent extends Event {
+        @Label("Horde Id")
+        int hordeId;
+        
+        @Label("Queued")
+        int queued;
+        
+        @Label("Missing")
+        int missing;
+    }
+}
@@ -0,0 +1,338 @@
+package com.pveplands.wanderinghorde;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+
+/**
+ * Append only journal of changes to horde memberships, between two
+ * snapshots written by the HordeStore. Records are written by a background
+ * thread, which writes and syncs everything queued at once (group commit),
+ * so the server thread never waits for the disk. Writing a snapshot goes
+ * through the same queue and starts a new, empty journal.
+ *
+ * New hordes and hordes that split off another one are written whole into
+ * their record, so they don't need a snapshot of all hordes. A merge only
+ * records the two horde Ids.
+ *
+ * Every snapshot starts a new generation, which is written to the header of
+ * the snapshot and of the journal that follows it. If the server stops
+ * after the snapshot replaced the store file, but before the journal was
+ * started over, the old journal's generation is lower than the snapshot's,
+ * and it's skipped instead of applied a second time.
+ */
+public class HordeJournal {
+    /**
+     * "WHJL", marks a horde journal file.
+     */
+    static final int MAGIC = 0x57484A4C;
+    static final short VERSION = 3;
+    
+    static final byte MEMBER_ADDED = 1;
+    static final byte MEMBER_REMOVED = 2;
+    static final byte ANCHOR_CHANGED = 3;
+    static final byte HORDE_REMOVED = 4;
+    static final byte HORDE_CREATED = 5;
+    static final byte HORDE_SPLIT = 6;
+    static final byte HORDE_MERGED = 7;
+    
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private Thread writer = null;
+    private volatile boolean running = false;
+    
+    /**
+     * Generation of the last snapshot and the journal following it.
+     */
+    private long generation = 0L;
+    
+    /**
+     * Records appended since the last snapshot.
+     */
+    private int records = 0;
+    
+    /**
+     * @return The journal file, next to the store file.
+     */
+    public static File getFile() {
+        return new File(Options.storeFile + ".journal");
+    }
+    
+    /**
+     * Queues a record to be written to the journal.
+     * @param type One of the record types, e.g. MEMBER_ADDED.
+     * @param hordeId Id of the horde.
+     * @param wurmId Wurm Id of the member, or 0.
+     */
+    public void append(byte type, int hordeId, long wurmId) {
+        append(type, hordeId, wurmId, null);
+    }
+    
+    /**
+     * Queues a record with the data of a horde to be written to the journal.
+     * @param type HORDE_CREATED or HORDE_SPLIT, records with data.
+     * @param hordeId Id of the horde, or of the horde the new one split off.
+     * @param wurmId Wurm Id of the member, or 0.
+     * @param data Horde written by HordeStore.serialize().
+     */
+    public void append(byte type, int hordeId, long wurmId, byte[] data) {
+        start();
+        queue.add(new Entry(type, hordeId, wurmId, data, null, generation));
+        
+        if (++records >= Options.journalCompactRecords)
+            compact();
+    }
+    
+    /**
+     * Takes a snapshot of all hordes on this thread, and lets the writer
+     * replace the store file with it and start a new journal.
+     */
+    public void compact() {
+        byte[] snapshot;
+        
+        try {
+            snapshot = WanderingHorde.getStore().snapshot(generation + 1);
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.SEVERE, "Can't create a snapshot of the hordes, keeping the journal.", e);
+            return;
+        }
+        
+        start();
+        records = 0;
+        queue.add(new Entry((byte)0, 0, 0L, null, snapshot, ++generation));
+    }
+    
+    /**
+     * Writes a last snapshot and stops the writer, waiting for it to finish.
+     */
+    public void close() {
+        compact();
+        running = false;
+        queue.add(new Entry((byte)0, 0, 0L, null, null, generation));
+        
+        if (writer == null)
+            return;
+        
+        try {
+            writer.join(Options.journalCloseTimeout);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        writer = null;
+    }
+    
+    /**
+     * @return Generation of the last snapshot.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Applies the journal to the hordes loaded from the store file, unless
+     * it's older than the loaded snapshot.
+     * @param store Store with the loaded hordes.
+     * @param snapshotGeneration Generation of the loaded snapshot.
+     * @return Number of records replayed.
+     */
+    public int replay(HordeStore store, long snapshotGeneration) {
+        File file = getFile();
+        
+        generation = snapshotGeneration;
+        
+        if (!file.exists())
+            return 0;
+        
+        int count = 0;
+        boolean stale = false;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION)
+                throw new IOException("Not a supported horde journal file.");
+            
+            long journalGeneration = in.readLong();
+            
+            if (journalGeneration < snapshotGeneration) {
+                WanderingHorde.logger.info(String.format("Horde journal generation %d is older than snapshot generation %d, skipping it.", journalGeneration, snapshotGeneration));
+                stale = true;
+            }
+            else generation = journalGeneration;
+            
+            while (!stale) {
+                byte type;
+                int hordeId;
+                long wurmId;
+                byte[] data = null;
+                
+                try {
+                    type = in.readByte();
+                    hordeId = in.readInt();
+                    wurmId = in.readLong();
+                    
+                    if (hasData(type)) {
+                        data = new byte[in.readInt()];
+                        in.readFully(data);
+                    }
+                }
+                catch (EOFException e) {
+                    // end of the journal, or a record cut off by a crash.
+                    break;
+                }
+                
+                store.apply(type, hordeId, wurmId, data);
+                count++;
+            }
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.SEVERE, String.format("Can't replay horde journal %s.", file), e);
+        }
+        
+        // the writer would append to it otherwise.
+        if (stale && !file.delete())
+            WanderingHorde.logger.warning(String.format("Can't delete old horde journal %s.", file));
+        
+        records = count;
+        WanderingHorde.logger.info(String.format("Replayed %d horde journal records.", count));
+        
+        return count;
+    }
+    
+    private synchronized void start() {
+        if (writer != null)
+            return;
+        
+        running = true;
+        writer = new Thread(this::write, "WanderingHorde journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Writer thread, waits for records and writes everything that is queued
+     * at once.
+     */
+    private void write() {
+        List<Entry> batch = new ArrayList<>();
+        FileOutputStream file = null;
+        DataOutputStream out = null;
+        
+        try {
+            while (running || !queue.isEmpty()) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                
+                for (Entry entry : batch) {
+                    if (entry.snapshot != null) {
+                        if (out != null)
+                            out.close();
+                        
+                        out = null;
+                        HordeStore.writeFile(entry.snapshot);
+                        
+                        // the snapshot contains everything, start over.
+                        file = new FileOutputStream(getFile(), false);
+                        out = header(file, entry.generation);
+                        continue;
+                    }
+                    
+                    if (entry.type == 0)
+                        continue;
+                    
+                    if (out == null) {
+                        boolean exists = getFile().exists() && getFile().length() > 0;
+                        file = new FileOutputStream(getFile(), true);
+                        out = exists ? new DataOutputStream(new BufferedOutputStream(file)) : header(file, entry.generation);
+                    }
+                    
+                    out.writeByte(entry.type);
+                    out.writeInt(entry.hordeId);
+                    out.writeLong(entry.wurmId);
+                    
+                    if (hasData(entry.type)) {
+                        out.writeInt(entry.data.length);
+                        out.write(entry.data);
+                    }
+                }
+                
+                if (out != null) {
+                    out.flush();
+                    
+                    if (Options.journalSync)
+                        file.getChannel().force(false);
+                }
+                
+                batch.clear();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.SEVERE, "Can't write horde journal, changes are only saved with the next snapshot.", e);
+        }
+        finally {
+            try {
+                if (out != null)
+                    out.close();
+            }
+            catch (IOException e) {
+                WanderingHorde.logger.log(Level.WARNING, "Can't close horde journal.", e);
+            }
+            
+            synchronized (this) {
+                writer = null;
+            }
+        }
+    }
+    
+    /**
+     * @return True if records of the type are followed by the data of a
+     * horde.
+     */
+    private static boolean hasData(byte type) {
+        return type == HORDE_CREATED || type == HORDE_SPLIT;
+    }
+    
+    private static DataOutputStream header(FileOutputStream file, long generation) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(generation);
+        
+        return out;
+    }
+    
+    private static class Entry {
+        final byte type;
+        final int hordeId;
+        final long wurmId;
+        final byte[] data;
+        final byte[] snapshot;
+        
+        /**
+         * Generation of the snapshot, or of the journal the record belongs to.
+         */
+        final long generation;
+        
+        Entry(byte type, int hordeId, long wurmId, byte[] data, byte[] snapshot, long generation) {
+            this.type = type;
+            this.hordeId = hordeId;
+            this.wurmId = wurmId;
+            this.data = data;
+            this.snapshot = snapshot;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.pveplands.wanderinghorde;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logging for the horde AI's poll paths. Messages are only formatted when
+ * their level is logged and their category lets them through, so disabled
+ * messages don't allocate (as long as no primitives are boxed for them).
+ * Each category can sample its messages and is limited to a number of
+ * messages per second, the rest is counted and reported with the next
+ * message that gets through.
+ *
+ * With install(), the mod's log records are handed to the original
+ * handlers on a background thread, so the server thread doesn't wait for
+ * the log file.
+ */
+public class HordeLog {
+    public enum Category {
+        /**
+         * Movement polls of anchors and satellites.
+         */
+        AI(1),
+        
+        /**
+         * Satellites that lag behind while the horde waits at a waypoint,
+         * logged for every satellite in every poll, so only 1 in 10.
+         */
+        STRAGGLER(10),
+        
+        /**
+         * Finding and updating horde paths.
+         */
+        PATH(1),
+        
+        COMBAT(1);
+        
+        private final int sampleEvery;
+        private int sampled = 0;
+        private long second = 0L;
+        private int logged = 0;
+        private int suppressed = 0;
+        
+        Category(int sampleEvery) {
+            this.sampleEvery = sampleEvery;
+        }
+        
+        /**
+         * Counts a message and decides if it is logged.
+         * @return Number of messages suppressed before this one, or -1 if
+         * this message is suppressed.
+         */
+        private synchronized int admit(long current) {
+            if (sampleEvery > 1 && sampled++ % sampleEvery != 0) {
+                suppressed++;
+                return -1;
+            }
+            
+            if (current / 1000L != second) {
+                second = current / 1000L;
+                logged = 0;
+            }
+            
+            if (Options.logPerSecond > 0 && logged >= Options.logPerSecond) {
+                suppressed++;
+                return -1;
+            }
+            
+            logged++;
+            
+            int count = suppressed;
+            suppressed = 0;
+            
+            return count;
+        }
+    }
+    
+    private static AsyncHandler async = null;
+    private static Handler[] ownHandlers = null;
+    private static boolean useParentHandlers = true;
+    
+    /**
+     * @param level Level of the message.
+     * @param category Category of the message.
+     * @return True if messages of this level are logged at all, check this
+     * before building arguments that allocate.
+     */
+    public static boolean isLoggable(Level level, Category category) {
+        return WanderingHorde.logger.isLoggable(level);
+    }
+    
+    public static void log(Level level, Category category, String message) {
+        if (!WanderingHorde.logger.isLoggable(level))
+            return;
+        
+        publish(level, category, message, null, null, null, 0);
+    }
+    
+    public static void log(Level level, Category category, String format, Object arg) {
+        if (!WanderingHorde.logger.isLoggable(level))
+            return;
+        
+        publish(level, category, format, arg, null, null, 1);
+    }
+    
+    public static void log(Level level, Category category, String format, Object arg1, Object arg2) {
+        if (!WanderingHorde.logger.isLoggable(level))
+            return;
+        
+        publish(level, category, format, arg1, arg2, null, 2);
+    }
+    
+    public static void log(Level level, Category category, String format, Object arg1, Object arg2, Object arg3) {
+        if (!WanderingHorde.logger.isLoggable(level))
+            return;
+        
+        publish(level, category, format, arg1, arg2, arg3, 3);
+    }
+    
+    /**
+     * @param message Creates the message, only called if it is logged.
+     */
+    public static void log(Level level, Category category, Supplier<String> message) {
+        if (!WanderingHorde.logger.isLoggable(level))
+            return;
+        
+        int suppressed = category.admit(System.currentTimeMillis());
+        
+        if (suppressed >= 0)
+            logp(level, suffix(message.get(), suppressed));
+    }
+    
+    private static void publish(Level level, Category category, String format, Object arg1, Object arg2, Object arg3, int args) {
+        int suppressed = category.admit(System.currentTimeMillis());
+        
+        if (suppressed < 0)
+            return;
+        
+        String message;
+        
+        switch (args) {
+            case 0: message = format; break;
+            case 1: message = String.format(format, arg1); break;
+            case 2: message = String.format(format, arg1, arg2); break;
+            default: message = String.format(format, arg1, arg2, arg3); break;
+        }
+        
+        logp(level, suffix(message, suppressed));
+    }
+    
+    /**
+     * Logs a message with the class and method that called HordeLog as its
+     * source, the logger would find HordeLog itself otherwise.
+     */
+    private static void logp(Level level, String message) {
+        StackTraceElement caller = caller();
+        
+        if (caller == null)
+            WanderingHorde.logger.log(level, message);
+        else
+            WanderingHorde.logger.logp(level, caller.getClassName(), caller.getMethodName(), message);
+    }
+    
+    /**
+     * @return First stack frame outside of HordeLog, or null. Only looked up
+     * for messages that are logged.
+     */
+    private static StackTraceElement caller() {
+        String self = HordeLog.class.getName();
+        
+        for (StackTraceElement frame : new Throwable().getStackTrace())
+            if (!frame.getClassName().startsWith(self))
+                return frame;
+        
+        return null;
+    }
+    
+    private static String suffix(String message, int suppressed) {
+        return suppressed == 0 ? message : message + " (" + suppressed + " similar messages suppressed)";
+    }
+    
+    /**
+     * Moves the handlers of the mod's logger, or of its parents, behind a
+     * background thread.
+     */
+    public static synchronized void install() {
+        if (async != null)
+            return;
+        
+        Logger logger = WanderingHorde.logger;
+        List<Handler> handlers = new ArrayList<>();
+        
+        for (Logger current = logger; current != null; current = current.getParent()) {
+            for (Handler handler : current.getHandlers())
+                handlers.add(handler);
+            
+            if (!current.getUseParentHandlers())
+                break;
+        }
+        
+        if (handlers.isEmpty())
+            return;
+        
+        ownHandlers = logger.getHandlers();
+        useParentHandlers = logger.getUseParentHandlers();
+        
+        for (Handler handler : ownHandlers)
+            logger.removeHandler(handler);
+        
+        async = new AsyncHandler(handlers, Options.logQueueSize);
+        logger.addHandler(async);
+        logger.setUseParentHandlers(false);
+    }
+    
+    /**
+     * Writes the queued records and puts the original handlers back.
+     */
+    public static synchronized void close() {
+        if (async == null)
+            return;
+        
+        Logger logger = WanderingHorde.logger;
+        
+        logger.removeHandler(async);
+        async.close();
+        
+        for (Handler handler : ownHandlers)
+            logger.addHandler(handler);
+        
+        logger.setUseParentHandlers(useParentHandlers);
+        async = null;
+    }
+    
+    /**
+     * @return Number of records dropped because the queue was full.
+     */
+    public static long dropped() {
+        return async == null ? 0L : async.dropped.sum();
+    }
+    
+    /**
+     * Queues log records and publishes them to other handlers on a daemon
+     * thread. Records are dropped and counted when the queue is full, so a
+     * slow disk can't stall the server.
+     */
+    private static class AsyncHandler extends Handler {
+        private final List<Handler> handlers;
+        private final ArrayBlockingQueue<LogRecord> queue;
+        private final LongAdder dropped = new LongAdder();
+        private final Thread writer;
+        private volatile boolean running = true;
+        
+        AsyncHandler(List<Handler> handlers, int capacity) {
+            this.handlers = handlers;
+            this.queue = new ArrayBlockingQueue<>(Math.max(16, capacity));
+            
+            writer = new Thread(this::write, "WanderingHorde log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        
+        @Override
+        public void publish(LogRecord record) {
+            // caller's class and method of records that weren't logged through
+            // HordeLog are looked up lazily, do it on this thread.
+            record.getSourceClassName();
+            
+            if (queue.offer(record))
+                return;
+            
+            // errors are never dropped, even if the server has to wait.
+            if (record.getLevel().intValue() >= Level.SEVERE.intValue())
+                handle(record);
+            else
+                dropped.increment();
+        }
+        
+        @Override
+        public void flush() {
+            handlers.forEach(Handler::flush);
+        }
+        
+        @Override
+        public void close() {
+            running = false;
+            writer.interrupt();
+            
+            try {
+                writer.join(Options.journalCloseTimeout);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            
+            drain();
+            flush();
+        }
+        
+        private void write() {
+            while (running) {
+                try {
+                    LogRecord record = queue.poll(1, TimeUnit.SECONDS);
+                    
+                    if (record != null)
+                        handle(record);
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        
+        private synchronized void drain() {
+            LogRecord record;
+            
+            while ((record = queue.poll()) != null)
+                handle(record);
+        }
+        
+        private synchronized void handle(LogRecord record) {
+            for (Handler handler : handlers)
+                handler.publish(record);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.pveplands.wanderinghorde;
 
+import com.pveplands.wanderinghorde.HordeLog.Category;
 import com.wurmonline.math.TilePos;
 import com.wurmonline.server.Server;
 import com.wurmonline.server.creatures.Creature;
@@ -7,6 +8,7 @@ import com.wurmonline.server.creatures.ai.Path;
 import com.wurmonline.server.creatures.ai.PathTile;
 import com.wurmonline.server.creatures.ai.StaticPathFinder;
 import java.util.LinkedList;
+import java.util.SplittableRandom;
 import java.util.logging.Level;
 
 /**
@@ -17,6 +19,20 @@ public class HordePath {
     protected int index = 0;
 
     protected Path path;
+    
+    /**
+     * Tiles of the path in an array, and their coordinates packed with
+     * HordeStore.pack, built when first needed.
+     */
+    private PathTile[] tileArray;
+    private int[] packedTiles;
+    
+    /**
+     * True if other hordes walk the same tiles, see share(). Disposing a
+     * shared path leaves the tiles to the others.
+     */
+    private boolean shared = false;
+    
     protected TilePos start;
     protected TilePos end;
     protected Creature creature;
@@ -35,12 +51,26 @@ public class HordePath {
             pathfinder = new StaticPathFinder(false);
         
         if ((this.path = findPath()) == null) {
-            WanderingHorde.logger.warning(String.format("HordePath could not find a path from %s to %s!", start, end));
+            HordeLog.log(Level.WARNING, Category.PATH, "HordePath could not find a path from %s to %s!", start, end);
             path = new Path(new LinkedList<>()); // empty path.
         }
         
-        WanderingHorde.logger.log(WanderingHorde.devlog, String.format("Horde path from %s to %s:", start, end));
-        path.getPathTiles().forEach(x -> WanderingHorde.logger.log(WanderingHorde.devlog, String.format("X: %d, Y: %d", x.getTileX(), x.getTileY())));
+        HordeLog.log(Level.FINE, Category.PATH, "Horde path from %s to %s has %d tiles.", start, end, path.getSize());
+        HordeLog.log(Level.FINEST, Category.PATH, this::describeTiles);
+    }
+    
+    /**
+     * Creates a horde path from a saved path without pathfinding.
+     * @param start Start tile of the path.
+     * @param end End tile of the path.
+     * @param path Saved path tiles.
+     * @param index Current index in the path.
+     */
+    protected HordePath(TilePos start, TilePos end, Path path, int index) {
+        this.start = start;
+        this.end = end;
+        this.path = path;
+        this.index = index;
     }
     
     public HordePath(Path path) {
@@ -49,13 +79,27 @@ public class HordePath {
         this.path = path;
     }
 
+    /**
+     * @return Coordinates of all tiles of the path, for logging.
+     */
+    private String describeTiles() {
+        StringBuilder builder = new StringBuilder("Tiles of horde path from ").append(start).append(" to ").append(end).append(':');
+        
+        for (PathTile tile : path.getPathTiles())
+            builder.append(' ').append(tile.getTileX()).append(',').append(tile.getTileY());
+        
+        return builder.toString();
+    }
+    
     /**
      * Clears collections and reference types.
      */
     protected void dispose() {
         creature = null;
-        if (path != null) path.clear();
+        if (path != null && !shared) path.clear();
         path = null;
+        tileArray = null;
+        packedTiles = null;
     }
     
     private Path findPath() {
@@ -74,11 +118,12 @@ public class HordePath {
             creature = this.creature;
         
         LinkedList<PathTile> tiles = new LinkedList<>();
+        long bench = System.nanoTime();
         
         Path path = null;
+        int counter = 0;
         
         try {
-            int counter = 0;
             TilePos currentStart = TilePos.fromXY(start.x, start.y);
             
             while (true) {
@@ -86,12 +131,12 @@ public class HordePath {
                 tiles.addAll(path.getPathTiles());
                 
                 if (++counter > 20) {
-                    WanderingHorde.logger.warning("Can't complete path???");
+                    HordeLog.log(Level.WARNING, Category.PATH, "Can't complete path from %s to %s in 20 tries.", start, end);
                     break;
                 }
 
                 if (end.x == tiles.getLast().getTileX() && end.y == tiles.getLast().getTileY()) {
-                    WanderingHorde.logger.warning("Path completed.");
+                    HordeLog.log(Level.FINE, Category.PATH, "Path completed.");
                     break;
                 }
                 
@@ -103,6 +148,10 @@ public class HordePath {
             WanderingHorde.logger.log(Level.SEVERE, String.format("Can't get a path from %s to %s.", start, end), e);
         }
         
+        WanderingHorde.getMetrics().findPath.since(bench);
+        HordeEvents.findPath(bench, start.x, start.y, end.x, end.y, tiles.size(), counter,
+            !tiles.isEmpty() && end.x == tiles.getLast().getTileX() && end.y == tiles.getLast().getTileY());
+        
         return new Path(tiles);
     }
     
@@ -141,13 +190,27 @@ public class HordePath {
      * Gets a random coordinate around the end waypoint.
      * @param proximity Max distance away from the end waypoint.
      * @param minDist Min distance away from the end waypoint.
+     * @param random Random numbers of the horde.
      * @return Random coordinate around the end waypoint.
      */
-    public TilePos scatter(int proximity, int minDist) {
+    public TilePos scatter(int proximity, int minDist, SplittableRandom random) {
+        return scatter(end.x, end.y, proximity, minDist, random);
+    }
+    
+    /**
+     * Gets a random coordinate around a tile.
+     * @param endX Tile X coordinate of the end waypoint.
+     * @param endY Tile Y coordinate of the end waypoint.
+     * @param proximity Max distance away from the end waypoint.
+     * @param minDist Min distance away from the end waypoint.
+     * @param random Random numbers of the horde.
+     * @return Random coordinate around the end waypoint.
+     */
+    static TilePos scatter(int endX, int endY, int proximity, int minDist, SplittableRandom random) {
         // (5 - 1) = 0 - 3 * 1 = max(4)
         return TilePos.fromXY(
-            end.x + ( (WanderingHorde.random.nextInt(proximity - minDist) + minDist) * (WanderingHorde.random.nextBoolean() ? 1 : -1) ),
-            end.y + ( (WanderingHorde.random.nextInt(proximity - minDist) + minDist) * (WanderingHorde.random.nextBoolean() ? 1 : -1) ));
+            endX + ( (random.nextInt(proximity - minDist) + minDist) * (random.nextBoolean() ? 1 : -1) ),
+            endY + ( (random.nextInt(proximity - minDist) + minDist) * (random.nextBoolean() ? 1 : -1) ));
     }
     
     /**
@@ -168,6 +231,35 @@ public class HordePath {
         return path.getPathTiles().get(index);
     }
     
+    /**
+     * @return The tiles of the path as an array, don't modify it.
+     */
+    protected PathTile[] tiles() {
+        if (tileArray == null)
+            tileArray = path == null ? new PathTile[0] : path.getPathTiles().toArray(new PathTile[path.getSize()]);
+        
+        return tileArray;
+    }
+    
+    /**
+     * @return Coordinates of the tiles of the path packed with
+     * HordeStore.pack, don't modify it. The array is never changed, so other
+     * threads may read it.
+     */
+    protected int[] packedTiles() {
+        if (packedTiles == null) {
+            PathTile[] tiles = tiles();
+            int[] packed = new int[tiles.length];
+            
+            for (int i = 0; i < tiles.length; i++)
+                packed[i] = HordeStore.pack(tiles[i].getTileX(), tiles[i].getTileY());
+            
+            packedTiles = packed;
+        }
+        
+        return packedTiles;
+    }
+    
     /**
      * @return True if there is no path or no tiles in the path, otherwise false.
      */
@@ -190,10 +282,30 @@ public class HordePath {
         WanderingHorde.logger.info(String.format("Path reset from %s to %s, new path has been found.", start, end));
         this.path = updated;
         this.index = 0;
+        tileArray = null;
+        packedTiles = null;
         
         return true;
     }
     
+    /**
+     * Makes a horde path on the same tiles for another horde, e.g. one that
+     * split off, without pathfinding again. Each horde has its own index on
+     * the path, and finding a new path only changes the horde's own.
+     * @return Horde path with the same tiles and index.
+     */
+    protected HordePath share() {
+        HordePath copy = new HordePath(start, end, path, index);
+        
+        copy.creature = creature;
+        copy.tileArray = tileArray;
+        copy.packedTiles = packedTiles;
+        copy.shared = true;
+        shared = true;
+        
+        return copy;
+    }
+    
     /**
      * Takes this horde path and returns a reversed version of it. Used to
      * create the "back and forth" waypoint style.
@@ -219,8 +331,11 @@ public class HordePath {
         
         try {
             TilePos pos = TilePos.fromXY(anchorman.getTileX(), anchorman.getTileY());
+            long bench = System.nanoTime();
             
             Path updated = pathfinder.findPath(anchorman, pos.x, pos.y, dest.x, dest.y, true, Server.surfaceMesh.getSize());
+            WanderingHorde.getMetrics().findPath.since(bench);
+            HordeEvents.findPath(bench, pos.x, pos.y, dest.x, dest.y, updated == null ? 0 : updated.getSize(), 1, updated != null);
             
             if (updated == null) {
                 WanderingHorde.logger.warning(String.format("Path to new destination %s was not updated (could not find a path) for anchorman %s.", dest, anchorman));
@@ -232,6 +347,8 @@ public class HordePath {
             start = pos;
             path = updated;
             index = 0;
+            tileArray = null;
+            packedTiles = null;
         }
         catch (Exception e) {
             WanderingHorde.logger.log(Level.SEVERE, String.format("Can't update horde path to new destination %s for anchorman %s.", dest, anchorman), e);
@@ -0,0 +1,377 @@
+package com.pveplands.wanderinghorde;
+
+import com.pveplands.wanderinghorde.HordeLog.Category;
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Decides where the satellites walk in two phases, instead of in each
+ * satellite's own movement poll. In the planning phase, a plan per horde is
+ * made from a snapshot of the members' tiles, brains and the horde path,
+ * which doesn't touch any Wurm objects. In the apply phase on the next
+ * server poll, each planned command is checked to still fit the member and
+ * run (pathing, holding, settling). Both phases run on the server thread,
+ * planning is a few loops over the snapshot, which costs less than handing
+ * it to a worker thread and waiting for it.
+ *
+ * The plan also finds the squads that have all their members at the end of
+ * the path, and reports them to the waiting anchor, so their leaders don't
+ * check them in their polls. Squads with stragglers are still checked by
+ * their leaders, because teleporting or expelling a straggler changes the
+ * creatures.
+ *
+ * Targets aren't planned. A member is assigned a target in the poll in
+ * which it's attacked or sees a threat, waiting for the next plan would
+ * let it stand there for a plan interval. Assigning also changes the
+ * number of attackers per target that the next member's assignment reads,
+ * and the approach moves are already batched by the TargetAllocator.
+ *
+ * Satellites start scattering when a step takes them near the waypoint,
+ * see Horde.pathFinished(), so the plan only leads them there.
+ *
+ * Plans are applied in the order they were made.
+ */
+public class HordePlanner {
+    static final byte HOLD = 1;
+    static final byte WALK = 2;
+    static final byte PATH = 3;
+    static final byte SETTLE = 4;
+    static final byte PATH_SCATTER = 5;
+    static final byte FOLLOW = 6;
+    
+    private static final byte WALKING = MemberStatus.WalkingToWaypoint.code();
+    private static final byte SCATTERING = MemberStatus.Scattering.code();
+    
+    private final List<Plan> pending = new ArrayList<>();
+    
+    /**
+     * @return True if the satellites' walking and scattering is planned
+     * here, instead of in their polls.
+     */
+    public boolean isEnabled() {
+        return Options.planHordes;
+    }
+    
+    /**
+     * Applies the plans of the last poll, before the horde timers make new
+     * plans for the hordes that are due.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        apply();
+    }
+    
+    /**
+     * Makes a plan for a horde if it's due, run by the horde's plan timer.
+     * @param horde Horde to plan.
+     * @param current Current time in milliseconds.
+     */
+    void submit(Horde horde, long current) {
+        if (horde.destroyed)
+            return;
+        
+        boolean due = isEnabled() && isDue(horde, current);
+        int interval = WanderingHorde.getLoad().planInterval();
+        
+        // mid range hordes get their formation planned less often.
+        if (horde.anchorman != null && WanderingHorde.getInterest().tier(horde.anchorman.getTileX(), horde.anchorman.getTileY()) == InterestGrid.MID)
+            interval *= Options.interestMidScale;
+        
+        if (due)
+            horde.nextPlan = current + interval;
+        
+        // satellites that may not move yet are planned as soon as they may.
+        WanderingHorde.getTimers().schedule(horde.planTimer, Math.max(current + interval, horde.lastMovement + WanderingHorde.getLoad().satelliteMovement()));
+        
+        if (!due)
+            return;
+        
+        Plan plan = plan(horde);
+        plan.run();
+        pending.add(plan);
+    }
+    
+    /**
+     * Runs the commands of the plans made since the last poll.
+     */
+    public void apply() {
+        if (pending.isEmpty())
+            return;
+        
+        long bench = System.nanoTime();
+        
+        for (Plan plan : pending) {
+            try {
+                plan.apply();
+            }
+            catch (Exception e) {
+                WanderingHorde.logger.log(Level.SEVERE, String.format("Can't apply the plan of %s.", plan.horde), e);
+            }
+        }
+        
+        pending.clear();
+        WanderingHorde.getMetrics().applyPlans.since(bench);
+    }
+    
+    /**
+     * Drops the plans that weren't applied yet.
+     */
+    public void close() {
+        pending.clear();
+    }
+    
+    /**
+     * Takes a snapshot of a horde for planning, on the server thread.
+     * @param horde Horde to plan.
+     * @return Plan that hasn't been made yet.
+     */
+    Plan plan(Horde horde) {
+        return new Plan(horde);
+    }
+    
+    private static boolean isDue(Horde horde, long current) {
+        if (horde.destroyed || horde.forming || horde.abstracted || horde.resting || current < horde.nextPlan)
+            return false;
+        
+        if (horde.satellites.isEmpty() || horde.waypoints == null || horde.waypoints.isDirty())
+            return false;
+        
+        return current - horde.lastMovement >= WanderingHorde.getLoad().satelliteMovement();
+    }
+    
+    /**
+     * Snapshot of a horde and the commands planned for its satellites, in
+     * primitive arrays. Only the snapshot is read while planning, the horde
+     * and its members are only touched by apply().
+     */
+    static class Plan implements Runnable {
+        final Horde horde;
+        final HordePath path;
+        final Member[] members;
+        
+        /* snapshot */
+        final int[] tiles;
+        final byte[] brains;
+        final boolean[] pathing;
+        final int[] scatterTiles;
+        final int[] leaderTiles;
+        final int[] packedPath;
+        final int index;
+        final int endX;
+        final int endY;
+        final long taken;
+        
+        /* squads */
+        final Squad[] squads;
+        final Member[] squadLeaders;
+        final int[] squadSizes;
+        final int[] squadOf;
+        final boolean[] squadArrived;
+        
+        /* commands */
+        int[] commandMember = new int[16];
+        byte[] commandType = new byte[16];
+        int[] commandArg = new int[16];
+        int commands = 0;
+                
+        Plan(Horde horde) {
+            this.horde = horde;
+            this.path = horde.waypoints.path();
+            this.members = horde.satellites.toArray(Horde.emptyMembers);
+            this.packedPath = path.packedTiles();
+            this.index = path.index;
+            this.endX = path.end.x;
+            this.endY = path.end.y;
+            this.taken = WanderingHorde.now();
+            
+            squads = horde.squads.toArray(Horde.emptySquads);
+            squadLeaders = new Member[squads.length];
+            squadSizes = new int[squads.length];
+            squadArrived = new boolean[squads.length];
+            Map<Squad, Integer> squadIndex = new IdentityHashMap<>();
+            
+            for (int i = 0; i < squads.length; i++) {
+                squadLeaders[i] = squads[i].leader;
+                squadSizes[i] = squads[i].size();
+                squadIndex.put(squads[i], i);
+            }
+            
+            tiles = new int[members.length];
+            brains = new byte[members.length];
+            pathing = new boolean[members.length];
+            scatterTiles = new int[members.length];
+            leaderTiles = new int[members.length];
+            squadOf = new int[members.length];
+            
+            for (int i = 0; i < members.length; i++) {
+                Member member = members[i];
+                Path current = member.getStatus().getPath();
+                
+                tiles[i] = HordeStore.pack(member.getTileX(), member.getTileY());
+                brains[i] = member.getBrain().code();
+                pathing[i] = current != null && !current.isEmpty();
+                scatterTiles[i] = member.getScatterPacked();
+                leaderTiles[i] = member.squad == null || member.isLeader() ? -1 : HordeStore.pack(member.squad.leader.getTileX(), member.squad.leader.getTileY());
+                squadOf[i] = squadIndex.getOrDefault(member.squad, -1);
+            }
+        }
+        
+        /**
+         * Plans the satellites, the same decisions SatelliteAI makes for
+         * walking and scattering, and the same arrival checks as Squad.check
+         * without the stragglers.
+         */
+        @Override
+        public void run() {
+            long bench = System.nanoTime();
+            
+            Arrays.fill(squadArrived, true);
+            
+            for (int i = 0; i < members.length; i++) {
+                int x = HordeStore.unpackX(tiles[i]);
+                int y = HordeStore.unpackY(tiles[i]);
+                
+                if (squadOf[i] >= 0 && !near(x, y, endX, endY, Options.scatterDistance))
+                    squadArrived[squadOf[i]] = false;
+                
+                if (brains[i] == WALKING)
+                    planWalking(i, x, y);
+                else if (brains[i] == SCATTERING && !pathing[i] && scatterTiles[i] >= 0)
+                    add(i, scatterTiles[i] == tiles[i] ? SETTLE : PATH_SCATTER, 0);
+            }
+            
+            WanderingHorde.getMetrics().planHorde.since(bench);
+        }
+        
+        private void planWalking(int member, int x, int y) {
+            // satellites still walking their path aren't polled for movement.
+            if (pathing[member])
+                return;
+            
+            if (packedPath.length == 0)
+                return;
+            
+            // followers keep up with their squad leader, the leaders with the anchor.
+            if (leaderTiles[member] >= 0) {
+                add(member, FOLLOW, leaderTiles[member]);
+                return;
+            }
+            
+            // gets a tile from the list that's 1 tile behind the anchor if possible.
+            int start = Math.min(packedPath.length - 1, Math.max(0, index - 1));
+            
+            for (int i = start; i >= 0; i--) {
+                if (near(x, y, HordeStore.unpackX(packedPath[i]), HordeStore.unpackY(packedPath[i]), Options.satelliteAdvance)) {
+                    add(member, WALK, i);
+                    return;
+                }
+            }
+            
+            add(member, packedPath[0] == HordeStore.pack(x, y) ? HOLD : PATH, 0);
+        }
+        
+        private static boolean near(int x, int y, int tileX, int tileY, int distance) {
+            return Math.abs(x - tileX) <= distance && Math.abs(y - tileY) <= distance;
+        }
+        
+        private void add(int member, byte type, int arg) {
+            if (commands == commandType.length) {
+                commandMember = Arrays.copyOf(commandMember, commands << 1);
+                commandType = Arrays.copyOf(commandType, commands << 1);
+                commandArg = Arrays.copyOf(commandArg, commands << 1);
+            }
+            
+            commandMember[commands] = member;
+            commandType[commands] = type;
+            commandArg[commands] = arg;
+            commands++;
+        }
+        
+        /**
+         * Runs the planned commands on the server thread, skipping members
+         * that changed since the snapshot.
+         */
+        void apply() {
+            // the horde moved on to another path, or this one was found again.
+            if (horde.destroyed || horde.abstracted || horde.waypoints == null || horde.waypoints.path() != path || path.packedTiles() != packedPath)
+                return;
+            
+            SatelliteAI ai = WanderingHorde.getSatelliteAI();
+            PathTile[] pathTiles = path.tiles();
+            int skipped = 0;
+            
+            for (int n = 0; n < commands; n++) {
+                int i = commandMember[n];
+                Member member = members[i];
+                Path current = member.getStatus().getPath();
+                
+                if (member.horde != horde || member.isDead() || member.isFighting() || member.getBrain().code() != brains[i]
+                    || (current != null && !current.isEmpty()) != pathing[i]) {
+                    skipped++;
+                    continue;
+                }
+                
+                switch (commandType[n]) {
+                    case HOLD:
+                        ai.arrive(member, horde);
+                        break;
+                    case WALK:
+                        PathTile tile = pathTiles[commandArg[n]];
+                        
+                        if (!member.walkDeviated(tile.getTileX(), tile.getTileY(), tile.getTile(), tile.isOnSurface(), tile.getFloorLevel()))
+                            ai.arrive(member, horde);
+                        
+                        break;
+                    case PATH:
+                        member.startPathingToTile(pathTiles[commandArg[n]]);
+                        break;
+                    case SETTLE:
+                        horde.pathFinished(member);
+                        break;
+                    case PATH_SCATTER:
+                        member.startPathingToTile(member.getScatterTile());
+                        break;
+                    case FOLLOW:
+                        ai.follow(member, HordeStore.unpackX(commandArg[n]), HordeStore.unpackY(commandArg[n]));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            
+            if (skipped > 0 && HordeLog.isLoggable(Level.FINER, Category.AI))
+                HordeLog.log(Level.FINER, Category.AI, "Skipped %d planned commands of %s, the members changed.", skipped, horde);
+            
+            if (horde.anchorman != null && horde.anchorman.getBrain() == MemberStatus.WaitingForSatellites)
+                report();
+        }
+        
+        /**
+         * Reports the squads that arrived to the waiting anchor, unless they
+         * changed since the snapshot.
+         */
+        private void report() {
+            for (int s = 0; s < squads.length; s++) {
+                Squad squad = squads[s];
+                
+                if (!squadArrived[s] || squad.leader != squadLeaders[s] || squad.size() != squadSizes[s] || !horde.squads.contains(squad))
+                    continue;
+                
+                // the leader checked it since the snapshot.
+                if (squad.checkedPath == path && squad.checked >= taken)
+                    continue;
+                
+                // a snapshot from before the anchor arrived isn't used, see Horde.allNearDestination.
+                squad.checkedPath = path;
+                squad.checked = taken;
+                squad.arrived = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.pveplands.wanderinghorde;
+
+import java.util.Arrays;
+
+/**
+ * Maps the wurm Ids of horde members to their horde Id and role, using open
+ * addressing on primitive arrays. It is filled from the saved hordes before
+ * the server loads its creatures, so checking if a creature belongs to a
+ * horde while loading doesn't allocate or touch any horde objects.
+ */
+public class HordeRegistry {
+    private static final long EMPTY = 0L;
+    
+    private long[] keys;
+    private int[] values;
+    private int count = 0;
+    
+    public HordeRegistry() {
+        this(1024);
+    }
+    
+    /**
+     * @param capacity Expected number of members, the table grows if needed.
+     */
+    public HordeRegistry(int capacity) {
+        int length = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+        
+        keys = new long[length];
+        values = new int[length];
+    }
+    
+    /**
+     * Encodes a horde Id and role into a registry value.
+     */
+    public static int encode(int hordeId, boolean anchor) {
+        return (hordeId << 1) | (anchor ? 1 : 0);
+    }
+    
+    /**
+     * @return Horde Id of an encoded registry value.
+     */
+    public static int hordeId(int value) {
+        return value >>> 1;
+    }
+    
+    /**
+     * @return True if the encoded registry value is an anchor.
+     */
+    public static boolean isAnchor(int value) {
+        return (value & 1) != 0;
+    }
+    
+    /**
+     * Adds or updates a member.
+     * @param wurmId Wurm Id of the creature, must not be 0.
+     * @param value Value created with encode(int, boolean).
+     */
+    public void put(long wurmId, int value) {
+        if ((count + 1) << 1 > keys.length)
+            grow();
+        
+        int mask = keys.length - 1;
+        int slot = mix(wurmId) & mask;
+        
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == wurmId) {
+                values[slot] = value;
+                return;
+            }
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        keys[slot] = wurmId;
+        values[slot] = value;
+        count++;
+    }
+    
+    /**
+     * @param wurmId Wurm Id of the creature.
+     * @return Encoded value of the member, or -1 if it's not in a horde.
+     */
+    public int get(long wurmId) {
+        if (wurmId == EMPTY)
+            return -1;
+        
+        int mask = keys.length - 1;
+        int slot = mix(wurmId) & mask;
+        
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == wurmId)
+                return values[slot];
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * @param wurmId Wurm Id of the creature.
+     * @return True if the creature is registered as a horde member.
+     */
+    public boolean contains(long wurmId) {
+        return get(wurmId) >= 0;
+    }
+    
+    /**
+     * Removes a member.
+     * @param wurmId Wurm Id of the creature.
+     * @return True if the creature was registered.
+     */
+    public boolean remove(long wurmId) {
+        if (wurmId == EMPTY)
+            return false;
+        
+        int mask = keys.length - 1;
+        int slot = mix(wurmId) & mask;
+        
+        while (keys[slot] != wurmId) {
+            if (keys[slot] == EMPTY)
+                return false;
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        // shift following entries back, so lookups don't stop at a gap.
+        int gap = slot;
+        
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        
+        keys[gap] = EMPTY;
+        count--;
+        
+        return true;
+    }
+    
+    /**
+     * Removes all members of a horde.
+     * @param hordeId Id of the horde.
+     */
+    public void removeHorde(int hordeId) {
+        long[] members = new long[count];
+        int found = 0;
+        
+        // removing shifts entries around, collect the members first.
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != EMPTY && hordeId(values[i]) == hordeId)
+                members[found++] = keys[i];
+        
+        for (int i = 0; i < found; i++)
+            remove(members[i]);
+    }
+    
+    /**
+     * @return Number of registered members.
+     */
+    public int size() {
+        return count;
+    }
+    
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        count = 0;
+    }
+    
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        
+        keys = new long[oldKeys.length << 1];
+        values = new int[oldKeys.length << 1];
+        count = 0;
+        
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY)
+                put(oldKeys[i], oldValues[i]);
+    }
+    
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int)(key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,169 @@
+package com.pveplands.wanderinghorde;
+
+import com.pveplands.wanderinghorde.HordeLog.Category;
+import com.wurmonline.server.creatures.ai.Path;
+import java.util.logging.Level;
+
+/**
+ * Lets hordes rest while nothing can happen to them: pausing at a
+ * waypoint, camping at night, halted or waiting at a Persist endpoint, with
+ * all satellites idle or scattered, and no player nearby. The polls of a
+ * resting horde's members return right away instead of running the AI,
+ * which would only look up the horde and hold the members again.
+ *
+ * A resting horde wakes up when the horde's pause timer walks on, when one
+ * of its members is attacked, when the StateMachine breaks its camp at day,
+ * or when the anchor's check every Options.restCheckInterval finds a player
+ * nearby or prey in reach.
+ */
+public class HordeRest {
+    private static final MemberStatus[] restingSatellite = {
+        MemberStatus.Idle, MemberStatus.Scattered, MemberStatus.WaitingOneTurn, MemberStatus.GatherAroundAnchor
+    };
+    
+    private static final int restingMask = mask(restingSatellite);
+    
+    /**
+     * Checks if a member's horde rests or wakes up.
+     * @param member Polled horde member.
+     * @param current Current time in milliseconds.
+     * @return True if the horde rests, and the member must not be polled by
+     * the horde AI.
+     */
+    public boolean poll(Member member, long current) {
+        Horde horde = member.horde;
+        
+        if (horde == null || horde.destroyed)
+            return false;
+        
+        if (!horde.resting) {
+            if (horde.anchorman == member && canRest(horde))
+                rest(horde, current);
+            
+            return false;
+        }
+        
+        if (member.isFighting()) {
+            wake(horde, "a member is fighting");
+            return false;
+        }
+        
+        if (horde.anchorman != member || current < horde.wakeAt)
+            return true;
+        
+        String reason = check(horde, current);
+        
+        if (reason == null) {
+            horde.wakeAt = current + Options.restCheckInterval;
+            return true;
+        }
+        
+        wake(horde, reason);
+        return false;
+    }
+    
+    /**
+     * Wakes a horde up, e.g. when a GM gives it new orders.
+     * @param horde Resting horde.
+     * @param reason Why the horde wakes, for the log.
+     */
+    public void wake(Horde horde, String reason) {
+        if (!horde.resting)
+            return;
+        
+        horde.resting = false;
+        WanderingHorde.getMetrics().wakes.increment();
+        HordeLog.log(Level.FINE, Category.AI, "%s wakes up, %s.", horde, reason);
+    }
+    
+    /**
+     * @return Number of resting hordes.
+     */
+    public int countResting() {
+        int count = 0;
+        
+        for (Horde horde : WanderingHorde.getHordes())
+            if (horde.resting)
+                count++;
+        
+        return count;
+    }
+    
+    /**
+     * @return True if the anchor waits, none of the satellites moves or
+     * fights, and no player is near enough to wake the horde again.
+     */
+    private static boolean canRest(Horde horde) {
+        if (horde.forming || horde.abstracted || !isRestingAnchor(horde.anchorman.getBrain()))
+            return false;
+        
+        if (horde.anchorman.isFighting() || isPathing(horde.anchorman))
+            return false;
+        
+        // scans of the member table reject most moving hordes without
+        // touching the satellites.
+        if (!horde.table.allBrains(restingMask, horde.anchorman.row()) || horde.table.hasTargets())
+            return false;
+        
+        for (int i = 0; i < horde.satellites.size(); i++) {
+            Member satellite = horde.satellites.get(i);
+            
+            if (!isRestingSatellite(satellite.getBrain()) || satellite.getWalkingTarget() != null || satellite.isFighting() || isPathing(satellite))
+                return false;
+        }
+        
+        // it would wake up at the next check, and fall asleep again.
+        return !WanderingHorde.isPlayerNear(horde.anchorman.getTileX(), horde.anchorman.getTileY(), Options.restWakeDistance);
+    }
+    
+    private void rest(Horde horde, long current) {
+        horde.resting = true;
+        horde.wakeAt = current + Options.restCheckInterval;
+        WanderingHorde.getMetrics().rests.increment();
+        HordeLog.log(Level.FINE, Category.AI, "%s rests.", horde);
+    }
+    
+    /**
+     * @return Why the horde has to wake up, or null if it can keep resting.
+     */
+    private static String check(Horde horde, long current) {
+        Member anchorman = horde.anchorman;
+        
+        if (WanderingHorde.isPlayerNear(anchorman.getTileX(), anchorman.getTileY(), Options.restWakeDistance))
+            return "a player is near";
+        
+        horde.threats.scan(current);
+        
+        if (!horde.threats.isEmpty())
+            return "prey is near";
+        
+        return null;
+    }
+    
+    private static boolean isRestingAnchor(MemberStatus brain) {
+        return brain == MemberStatus.Idle || brain == MemberStatus.WaitingOneTurn || brain == MemberStatus.CampAtNight;
+    }
+    
+    private static boolean isRestingSatellite(MemberStatus brain) {
+        for (MemberStatus status : restingSatellite)
+            if (status == brain)
+                return true;
+        
+        return false;
+    }
+    
+    private static int mask(MemberStatus[] statuses) {
+        int mask = 0;
+        
+        for (MemberStatus status : statuses)
+            mask |= 1 << status.code();
+        
+        return mask;
+    }
+    
+    private static boolean isPathing(Member member) {
+        Path path = member.getStatus().getPath();
+        
+        return path != null && !path.isEmpty();
+    }
+}
@@ -0,0 +1,817 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.math.TilePos;
+import com.wurmonline.server.Server;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.Creatures;
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Saves hordes, their members, waypoints and paths to a versioned binary
+ * file. The file is read before the server loads its creatures, so the
+ * memberships are in the HordeRegistry by then, and the hordes are rebuilt
+ * when a player comes near them. Changes between two snapshots are kept in
+ * the HordeJournal and replayed after loading the file.
+ */
+public class HordeStore {
+    /**
+     * "WHRD", marks a horde store file.
+     */
+    static final int MAGIC = 0x57485244;
+    static final short VERSION = 3;
+    
+    private static final byte FLAG_CAMPFIRES = 1;
+    private static final byte FLAG_MOVING = 2;
+    private static final byte FLAG_SCATTERED = 4;
+    private static final byte FLAG_REPLENISH = 8;
+    private static final byte FLAG_ABSTRACTED = 16;
+    
+    private static final byte MEMBER_AT_DESTINATION = 1;
+    private static final byte MEMBER_SCATTERED = 2;
+    
+    /**
+     * Hordes read from the file that haven't been restored yet, by horde Id.
+     * Their members are only in the HordeRegistry, and the hordes are woken
+     * up when a player comes near one of them.
+     */
+    private final Map<Integer, StoredHorde> dormant = new LinkedHashMap<>();
+    
+    private long lastSaved = WanderingHorde.now();
+    
+    /**
+     * @return The file the hordes are saved to.
+     */
+    public static File getFile() {
+        return new File(Options.storeFile);
+    }
+    
+    /**
+     * Compacts the journal into a new snapshot if the save interval has
+     * passed.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        if (current - lastSaved < Options.saveInterval)
+            return;
+        
+        lastSaved = current;
+        WanderingHorde.getJournal().compact();
+    }
+    
+    /**
+     * Writes all hordes to the store file on this thread.
+     * @return True if the hordes have been saved.
+     */
+    public boolean save() {
+        try {
+            writeFile(snapshot(WanderingHorde.getJournal().getGeneration()));
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.SEVERE, String.format("Can't save hordes to %s.", getFile()), e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Writes all hordes into memory, so the file can be written by another
+     * thread.
+     * @param generation Journal generation that starts with this snapshot,
+     * see HordeJournal.
+     * @return Contents of the store file.
+     * @throws IOException Never, unless writing the horde data fails.
+     */
+    public byte[] snapshot(long generation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        long bench = System.nanoTime();
+        List<Horde> hordes = new ArrayList<>();
+        
+        for (Horde horde : WanderingHorde.getHordes())
+            if (!horde.destroyed && horde.anchorman != null && horde.waypoints != null)
+                hordes.add(horde);
+        
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(generation);
+            out.writeInt(hordes.size() + dormant.size());
+            
+            for (Horde horde : hordes)
+                write(out, horde);
+            
+            // dormant hordes are written as they were loaded.
+            for (StoredHorde stored : dormant.values())
+                stored.write(out);
+        }
+        
+        WanderingHorde.logger.info(String.format("Snapshot of %d hordes (%d bytes) took %.2f ms.", hordes.size() + dormant.size(), bytes.size(), (System.nanoTime() - bench) / 1000000d));
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Writes a single horde into memory for a journal record, e.g. when it
+     * was created or split off another horde.
+     * @param horde Horde to write.
+     * @return Horde data after the store version, or null if the horde
+     * can't be saved yet and is left to the next snapshot.
+     */
+    static byte[] serialize(Horde horde) {
+        if (horde.destroyed || horde.anchorman == null || horde.waypoints == null)
+            return null;
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(VERSION);
+            write(out, horde);
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.SEVERE, String.format("Can't write %s for the journal.", horde), e);
+            return null;
+        }
+        
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Writes a snapshot to a temporary file, and replaces the store file
+     * with it.
+     * @param snapshot Contents created with snapshot().
+     * @throws IOException If the file could not be written.
+     */
+    static void writeFile(byte[] snapshot) throws IOException {
+        File file = getFile();
+        File temp = new File(file.getPath() + ".tmp");
+        
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(snapshot);
+            out.getChannel().force(false);
+        }
+        
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Reads the store file and registers all members in the HordeRegistry.
+     * Called before the server loads its creatures.
+     */
+    public void load() {
+        File file = getFile();
+        
+        if (!file.exists()) {
+            WanderingHorde.logger.info(String.format("No saved hordes in %s.", file));
+            return;
+        }
+        
+        long bench = System.nanoTime();
+        long generation;
+        dormant.clear();
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a horde store file.");
+            
+            short version = in.readShort();
+            
+            if (version != VERSION)
+                throw new IOException(String.format("Unsupported horde store version %d.", version));
+            
+            generation = in.readLong();
+            
+            int count = in.readInt();
+            
+            for (int i = 0; i < count; i++) {
+                StoredHorde stored = StoredHorde.read(in);
+                dormant.put(stored.id, stored);
+            }
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.SEVERE, String.format("Can't load hordes from %s.", file), e);
+            dormant.clear();
+            return;
+        }
+        
+        WanderingHorde.getJournal().replay(this, generation);
+        
+        HordeRegistry registry = WanderingHorde.getRegistry();
+        int members = 0;
+        
+        for (StoredHorde stored : dormant.values()) {
+            registry.put(stored.anchorId, HordeRegistry.encode(stored.id, true));
+            
+            for (long satellite : stored.satelliteIds)
+                registry.put(satellite, HordeRegistry.encode(stored.id, false));
+            
+            members += stored.satelliteIds.length + 1;
+        }
+        
+        WanderingHorde.logger.info(String.format("Loaded %d hordes with %d members in %.2f ms.", dormant.size(), members, (System.nanoTime() - bench) / 1000000d));
+    }
+    
+    /**
+     * Rebuilds the loaded hordes that are near a player once the server and
+     * its creatures have been loaded. All other hordes stay dormant until
+     * one of their members is polled with a player nearby.
+     */
+    public void restore() {
+        long bench = System.nanoTime();
+        int restored = 0;
+        
+        for (StoredHorde stored : dormant.values().toArray(new StoredHorde[dormant.size()])) {
+            Creature anchorman = Creatures.getInstance().getCreatureOrNull(stored.anchorId);
+            
+            if (anchorman != null && isPlayerNear(anchorman) && restore(stored))
+                restored++;
+        }
+        
+        WanderingHorde.logger.info(String.format("Restored %d hordes near players in %.2f ms, %d hordes are dormant.", restored, (System.nanoTime() - bench) / 1000000d, dormant.size()));
+    }
+    
+    /**
+     * Wakes up the dormant horde of a polled member if a player is near it,
+     * checked at most once per Options.dormantCheckInterval per horde.
+     * @param member Polled member of the dormant horde.
+     * @param hordeId Id of the dormant horde.
+     * @param current Current time in milliseconds.
+     * @return True if the horde has been restored.
+     */
+    public boolean wake(Creature member, int hordeId, long current) {
+        StoredHorde stored;
+        
+        if ((stored = dormant.get(hordeId)) == null || current < stored.nextCheck)
+            return false;
+        
+        stored.nextCheck = current + Options.dormantCheckInterval;
+        
+        if (!isPlayerNear(member))
+            return false;
+        
+        WanderingHorde.logger.info(String.format("Player near dormant horde %d, restoring it.", hordeId));
+        return restore(stored);
+    }
+    
+    /**
+     * @param hordeId Id of the horde.
+     * @return True if the horde was loaded, but hasn't been restored yet.
+     */
+    public boolean isDormant(int hordeId) {
+        return dormant.containsKey(hordeId);
+    }
+    
+    /**
+     * Creates the horde objects, paths and member states of a dormant horde.
+     * @return True if the horde has been restored.
+     */
+    private boolean restore(StoredHorde stored) {
+        Horde horde;
+        
+        dormant.remove(stored.id);
+        
+        try {
+            horde = stored.restore();
+        }
+        catch (Exception e) {
+            WanderingHorde.logger.log(Level.SEVERE, String.format("Can't restore horde %d.", stored.id), e);
+            horde = null;
+        }
+        
+        // members that don't exist anymore are left out when adding it
+        // again. Only the horde's own keys, not a scan of the registry.
+        WanderingHorde.getRegistry().remove(stored.anchorId);
+        
+        for (long satellite : stored.satelliteIds)
+            WanderingHorde.getRegistry().remove(satellite);
+        
+        if (horde == null)
+            return false;
+        
+        WanderingHorde.register(horde);
+        WanderingHorde.logger.info(String.format("Restored %s.", horde));
+        return true;
+    }
+    
+    private static boolean isPlayerNear(Creature creature) {
+        return WanderingHorde.isPlayerNear(creature.getTileX(), creature.getTileY(), Options.wakeDistance);
+    }
+    
+    /**
+     * Applies a journal record to the loaded hordes.
+     * @param type Record type, e.g. HordeJournal.MEMBER_ADDED.
+     * @param hordeId Id of the horde.
+     * @param wurmId Wurm Id of the member, or 0.
+     */
+    void apply(byte type, int hordeId, long wurmId) {
+        apply(type, hordeId, wurmId, null);
+    }
+    
+    /**
+     * Applies a journal record to the loaded hordes.
+     * @param type Record type, e.g. HordeJournal.HORDE_CREATED.
+     * @param hordeId Id of the horde, or of the horde a new one split off.
+     * @param wurmId Wurm Id of the member, Id of the horde that merged, or 0.
+     * @param data Horde written by serialize(), or null.
+     */
+    void apply(byte type, int hordeId, long wurmId, byte[] data) {
+        StoredHorde stored;
+        
+        if (type == HordeJournal.HORDE_CREATED || type == HordeJournal.HORDE_SPLIT) {
+            StoredHorde added;
+            
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                short version = in.readShort();
+                
+                if (version != VERSION)
+                    throw new IOException(String.format("Unsupported horde store version %d.", version));
+                
+                added = StoredHorde.read(in);
+            }
+            catch (IOException e) {
+                WanderingHorde.logger.log(Level.SEVERE, String.format("Can't read horde from journal record %d for horde %d.", type, hordeId), e);
+                return;
+            }
+            
+            // the members of the new horde were in the one it split off.
+            if (type == HordeJournal.HORDE_SPLIT && (stored = dormant.get(hordeId)) != null)
+                stored.leave(added);
+            
+            dormant.put(added.id, added);
+            return;
+        }
+        
+        if ((stored = dormant.get(hordeId)) == null) {
+            WanderingHorde.logger.warning(String.format("Horde journal record %d for unknown horde %d.", type, hordeId));
+            return;
+        }
+        
+        switch (type) {
+            case HordeJournal.MEMBER_ADDED:
+                stored.addSatellite(wurmId);
+                break;
+            case HordeJournal.MEMBER_REMOVED:
+                if (stored.anchorId == wurmId)
+                    stored.anchorId = 0L;
+                else
+                    stored.removeSatellite(wurmId);
+                break;
+            case HordeJournal.ANCHOR_CHANGED:
+                if (stored.anchorId == wurmId)
+                    break;
+                
+                stored.removeSatellite(wurmId);
+                stored.anchorId = wurmId;
+                stored.anchorBrain = (byte)MemberStatus.Idle.ordinal();
+                stored.anchorFlags = 0;
+                break;
+            case HordeJournal.HORDE_REMOVED:
+                dormant.remove(hordeId);
+                break;
+            case HordeJournal.HORDE_MERGED:
+                StoredHorde other;
+                
+                if ((other = dormant.remove((int)wurmId)) == null) {
+                    WanderingHorde.logger.warning(String.format("Horde journal merge of unknown horde %d into %d.", wurmId, hordeId));
+                    break;
+                }
+                
+                stored.join(other);
+                break;
+            default:
+                WanderingHorde.logger.warning(String.format("Unknown horde journal record %d.", type));
+                break;
+        }
+    }
+    
+    private static void write(DataOutputStream out, Horde horde) throws IOException {
+        Waypoints waypoints = horde.waypoints;
+        
+        out.writeInt(horde.id);
+        out.writeUTF(horde.creatorName == null ? "" : horde.creatorName);
+        out.writeLong(horde.created.getTime());
+        out.writeInt(horde.size);
+        out.writeLong(horde.seed);
+        
+        out.writeByte(horde.templates.length);
+        for (int template : horde.templates)
+            out.writeInt(template);
+        
+        byte flags = 0;
+        if (horde.campfires) flags |= FLAG_CAMPFIRES;
+        if (horde.moving) flags |= FLAG_MOVING;
+        if (horde.scattered) flags |= FLAG_SCATTERED;
+        if (horde.replenish) flags |= FLAG_REPLENISH;
+        if (horde.abstracted) flags |= FLAG_ABSTRACTED;
+        out.writeByte(flags);
+        
+        out.writeLong(horde.replenishQuantity);
+        out.writeLong(horde.replenishInterval);
+        
+        out.writeByte(waypoints.getBehaviour().ordinal());
+        out.writeInt(waypoints.getIndex());
+        
+        List<TilePos> points = waypoints.getPoints();
+        out.writeInt(points.size());
+        for (TilePos point : points)
+            out.writeInt(pack(point.x, point.y));
+        
+        // dirty paths are found again after loading.
+        List<HordePath> paths = waypoints.isDirty() ? new ArrayList<>() : waypoints.getPaths();
+        out.writeInt(paths.size());
+        
+        for (HordePath path : paths) {
+            LinkedList<PathTile> tiles = path.isEmpty() ? new LinkedList<>() : path.get().getPathTiles();
+            
+            out.writeInt(pack(path.start.x, path.start.y));
+            out.writeInt(pack(path.end.x, path.end.y));
+            out.writeInt(path.index);
+            out.writeInt(tiles.size());
+            
+            for (PathTile tile : tiles) {
+                out.writeInt(pack(tile.getTileX(), tile.getTileY()) | (tile.isOnSurface() ? 1 << 30 : 0));
+                out.writeByte(tile.getFloorLevel());
+            }
+        }
+        
+        writeMember(out, horde.anchorman);
+        
+        Member[] satellites = horde.satellites.toArray(Horde.emptyMembers);
+        out.writeInt(satellites.length);
+        
+        for (Member satellite : satellites)
+            writeMember(out, satellite);
+    }
+    
+    private static void writeMember(DataOutputStream out, Member member) throws IOException {
+        byte flags = 0;
+        if (member.isAtDestination()) flags |= MEMBER_AT_DESTINATION;
+        if (member.isScattered()) flags |= MEMBER_SCATTERED;
+        
+        out.writeLong(member.getWurmId());
+        out.writeByte(member.getBrain().code());
+        out.writeByte(flags);
+    }
+    
+    /**
+     * Packs tile coordinates into an int, bit 30 is free for the surface flag.
+     */
+    static int pack(int x, int y) {
+        return (x & 0x7FFF) | ((y & 0x7FFF) << 15);
+    }
+    
+    static int unpackX(int packed) {
+        return packed & 0x7FFF;
+    }
+    
+    static int unpackY(int packed) {
+        return (packed >>> 15) & 0x7FFF;
+    }
+    
+    /**
+     * A horde as it was read from the store file, in primitive arrays.
+     */
+    private static class StoredHorde {
+        int id;
+        String creatorName;
+        long created;
+        int size;
+        long seed;
+        int[] templates;
+        byte flags;
+        long replenishQuantity;
+        long replenishInterval;
+        byte behaviour;
+        int waypointIndex;
+        int[] points;
+        int[] pathStarts;
+        int[] pathEnds;
+        int[] pathIndices;
+        int[][] pathTiles;
+        byte[][] pathFloors;
+        long anchorId;
+        byte anchorBrain;
+        byte anchorFlags;
+        long[] satelliteIds;
+        byte[] satelliteBrains;
+        byte[] satelliteFlags;
+        
+        /**
+         * Next time a polled member checks for players nearby, not saved.
+         */
+        long nextCheck;
+        
+        static StoredHorde read(DataInputStream in) throws IOException {
+            StoredHorde stored = new StoredHorde();
+            
+            stored.id = in.readInt();
+            stored.creatorName = in.readUTF();
+            stored.created = in.readLong();
+            stored.size = in.readInt();
+            stored.seed = in.readLong();
+            
+            stored.templates = new int[in.readUnsignedByte()];
+            for (int i = 0; i < stored.templates.length; i++)
+                stored.templates[i] = in.readInt();
+            
+            stored.flags = in.readByte();
+            stored.replenishQuantity = in.readLong();
+            stored.replenishInterval = in.readLong();
+            stored.behaviour = in.readByte();
+            stored.waypointIndex = in.readInt();
+            
+            stored.points = new int[in.readInt()];
+            for (int i = 0; i < stored.points.length; i++)
+                stored.points[i] = in.readInt();
+            
+            int paths = in.readInt();
+            stored.pathStarts = new int[paths];
+            stored.pathEnds = new int[paths];
+            stored.pathIndices = new int[paths];
+            stored.pathTiles = new int[paths][];
+            stored.pathFloors = new byte[paths][];
+            
+            for (int i = 0; i < paths; i++) {
+                stored.pathStarts[i] = in.readInt();
+                stored.pathEnds[i] = in.readInt();
+                stored.pathIndices[i] = in.readInt();
+                stored.pathTiles[i] = new int[in.readInt()];
+                stored.pathFloors[i] = new byte[stored.pathTiles[i].length];
+                
+                for (int n = 0; n < stored.pathTiles[i].length; n++) {
+                    stored.pathTiles[i][n] = in.readInt();
+                    stored.pathFloors[i][n] = in.readByte();
+                }
+            }
+            
+            stored.anchorId = in.readLong();
+            stored.anchorBrain = in.readByte();
+            stored.anchorFlags = in.readByte();
+            
+            int satellites = in.readInt();
+            stored.satelliteIds = new long[satellites];
+            stored.satelliteBrains = new byte[satellites];
+            stored.satelliteFlags = new byte[satellites];
+            
+            for (int i = 0; i < satellites; i++) {
+                stored.satelliteIds[i] = in.readLong();
+                stored.satelliteBrains[i] = in.readByte();
+                stored.satelliteFlags[i] = in.readByte();
+            }
+            
+            return stored;
+        }
+        
+        /**
+         * Adds a satellite, unless it's already a member.
+         */
+        void addSatellite(long wurmId) {
+            int length = satelliteIds.length;
+            
+            if (anchorId == wurmId)
+                return;
+            
+            for (long satellite : satelliteIds)
+                if (satellite == wurmId)
+                    return;
+            
+            satelliteIds = Arrays.copyOf(satelliteIds, length + 1);
+            satelliteBrains = Arrays.copyOf(satelliteBrains, length + 1);
+            satelliteFlags = Arrays.copyOf(satelliteFlags, length + 1);
+            satelliteIds[length] = wurmId;
+        }
+        
+        void removeSatellite(long wurmId) {
+            for (int i = 0; i < satelliteIds.length; i++) {
+                if (satelliteIds[i] != wurmId)
+                    continue;
+                
+                int last = satelliteIds.length - 1;
+                satelliteIds[i] = satelliteIds[last];
+                satelliteBrains[i] = satelliteBrains[last];
+                satelliteFlags[i] = satelliteFlags[last];
+                satelliteIds = Arrays.copyOf(satelliteIds, last);
+                satelliteBrains = Arrays.copyOf(satelliteBrains, last);
+                satelliteFlags = Arrays.copyOf(satelliteFlags, last);
+                return;
+            }
+        }
+        
+        /**
+         * Removes the members of a horde that split off this one.
+         */
+        void leave(StoredHorde part) {
+            Set<Long> moved = new HashSet<>();
+            int kept = 0;
+            
+            moved.add(part.anchorId);
+            for (long satellite : part.satelliteIds)
+                moved.add(satellite);
+            
+            // one pass instead of removing the members one by one.
+            for (int i = 0; i < satelliteIds.length; i++) {
+                if (moved.contains(satelliteIds[i]))
+                    continue;
+                
+                satelliteIds[kept] = satelliteIds[i];
+                satelliteBrains[kept] = satelliteBrains[i];
+                satelliteFlags[kept] = satelliteFlags[i];
+                kept++;
+            }
+            
+            size = Math.max(kept, size - (satelliteIds.length - kept));
+            satelliteIds = Arrays.copyOf(satelliteIds, kept);
+            satelliteBrains = Arrays.copyOf(satelliteBrains, kept);
+            satelliteFlags = Arrays.copyOf(satelliteFlags, kept);
+        }
+        
+        /**
+         * Takes in the members and templates of a horde that merged into
+         * this one, its anchor joins as a satellite.
+         */
+        void join(StoredHorde other) {
+            int length = satelliteIds.length;
+            int joined = other.satelliteIds.length + (other.anchorId != 0L ? 1 : 0);
+            
+            // brains and flags stay 0, they fall in with this horde.
+            satelliteIds = Arrays.copyOf(satelliteIds, length + joined);
+            satelliteBrains = Arrays.copyOf(satelliteBrains, length + joined);
+            satelliteFlags = Arrays.copyOf(satelliteFlags, length + joined);
+            System.arraycopy(other.satelliteIds, 0, satelliteIds, length, other.satelliteIds.length);
+            
+            if (other.anchorId != 0L)
+                satelliteIds[length + joined - 1] = other.anchorId;
+            
+            size += other.size + 1;
+            templates = Horde.joinTemplates(templates, other.templates);
+        }
+        
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(id);
+            out.writeUTF(creatorName);
+            out.writeLong(created);
+            out.writeInt(size);
+            out.writeLong(seed);
+            
+            out.writeByte(templates.length);
+            for (int template : templates)
+                out.writeInt(template);
+            
+            out.writeByte(flags);
+            out.writeLong(replenishQuantity);
+            out.writeLong(replenishInterval);
+            out.writeByte(behaviour);
+            out.writeInt(waypointIndex);
+            
+            out.writeInt(points.length);
+            for (int point : points)
+                out.writeInt(point);
+            
+            out.writeInt(pathTiles.length);
+            
+            for (int i = 0; i < pathTiles.length; i++) {
+                out.writeInt(pathStarts[i]);
+                out.writeInt(pathEnds[i]);
+                out.writeInt(pathIndices[i]);
+                out.writeInt(pathTiles[i].length);
+                
+                for (int n = 0; n < pathTiles[i].length; n++) {
+                    out.writeInt(pathTiles[i][n]);
+                    out.writeByte(pathFloors[i][n]);
+                }
+            }
+            
+            out.writeLong(anchorId);
+            out.writeByte(anchorBrain);
+            out.writeByte(anchorFlags);
+            
+            out.writeInt(satelliteIds.length);
+            
+            for (int i = 0; i < satelliteIds.length; i++) {
+                out.writeLong(satelliteIds[i]);
+                out.writeByte(satelliteBrains[i]);
+                out.writeByte(satelliteFlags[i]);
+            }
+        }
+        
+        /**
+         * Creates the horde and links its loaded members.
+         * @return Null if none of the members exist anymore.
+         */
+        Horde restore() {
+            Horde horde = new Horde(id, creatorName, created, size, templates);
+            
+            if (!horde.init())
+                return null;
+            
+            horde.setSeed(seed);
+            
+            horde.campfires = (flags & FLAG_CAMPFIRES) != 0;
+            horde.moving = (flags & FLAG_MOVING) != 0;
+            horde.scattered = (flags & FLAG_SCATTERED) != 0;
+            horde.replenish = (flags & FLAG_REPLENISH) != 0;
+            horde.abstracted = (flags & FLAG_ABSTRACTED) != 0;
+            horde.replenishQuantity = replenishQuantity;
+            horde.replenishInterval = replenishInterval;
+            horde.spawned = true;
+            
+            TilePos[] tiles = new TilePos[points.length];
+            for (int i = 0; i < points.length; i++)
+                tiles[i] = TilePos.fromXY(unpackX(points[i]), unpackY(points[i]));
+            
+            horde.waypoints = new Waypoints(Waypoints.WaypointBehaviour.values()[behaviour], tiles);
+            
+            if (pathTiles.length > 0) {
+                List<HordePath> paths = new ArrayList<>(pathTiles.length);
+                
+                for (int i = 0; i < pathTiles.length; i++)
+                    paths.add(restorePath(i));
+                
+                horde.waypoints.restore(waypointIndex, paths);
+            }
+            else horde.waypoints.resetPathsThreaded();
+            
+            Member anchorman = link(horde, anchorId, anchorBrain, anchorFlags);
+            
+            for (int i = 0; i < satelliteIds.length; i++) {
+                Member satellite = link(horde, satelliteIds[i], satelliteBrains[i], satelliteFlags[i]);
+                
+                if (satellite != null)
+                    horde.addSatellite(satellite);
+            }
+            
+            if (anchorman == null) {
+                if (horde.satellites.isEmpty())
+                    return null;
+                
+                // anchor is gone, the first satellite leads instead.
+                anchorman = horde.satellites.get(0);
+                horde.removeSatellite(anchorman);
+                WanderingHorde.logger.warning(String.format("Anchor of saved horde %d is gone, %s leads instead.", id, anchorman));
+            }
+            
+            horde.anchorman = anchorman;
+            horde.waypoints.referenceCreature = anchorman;
+            
+            return horde;
+        }
+        
+        private HordePath restorePath(int index) {
+            LinkedList<PathTile> tiles = new LinkedList<>();
+            
+            for (int n = 0; n < pathTiles[index].length; n++) {
+                int packed = pathTiles[index][n];
+                int x = unpackX(packed);
+                int y = unpackY(packed);
+                boolean surface = (packed & (1 << 30)) != 0;
+                int tile = surface ? Server.surfaceMesh.getTile(x, y) : Server.caveMesh.getTile(x, y);
+                
+                tiles.add(new PathTile(x, y, tile, surface, pathFloors[index][n]));
+            }
+            
+            return new HordePath(
+                TilePos.fromXY(unpackX(pathStarts[index]), unpackY(pathStarts[index])),
+                TilePos.fromXY(unpackX(pathEnds[index]), unpackY(pathEnds[index])),
+                new Path(tiles), pathIndices[index]);
+        }
+        
+        private static Member link(Horde horde, long wurmId, byte brain, byte flags) {
+            Creature creature = Creatures.getInstance().getCreatureOrNull(wurmId);
+            
+            if (!(creature instanceof Member) || creature.isDead()) {
+                WanderingHorde.logger.warning(String.format("Saved member %d of horde %d does not exist anymore.", wurmId, horde.id));
+                return null;
+            }
+            
+            Member member = (Member)creature;
+            member.horde = horde;
+            member.setBrain(MemberStatus.of(brain));
+            member.setAtDestination((flags & MEMBER_AT_DESTINATION) != 0);
+            member.setScattered((flags & MEMBER_SCATTERED) != 0);
+            
+            return member;
+        }
+    }
+}
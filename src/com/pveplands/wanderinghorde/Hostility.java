@@ -0,0 +1,175 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.creatures.CreatureTemplate;
+import com.wurmonline.server.creatures.CreatureTemplateFactory;
+import java.util.logging.Level;
+
+/**
+ * Predator and prey relations between creature templates, compiled from
+ * Options.hostilities into a bit matrix indexed by template Id. Checking if
+ * a creature attacks another one is a single bit test.
+ */
+public class Hostility {
+    /**
+     * One row of prey bits per predator template Id.
+     */
+    private long[] matrix = new long[0];
+    
+    /**
+     * Number of longs in each row.
+     */
+    private int words = 0;
+    
+    /**
+     * Number of rows, which is the highest known template Id + 1.
+     */
+    private int size = 0;
+    
+    private boolean compiled = false;
+    
+    /**
+     * Compiles the relations from Options.hostilities. Must be called after
+     * the creature templates have been loaded.
+     * @return True if the relations were compiled without errors.
+     */
+    public boolean compile() {
+        boolean success = true;
+        int highest = 0;
+        CreatureTemplate[] templates = null;
+        
+        try {
+            templates = CreatureTemplateFactory.getInstance().getTemplates();
+            
+            for (CreatureTemplate template : templates)
+                highest = Math.max(highest, template.getTemplateId());
+        }
+        catch (Exception e) {
+            WanderingHorde.logger.log(Level.SEVERE, "Can't read creature templates for hostilities.", e);
+            success = false;
+        }
+        
+        String[] entries = Options.hostilities == null ? new String[0] : Options.hostilities.split(";");
+        int[] predators = new int[entries.length * 2];
+        int[] prey = new int[entries.length * 2];
+        int count = 0;
+        
+        for (String entry : entries) {
+            entry = entry.trim();
+            
+            if (entry.isEmpty())
+                continue;
+            
+            boolean mutual = entry.contains("<>");
+            String[] sides = entry.split(mutual ? "<>" : ">");
+            
+            if (sides.length != 2) {
+                WanderingHorde.logger.warning(String.format("Malformed hostility \"%s\", expected \"predator>prey\" or \"a<>b\".", entry));
+                success = false;
+                continue;
+            }
+            
+            int left = resolve(sides[0].trim(), templates);
+            int right = resolve(sides[1].trim(), templates);
+            
+            if (left < 0 || right < 0) {
+                WanderingHorde.logger.warning(String.format("Unknown creature template in hostility \"%s\", ignoring it.", entry));
+                success = false;
+                continue;
+            }
+            
+            predators[count] = left;
+            prey[count++] = right;
+            highest = Math.max(highest, Math.max(left, right));
+            
+            if (mutual) {
+                predators[count] = right;
+                prey[count++] = left;
+            }
+        }
+        
+        size = highest + 1;
+        words = (size + 63) >>> 6;
+        matrix = new long[size * words];
+        
+        for (int i = 0; i < count; i++)
+            matrix[predators[i] * words + (prey[i] >>> 6)] |= 1L << prey[i];
+        
+        compiled = true;
+        WanderingHorde.logger.info(String.format("Compiled %d hostilities for %d creature templates.", count, size));
+        
+        return success;
+    }
+    
+    /**
+     * Resolves a template Id or template name.
+     * @return Template Id, or -1 if it is unknown.
+     */
+    private int resolve(String value, CreatureTemplate[] templates) {
+        try {
+            int id = Integer.parseInt(value);
+            return id >= 0 ? id : -1;
+        }
+        catch (NumberFormatException e) {
+            // not an Id, try the template names.
+        }
+        
+        if (templates != null) {
+            for (CreatureTemplate template : templates)
+                if (template.getName().equalsIgnoreCase(value))
+                    return template.getTemplateId();
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * @return True if the relations have been compiled.
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+    
+    /**
+     * Checks whether a creature template attacks another creature template.
+     * @param predator Template Id of the attacking creature.
+     * @param prey Template Id of the other creature.
+     * @return True if the predator is hostile towards the prey.
+     */
+    public boolean isHostile(int predator, int prey) {
+        if (predator < 0 || predator >= size || prey < 0 || prey >= size)
+            return false;
+        
+        return (matrix[predator * words + (prey >>> 6)] & (1L << prey)) != 0;
+    }
+    
+    /**
+     * Combines the prey of several templates into a single row, so a horde
+     * with mixed templates can test candidates with a single bit test.
+     * @param templates Template Ids of the predators.
+     * @return Row of prey bits, to be used with isPrey(long[], int).
+     */
+    public long[] preyOf(int ... templates) {
+        long[] row = new long[words];
+        
+        for (int template : templates) {
+            if (template < 0 || template >= size)
+                continue;
+            
+            for (int i = 0; i < words; i++)
+                row[i] |= matrix[template * words + i];
+        }
+        
+        return row;
+    }
+    
+    /**
+     * @param row Row of prey bits created with preyOf(int...).
+     * @param prey Template Id of the other creature.
+     * @return True if the template is prey in this row.
+     */
+    public static boolean isPrey(long[] row, int prey) {
+        int word = prey >>> 6;
+        
+        return prey >= 0 && word < row.length && (row[word] & (1L << prey)) != 0;
+    }
+}
@@ -0,0 +1,242 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.math.TilePos;
+import com.wurmonline.server.WurmCalendar;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Records what the horde AI gets from outside of itself: the time, hordes
+ * with their random seeds and waypoints, night and day, and members that
+ * died. Together with the per horde random numbers, the simulator can play
+ * a recording back tick for tick, to look into a slow or stuck horde seen on
+ * a live server. Recording is off unless Options.recordInputs is set.
+ */
+public class InputRecorder {
+    /**
+     * "WHIR", marks a horde input recording.
+     */
+    static final int MAGIC = 0x57484952;
+    static final short VERSION = 1;
+    
+    static final byte TICK = 1;
+    static final byte HORDE = 2;
+    static final byte NIGHT = 3;
+    static final byte DIED = 4;
+    
+    private DataOutputStream out = null;
+    private boolean failed = false;
+    private long lastTick = 0L;
+    private boolean night = false;
+    
+    /**
+     * Receives the records of a recording in the order they were recorded.
+     */
+    public interface Replay {
+        void tick(long time) throws Exception;
+        void horde(long time, int hordeId, long seed, int size, Waypoints.WaypointBehaviour behaviour, TilePos[] points) throws Exception;
+        void night(long time, boolean night) throws Exception;
+        void died(long time, int hordeId, boolean anchor) throws Exception;
+    }
+    
+    /**
+     * Records a tick if the interval has passed, and changes of night and
+     * day.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        if (!open() || current - lastTick < Options.recordInterval)
+            return;
+        
+        lastTick = current;
+        
+        try {
+            if (WurmCalendar.isNight() != night) {
+                night = !night;
+                out.writeByte(NIGHT);
+                out.writeLong(current);
+                out.writeBoolean(night);
+            }
+            
+            out.writeByte(TICK);
+            out.writeLong(current);
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    /**
+     * Records a horde that was added or restored.
+     * @param horde Horde with its waypoints.
+     */
+    public void horde(Horde horde) {
+        boolean opened = out != null;
+        
+        // opening the recording records all hordes.
+        if (!open() || !opened || horde.waypoints == null)
+            return;
+        
+        try {
+            List<TilePos> points = horde.waypoints.getPoints();
+            
+            out.writeByte(HORDE);
+            out.writeLong(WanderingHorde.now());
+            out.writeInt(horde.id);
+            out.writeLong(horde.seed);
+            out.writeInt(horde.size);
+            out.writeByte(horde.waypoints.getBehaviour().ordinal());
+            out.writeInt(points.size());
+            
+            for (TilePos point : points)
+                out.writeInt(HordeStore.pack(point.x, point.y));
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    /**
+     * Records a horde member that died or was destroyed.
+     * @param hordeId Id of the member's horde.
+     * @param anchor True if the member was the anchor.
+     */
+    public void died(int hordeId, boolean anchor) {
+        if (!open())
+            return;
+        
+        try {
+            out.writeByte(DIED);
+            out.writeLong(WanderingHorde.now());
+            out.writeInt(hordeId);
+            out.writeBoolean(anchor);
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    public void close() {
+        if (out == null)
+            return;
+        
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.WARNING, "Can't close the horde input recording.", e);
+        }
+        
+        out = null;
+    }
+    
+    /**
+     * Plays a recording back.
+     * @param file Recorded file.
+     * @param target Receives the records.
+     * @return Number of records played back.
+     * @throws Exception If the file can't be read, or the target failed.
+     */
+    public static int replay(File file, Replay target) throws Exception {
+        int count = 0;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() > VERSION)
+                throw new IOException(String.format("%s is not a supported horde input recording.", file));
+            
+            while (true) {
+                byte type;
+                long time;
+                
+                try {
+                    type = in.readByte();
+                    time = in.readLong();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                
+                switch (type) {
+                    case TICK:
+                        target.tick(time);
+                        break;
+                    case HORDE:
+                        int hordeId = in.readInt();
+                        long seed = in.readLong();
+                        int size = in.readInt();
+                        Waypoints.WaypointBehaviour behaviour = Waypoints.WaypointBehaviour.values()[in.readByte()];
+                        TilePos[] points = new TilePos[in.readInt()];
+                        
+                        for (int i = 0; i < points.length; i++) {
+                            int packed = in.readInt();
+                            points[i] = TilePos.fromXY(HordeStore.unpackX(packed), HordeStore.unpackY(packed));
+                        }
+                        
+                        target.horde(time, hordeId, seed, size, behaviour, points);
+                        break;
+                    case NIGHT:
+                        target.night(time, in.readBoolean());
+                        break;
+                    case DIED:
+                        target.died(time, in.readInt(), in.readBoolean());
+                        break;
+                    default:
+                        throw new IOException(String.format("Unknown record %d in %s.", type, file));
+                }
+                
+                count++;
+            }
+        }
+        
+        return count;
+    }
+    
+    /**
+     * @return True if recording is on and the file is open.
+     */
+    private boolean open() {
+        if (out != null)
+            return true;
+        
+        if (!Options.recordInputs || failed)
+            return false;
+        
+        File file = new File(Options.recordFile);
+        
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+        }
+        catch (IOException e) {
+            fail(e);
+            return false;
+        }
+        
+        WanderingHorde.logger.info(String.format("Recording horde inputs to %s.", file));
+        
+        // hordes that were added before recording started.
+        for (Horde horde : WanderingHorde.getHordes())
+            horde(horde);
+        
+        return true;
+    }
+    
+    private void fail(IOException e) {
+        WanderingHorde.logger.log(Level.SEVERE, String.format("Can't record horde inputs to %s, recording stopped.", Options.recordFile), e);
+        failed = true;
+        close();
+    }
+}
@@ -0,0 +1,242 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.Players;
+import com.wurmonline.server.Server;
+import com.wurmonline.server.creatures.ai.PathTile;
+import com.wurmonline.server.players.Player;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Coarse grid of where players are, which gives every tile a priority tier
+ * by the distance to the closest player. Near members, within
+ * Options.interestNear tiles, are simulated in full. Mid range members,
+ * within Options.lodDistance, get fewer formation updates. Far members are
+ * simulated as a token by LevelOfDetail.
+ *
+ * The grid has cells of Options.interestCell tiles, and keeps the distance
+ * in cells of every cell to the closest cell with a player. It's only
+ * updated around the cells a player left or entered, so looking up a tier
+ * is an array read, and a player walking within a cell costs nothing.
+ */
+public class InterestGrid {
+    public static final byte NEAR = 0;
+    public static final byte MID = 1;
+    public static final byte FAR = 2;
+    
+    private int side = 0;
+    private int cellSize = 0;
+    private int nearCells = 0;
+    private int farCells = 0;
+    private int cap = 0;
+    
+    /**
+     * Distance in cells of each cell to the closest cell with a player,
+     * capped at cap.
+     */
+    private byte[] distance = null;
+    private int[] players = null;
+    
+    private final Map<Long, Tracked> tracked = new HashMap<>();
+    private int generation = 0;
+    private long crossings = 0L;
+    
+    private static class Tracked {
+        int cell;
+        int seen;
+    }
+    
+    /**
+     * Moves players that crossed into another cell, and removes those that
+     * logged out.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        if (Server.surfaceMesh == null)
+            return;
+        
+        if (!isBuilt())
+            build();
+        
+        generation++;
+        
+        for (Player player : Players.getInstance().getPlayers()) {
+            int cell = cell(player.getTileX(), player.getTileY());
+            Tracked entry = tracked.get(player.getWurmId());
+            
+            if (entry == null) {
+                entry = new Tracked();
+                entry.cell = cell;
+                tracked.put(player.getWurmId(), entry);
+                enter(cell);
+            }
+            else if (entry.cell != cell) {
+                leave(entry.cell);
+                enter(cell);
+                entry.cell = cell;
+                crossings++;
+            }
+            
+            entry.seen = generation;
+        }
+        
+        for (Iterator<Tracked> it = tracked.values().iterator(); it.hasNext(); ) {
+            Tracked entry = it.next();
+            
+            if (entry.seen != generation) {
+                leave(entry.cell);
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * @param tileX Tile X coordinate.
+     * @param tileY Tile Y coordinate.
+     * @return NEAR, MID or FAR, always NEAR if the level of detail is off.
+     */
+    public byte tier(int tileX, int tileY) {
+        if (Options.lodDistance <= 0 || distance == null)
+            return NEAR;
+        
+        int cells = distance[cell(tileX, tileY)];
+        
+        return cells <= nearCells ? NEAR : cells <= farCells ? MID : FAR;
+    }
+    
+    /**
+     * @param tileX Tile X coordinate.
+     * @param tileY Tile Y coordinate.
+     * @return True if the tile is at least a cell beyond the far tier, so
+     * hordes there don't flip between full and token simulation at the
+     * edge.
+     */
+    public boolean isBeyondFar(int tileX, int tileY) {
+        return Options.lodDistance > 0 && distance != null && distance[cell(tileX, tileY)] > farCells + 1;
+    }
+    
+    /**
+     * @return Number of cells with at least one player.
+     */
+    public int countPlayerCells() {
+        int count = 0;
+        
+        for (int i = 0; players != null && i < players.length; i++)
+            if (players[i] > 0)
+                count++;
+        
+        return count;
+    }
+    
+    /**
+     * @return Number of hordes in each tier, by the tile of their anchor or
+     * their token.
+     */
+    public int[] countHordes() {
+        int[] count = new int[3];
+        
+        for (Horde horde : WanderingHorde.getHordes().toArray(WanderingHorde.emptyHordes)) {
+            if (horde.abstracted) {
+                PathTile token = horde.waypoints.path().current();
+                count[tier(token.getTileX(), token.getTileY())]++;
+            }
+            else if (horde.anchorman != null)
+                count[tier(horde.anchorman.getTileX(), horde.anchorman.getTileY())]++;
+        }
+        
+        return count;
+    }
+    
+    /**
+     * @return Number of times a player walked into another cell.
+     */
+    public long countCrossings() {
+        return crossings;
+    }
+    
+    /**
+     * @return True if the grid fits the map and the options.
+     */
+    private boolean isBuilt() {
+        return distance != null && cellSize == Math.max(1, Options.interestCell)
+            && side == (Server.surfaceMesh.getSize() + cellSize - 1) / cellSize
+            && nearCells == cells(Options.interestNear) && farCells == cells(Options.lodDistance);
+    }
+    
+    /**
+     * Sets the grid up for the map size and options, without players.
+     */
+    private void build() {
+        cellSize = Math.max(1, Options.interestCell);
+        side = (Server.surfaceMesh.getSize() + cellSize - 1) / cellSize;
+        nearCells = cells(Options.interestNear);
+        farCells = cells(Options.lodDistance);
+        cap = Math.min(Byte.MAX_VALUE, farCells + 2);
+        distance = new byte[side * side];
+        players = new int[side * side];
+        Arrays.fill(distance, (byte)cap);
+        
+        // the players are added again by the poll.
+        tracked.clear();
+    }
+    
+    private int cells(int tiles) {
+        return (Math.max(0, tiles) + cellSize - 1) / cellSize;
+    }
+    
+    private int cell(int tileX, int tileY) {
+        int x = Math.min(side - 1, Math.max(0, tileX / cellSize));
+        int y = Math.min(side - 1, Math.max(0, tileY / cellSize));
+        
+        return y * side + x;
+    }
+    
+    /**
+     * A player entered a cell, the cells around it can only get closer.
+     */
+    private void enter(int cell) {
+        if (players[cell]++ > 0)
+            return;
+        
+        int cx = cell % side;
+        int cy = cell / side;
+        
+        for (int y = Math.max(0, cy - cap + 1); y <= Math.min(side - 1, cy + cap - 1); y++) {
+            for (int x = Math.max(0, cx - cap + 1); x <= Math.min(side - 1, cx + cap - 1); x++) {
+                int d = Math.max(Math.abs(x - cx), Math.abs(y - cy));
+                
+                if (d < distance[y * side + x])
+                    distance[y * side + x] = (byte)d;
+            }
+        }
+    }
+    
+    /**
+     * The last player left a cell, the cells around it look for the closest
+     * player cell again.
+     */
+    private void leave(int cell) {
+        if (--players[cell] > 0)
+            return;
+        
+        int cx = cell % side;
+        int cy = cell / side;
+        
+        for (int y = Math.max(0, cy - cap + 1); y <= Math.min(side - 1, cy + cap - 1); y++)
+            for (int x = Math.max(0, cx - cap + 1); x <= Math.min(side - 1, cx + cap - 1); x++)
+                distance[y * side + x] = (byte)closest(x, y);
+    }
+    
+    private int closest(int cx, int cy) {
+        int best = cap;
+        
+        for (int y = Math.max(0, cy - cap + 1); y <= Math.min(side - 1, cy + cap - 1); y++)
+            for (int x = Math.max(0, cx - cap + 1); x <= Math.min(side - 1, cx + cap - 1); x++)
+                if (players[y * side + x] > 0)
+                    best = Math.min(best, Math.max(Math.abs(x - cx), Math.abs(y - cy)));
+        
+        return best;
+    }
+}
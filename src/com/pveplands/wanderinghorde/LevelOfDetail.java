@@ -0,0 +1,183 @@
+package com.pveplands.wanderinghorde;
+
+import com.pveplands.wanderinghorde.HordeLog.Category;
+import com.wurmonline.math.TilePos;
+import com.wurmonline.server.behaviours.CreatureBehaviour;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.logging.Level;
+
+/**
+ * Simulates hordes without a player nearby as a token on their path. The
+ * anchor's poll moves the token along the horde path at the horde's speed
+ * (Options.anchorAdvance tiles per Options.anchorMovement), while all
+ * members are parked with the empty path and their polls return right away.
+ * There is no pathfinding, formation or sound for such a horde, so the cost
+ * of the hordes grows with the hordes players can see, not with all hordes.
+ *
+ * When the token gets into reach of a player, the members are put back
+ * together around it and the horde AI takes over again. Which hordes are
+ * far is looked up in the InterestGrid.
+ */
+public class LevelOfDetail {
+    /**
+     * Checks if a member's horde switches between the full and the token
+     * simulation, and moves the token if it's the anchor.
+     * @param member Polled horde member.
+     * @param current Current time in milliseconds.
+     * @return True if the horde is abstract, and the member must not be
+     * polled by the horde AI.
+     */
+    public boolean poll(Member member, long current) {
+        Horde horde = member.horde;
+        
+        if (horde == null || horde.destroyed)
+            return false;
+        
+        if (horde.anchorman != member)
+            return horde.abstracted;
+        
+        if (current >= horde.nextLodCheck) {
+            horde.nextLodCheck = current + Options.lodCheckInterval;
+            
+            if (horde.abstracted) {
+                PathTile token = horde.waypoints.path().current();
+                
+                if (WanderingHorde.getInterest().tier(token.getTileX(), token.getTileY()) != InterestGrid.FAR) {
+                    materialize(horde);
+                    return false;
+                }
+            }
+            // a bit farther than materializing, so a player at the edge doesn't flip it each check.
+            else if (canCollapse(horde) && WanderingHorde.getInterest().isBeyondFar(member.getTileX(), member.getTileY()))
+                collapse(horde);
+        }
+        
+        if (!horde.abstracted)
+            return false;
+        
+        advance(horde, current);
+        return true;
+    }
+    
+    /**
+     * @return Number of hordes that are simulated as a token.
+     */
+    public int countAbstract() {
+        int count = 0;
+        
+        for (Horde horde : WanderingHorde.getHordes())
+            if (horde.abstracted)
+                count++;
+        
+        return count;
+    }
+    
+    /**
+     * @return True if the horde is travelling or waiting, and none of its
+     * members is fighting.
+     */
+    private static boolean canCollapse(Horde horde) {
+        if (Options.lodDistance <= 0 || horde.forming || !horde.spawned)
+            return false;
+        
+        if (horde.waypoints == null || horde.waypoints.isDirty() || horde.waypoints.path() == null || horde.waypoints.path().isEmpty())
+            return false;
+        
+        if (horde.anchorman.getBrain() == MemberStatus.WalkingToTarget || horde.anchorman.isFighting())
+            return false;
+        
+        if (horde.table.hasTargets())
+            return false;
+        
+        for (int i = 0; i < horde.satellites.size(); i++) {
+            Member satellite = horde.satellites.get(i);
+            
+            if (satellite.isFighting())
+                return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Parks all members of the horde, from now on only the token moves.
+     */
+    private void collapse(Horde horde) {
+        horde.abstracted = true;
+        horde.anchorman.getStatus().setPath(WanderingHorde.getEmptyPath());
+        
+        for (int i = 0; i < horde.satellites.size(); i++)
+            horde.satellites.get(i).getStatus().setPath(WanderingHorde.getEmptyPath());
+        
+        WanderingHorde.getMetrics().collapses.increment();
+        HordeLog.log(Level.FINE, Category.AI, "No player near %s, it continues as a token.", horde);
+    }
+    
+    /**
+     * Moves the token like the anchor AI moves the anchor, without waiting
+     * for satellites.
+     */
+    private void advance(Horde horde, long current) {
+        Member anchorman = horde.anchorman;
+        HordePath hp;
+        
+        switch (anchorman.getBrain()) {
+            case WalkingToWaypoint:
+                if (current - horde.lastMovement < WanderingHorde.getLoad().anchorMovement())
+                    break;
+                
+                horde.lastMovement = current;
+                hp = horde.waypoints.path();
+                
+                if (hp.index < hp.get().getSize() - 1) {
+                    hp.advance(Options.anchorAdvance);
+                    break;
+                }
+                
+                // all members are at the token, no need to wait for them.
+                WanderingHorde.getStates().fire(anchorman, StateMachine.Trigger.Arrived);
+                horde.arrived(current);
+                break;
+            case WaitingForSatellites:
+                horde.arrived(current);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Teleports the parked members to the token, the anchor on the token
+     * and the satellites around it, scattered if the horde is pausing at
+     * the waypoint.
+     */
+    private void materialize(Horde horde) {
+        HordePath hp = horde.waypoints.path();
+        PathTile token = hp.current();
+        Member anchorman = horde.anchorman;
+        boolean pausing = anchorman.getBrain() == MemberStatus.WaitingOneTurn;
+        
+        horde.abstracted = false;
+        place(anchorman, anchorman, token.getTileX(), token.getTileY());
+        
+        for (int i = 0; i < horde.satellites.size(); i++) {
+            Member satellite = horde.satellites.get(i);
+            
+            if (pausing) {
+                TilePos dest = hp.scatter(Options.scatterDistance, 1, horde.random);
+                
+                WanderingHorde.getStates().set(satellite, MemberStatus.Scattered);
+                place(satellite, anchorman, dest.x, dest.y);
+            }
+            else place(satellite, anchorman, horde.getSatellitePos(token.getTileX()), horde.getSatellitePos(token.getTileY()));
+        }
+        
+        WanderingHorde.getMetrics().materializations.increment();
+        HordeLog.log(Level.FINE, Category.AI, "Player near the token of %s, it is put back together at %d, %d.", horde, token.getTileX(), token.getTileY());
+    }
+    
+    private static void place(Member member, Member anchorman, int tileX, int tileY) {
+        CreatureBehaviour.blinkTo(member, (tileX << 2) + 2f, (tileY << 2) + 2f, anchorman.getLayer(), anchorman.getPosZDirts(), anchorman.getBridgeId(), anchorman.getFloorLevel());
+        member.getStatus().setPath(null);
+    }
+}
@@ -0,0 +1,137 @@
+package com.pveplands.wanderinghorde;
+
+import com.pveplands.wanderinghorde.HordeLog.Category;
+import java.util.logging.Level;
+
+/**
+ * Stretches the movement intervals of the hordes while the server is under
+ * pressure. Every Options.loadInterval, the average time between server
+ * polls and the share of it spent in the horde AI are compared with
+ * Options.loadTickTarget and Options.loadShareTarget. Over either target,
+ * the intervals of anchors, satellites and formation plans are stretched
+ * by Options.loadStep, up to Options.loadMaxScale times the configured
+ * ones. Well below both targets, they shrink back by the same step.
+ *
+ * The AI reads the effective intervals from here instead of Options. The
+ * simulator doesn't poll the governor, so its runs stay the same on fast
+ * and slow machines.
+ */
+public class LoadGovernor {
+    private long windowStart = 0L;
+    private long lastPoll = 0L;
+    private long ticks = 0L;
+    private long tickNanos = 0L;
+    private long hordeNanos = 0L;
+    
+    private double tickMillis = 0d;
+    private double share = 0d;
+    private double scale = 1d;
+    
+    private int anchorMovement = Options.anchorMovement;
+    private int satelliteMovement = Options.satelliteMovement;
+    private int planInterval = Options.planInterval;
+    
+    /**
+     * Measures the time since the last server poll, and adapts the
+     * intervals at the end of each window.
+     */
+    public void poll() {
+        long now = System.nanoTime();
+        
+        if (lastPoll != 0L) {
+            ticks++;
+            tickNanos += now - lastPoll;
+        }
+        
+        lastPoll = now;
+        
+        if (windowStart == 0L) {
+            windowStart = now;
+            return;
+        }
+        
+        if (now - windowStart < Options.loadInterval * 1000000L || ticks == 0L)
+            return;
+        
+        tickMillis = tickNanos / (double)ticks / 1000000d;
+        share = hordeNanos / (double)(now - windowStart);
+        
+        windowStart = now;
+        ticks = 0L;
+        tickNanos = 0L;
+        hordeNanos = 0L;
+        
+        adapt();
+    }
+    
+    /**
+     * Adds time spent in the horde AI to the current window.
+     * @param nanos Time in nanoseconds.
+     */
+    public void spent(long nanos) {
+        hordeNanos += nanos;
+    }
+    
+    /**
+     * @return Effective time in milliseconds between two anchor moves.
+     */
+    public int anchorMovement() {
+        return anchorMovement;
+    }
+    
+    /**
+     * @return Effective time in milliseconds between two satellite moves.
+     */
+    public int satelliteMovement() {
+        return satelliteMovement;
+    }
+    
+    /**
+     * @return Effective time in milliseconds between two plans of the same
+     * horde.
+     */
+    public int planInterval() {
+        return planInterval;
+    }
+    
+    /**
+     * @return Factor the configured intervals are stretched by.
+     */
+    public double getScale() {
+        return scale;
+    }
+    
+    /**
+     * @return Average time in milliseconds between server polls in the last
+     * window.
+     */
+    public double getTickMillis() {
+        return tickMillis;
+    }
+    
+    /**
+     * @return Share of the last window spent in the horde AI, 0 to 1.
+     */
+    public double getShare() {
+        return share;
+    }
+    
+    private void adapt() {
+        double before = scale;
+        
+        if (!Options.adaptiveCadence)
+            scale = 1d;
+        else if (tickMillis > Options.loadTickTarget || share > Options.loadShareTarget)
+            scale = Math.min(Options.loadMaxScale, scale * Options.loadStep);
+        // only recovers well below the targets, so it doesn't flip back and forth.
+        else if (tickMillis < Options.loadTickTarget * 0.75d && share < Options.loadShareTarget * 0.75d)
+            scale = Math.max(1d, scale / Options.loadStep);
+        
+        anchorMovement = (int)(Options.anchorMovement * scale);
+        satelliteMovement = (int)(Options.satelliteMovement * scale);
+        planInterval = (int)(Options.planInterval * scale);
+        
+        if (scale != before)
+            HordeLog.log(Level.INFO, Category.AI, "Server tick %.1f ms, hordes %.1f%%, movement intervals scaled by %.2f.", tickMillis, share * 100d, scale);
+    }
+}
@@ -1,28 +1,172 @@
 package com.pveplands.wanderinghorde;
 
+import com.pveplands.wanderinghorde.HordeLog.Category;
 import com.wurmonline.math.TilePos;
 import com.wurmonline.server.Server;
 import com.wurmonline.server.behaviours.CreatureBehaviour;
 import com.wurmonline.server.creatures.Creature;
 import com.wurmonline.server.creatures.CreatureTemplate;
-import com.wurmonline.server.creatures.CreatureTemplateIds;
+import com.wurmonline.server.creatures.ai.Path;
 import com.wurmonline.server.creatures.ai.PathTile;
-import com.wurmonline.server.zones.VolaTile;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 
 public class Member extends Creature {
     protected Horde horde;
-    protected boolean atDestination = false;
-    protected boolean scattered = false;
-    protected PathTile scatterdest;
-    protected MemberStatus brain = MemberStatus.Idle;
-    protected int deviationCounter = Options.satelliteCoordinateDeviation;
-    protected int lastDeviationX = 0;
-    protected int lastDeviationY = 0;
-    protected Creature walkingTarget = null;
+    
+    /**
+     * Table and row of this member's AI state, see row().
+     */
+    private MemberTable table = null;
+    private int slot = -1;
+    private boolean released = false;
+    
+    /**
+     * Slot of this member in the watchdog, or -1.
+     */
+    protected int watchSlot = -1;
+    
+    /**
+     * Time in milliseconds a mid range satellite may update its formation
+     * again, see InterestGrid.
+     */
+    protected long nextFormation = 0L;
+    
+    /**
+     * Squad of a satellite, which it leads or follows, see Squad.
+     */
+    protected Squad squad = null;
+    
+    /**
+     * @return Row of this member's AI state in its horde's MemberTable, or
+     * -1 without a horde. A member that moved to another horde takes its
+     * state along on the first access.
+     */
+    int row() {
+        if (horde == null || released)
+            return -1;
+        
+        if (table != horde.table) {
+            slot = horde.table.move(table, slot);
+            table = horde.table;
+        }
+        
+        return slot;
+    }
+    
+    /**
+     * Frees the row of a member that died or left its horde for good, its
+     * state reads as the defaults afterwards.
+     */
+    void release() {
+        if (table != null)
+            table.free(slot);
+        
+        table = null;
+        slot = -1;
+        released = true;
+    }
+    
+    public MemberStatus getBrain() {
+        int row = row();
+        
+        return row < 0 ? MemberStatus.Idle : MemberStatus.of(horde.table.brains[row]);
+    }
+    
+    /**
+     * Only the StateMachine changes the status, or restoring a saved horde.
+     */
+    void setBrain(MemberStatus brain) {
+        int row = row();
+        
+        if (row >= 0)
+            horde.table.brains[row] = brain.code();
+    }
+    
+    /**
+     * @return Creature this member walks to and attacks, or null.
+     */
+    public Creature getWalkingTarget() {
+        int row = row();
+        
+        return row < 0 ? null : horde.table.targets[row];
+    }
+    
+    public void setWalkingTarget(Creature target) {
+        int row = row();
+        
+        if (row >= 0)
+            horde.table.targets[row] = target;
+    }
+    
+    /**
+     * @return Tile this satellite scatters to around the waypoint, or null.
+     */
+    public PathTile getScatterTile() {
+        int row = row();
+        
+        if (row < 0 || horde.table.scatterTiles[row] < 0)
+            return null;
+        
+        int x = HordeStore.unpackX(horde.table.scatterTiles[row]);
+        int y = HordeStore.unpackY(horde.table.scatterTiles[row]);
+        boolean surface = (horde.table.flags[row] & MemberTable.SCATTER_SURFACE) != 0;
+        
+        return new PathTile(x, y, surface ? Server.surfaceMesh.getTile(x, y) : Server.caveMesh.getTile(x, y), surface, 0);
+    }
+    
+    /**
+     * @return Tile coordinates this satellite scatters to packed with
+     * HordeStore.pack, or -1.
+     */
+    int getScatterPacked() {
+        int row = row();
+        
+        return row < 0 ? -1 : horde.table.scatterTiles[row];
+    }
+    
+    private void setScatterTile(int x, int y, boolean surface) {
+        int row = row();
+        
+        if (row < 0)
+            return;
+        
+        horde.table.scatterTiles[row] = HordeStore.pack(x, y);
+        setFlag(MemberTable.SCATTER_SURFACE, surface);
+    }
+    
+    public boolean isAtDestination() {
+        return getFlag(MemberTable.AT_DESTINATION);
+    }
+    
+    public void setAtDestination(boolean atDestination) {
+        setFlag(MemberTable.AT_DESTINATION, atDestination);
+    }
+    
+    public boolean isScattered() {
+        return getFlag(MemberTable.SCATTERED);
+    }
+    
+    public void setScattered(boolean scattered) {
+        setFlag(MemberTable.SCATTERED, scattered);
+    }
+    
+    private boolean getFlag(byte flag) {
+        int row = row();
+        
+        return row >= 0 && (horde.table.flags[row] & flag) != 0;
+    }
+    
+    private void setFlag(byte flag, boolean value) {
+        int row = row();
+        
+        if (row < 0)
+            return;
+        
+        if (value)
+            horde.table.flags[row] |= flag;
+        else
+            horde.table.flags[row] &= ~flag;
+    }
     
     public boolean isAnchor() {
         if (horde == null)
@@ -31,11 +175,18 @@ public class Member extends Creature {
         return horde.anchorman.equals(this);
     }
     
+    /**
+     * @return True if this satellite leads a squad.
+     */
+    public boolean isLeader() {
+        return squad != null && squad.leader == this;
+    }
+    
     public boolean isSatellite() {
         if (horde == null)
             return false;
         
-        return horde.satellites.indexOf(this) != -1;
+        return horde.isSatellite(this) != null;
     }
     
     public boolean inHorde() {
@@ -50,6 +201,10 @@ public class Member extends Creature {
         super(template);
     }
     
+    public Member(long wurmId) throws Exception {
+        super(wurmId);
+    }
+    
     public Member(long wurmId, Horde horde) throws Exception {
         super(wurmId);
 
@@ -74,24 +229,35 @@ public class Member extends Creature {
     
     @Override
     public void die(boolean freeDeath) {
-        if (isAnchor())
-            horde.newAnchor();
-        else
-            horde.satellites.remove(this);
+        // expelled members and members of hordes that weren't restored have no horde.
+        if (horde != null) {
+            horde.targets.release(this);
+            
+            if (isAnchor())
+                horde.newAnchor();
+            else
+                horde.removeSatellite(this);
+        }
         
         WanderingHorde.remove(this);
+        release();
         
         super.die(freeDeath);
     }
     
     @Override
     public void destroy() {
-        if (isAnchor())
-            horde.newAnchor();
-        else
-            horde.satellites.remove(this);
+        if (horde != null) {
+            horde.targets.release(this);
+            
+            if (isAnchor())
+                horde.newAnchor();
+            else
+                horde.removeSatellite(this);
+        }
 
         WanderingHorde.remove(this);
+        release();
         
         super.destroy();
     }
@@ -101,46 +267,89 @@ public class Member extends Creature {
      * @param proximity Stay within this many tiles of the target tile.
      */
     public void scatter(int proximity) {
-        TilePos dest = horde.waypoints.path().scatter(proximity, 1);
+        scatterTo(horde.waypoints.path().scatter(proximity, 1, horde.random));
+    }
+    
+    /**
+     * Scatters to a tile picked around the horde's waypoint.
+     * @param dest Tile coordinates to walk to.
+     */
+    protected void scatterTo(TilePos dest) {
         int tile = isOnSurface() ?
             Server.surfaceMesh.getTile(dest) :
             Server.caveMesh.getTile(dest);
         
-        startPathingToTile(scatterdest = new PathTile(dest.x, dest.y, tile, isOnSurface(), 0));
+        setScatterTile(dest.x, dest.y, isOnSurface());
+        startPathingToTile(new PathTile(dest.x, dest.y, tile, isOnSurface(), 0));
         
-        if (WanderingHorde.logger.isLoggable(Level.FINE))
-            WanderingHorde.logger.fine(String.format("Satellite scattering to %s.", dest));
+        HordeLog.log(Level.FINE, Category.AI, "Satellite scattering to %s.", dest);
     }
     
     public void scatterTeleport(int proximity) {
-        TilePos dest =  horde.waypoints.path().scatter(proximity, 1);
+        TilePos dest =  horde.waypoints.path().scatter(proximity, 1, horde.random);
+        
+        WanderingHorde.getMetrics().teleports.increment();
+        HordeEvents.teleported(this, dest.x, dest.y);
         
         CreatureBehaviour.blinkTo(this, dest.x << 2, dest.y << 2, horde.anchorman.getLayer(), horde.anchorman.getPosZDirts(), horde.anchorman.getBridgeId(), horde.anchorman.getFloorLevel());
         WanderingHorde.getSatelliteAI().hold(this, false);
         
-        if (WanderingHorde.logger.isLoggable(Level.FINE))
-            WanderingHorde.logger.fine(String.format("Teleporting satellite to %s.", dest));
+        HordeLog.log(Level.FINE, Category.AI, "Teleporting satellite to %s.", dest);
+    }
+    
+    /**
+     * Tells the horde when a step took the member to the end of its path.
+     */
+    @Override
+    public void moved(int diffX, int diffY, int diffZ, int diffTileX, int diffTileY) {
+        super.moved(diffX, diffY, diffZ, diffTileX, diffTileY);
+        
+        if ((diffTileX != 0 || diffTileY != 0) && horde != null && isPathFinished())
+            horde.pathFinished(this);
+    }
+    
+    /**
+     * @return True if the member has no path left, or stands on its last tile.
+     */
+    private boolean isPathFinished() {
+        Path path = getStatus().getPath();
+        
+        if (path == null || path.isEmpty())
+            return true;
+        
+        PathTile last = path.getTargetTile();
+        
+        return last.getTileX() == getTileX() && last.getTileY() == getTileY();
+    }
+    
+    @Override
+    public void startPathingToTile(PathTile tile) {
+        WanderingHorde.getMetrics().pathing(horde != null && horde.anchorman == this);
+        
+        super.startPathingToTile(tile);
     }
     
     /**
      * Changes the creature state to walking to next waypoint.
      */
     protected void walkToNextWaypoint() {
-        brain = MemberStatus.WalkingToWaypoint;
+        WanderingHorde.getStates().fire(this, StateMachine.Trigger.Walk);
     }
     
     /**
      * Deviates the X and Y coordinates randomly by -1 to 1 if called N times.
      */
     protected void deviate() {
-        if (++deviationCounter <= Options.satelliteCoordinateDeviation)
+        int row = row();
+        
+        if (++horde.table.deviationCounters[row] <= Options.satelliteCoordinateDeviation)
             return;
         
-        lastDeviationX = WanderingHorde.random.nextInt(2)
-            * (WanderingHorde.random.nextBoolean() ? 1 : -1);
+        horde.table.deviationsX[row] = (byte)(horde.random.nextInt(2)
+            * (horde.random.nextBoolean() ? 1 : -1));
         
-        lastDeviationY = WanderingHorde.random.nextInt(2)
-            * (WanderingHorde.random.nextBoolean() ? 1 : -1);
+        horde.table.deviationsY[row] = (byte)(horde.random.nextInt(2)
+            * (horde.random.nextBoolean() ? 1 : -1));
     }
     
     /**
@@ -155,38 +364,37 @@ public class Member extends Creature {
     protected boolean walkDeviated(int x, int y, int tile, boolean surface, int floor) {
         deviate();
         
-        if (getTileX() == x + lastDeviationX && getTileY() == y + lastDeviationY)
+        int deviatedX = x + horde.table.deviationsX[row()];
+        int deviatedY = y + horde.table.deviationsY[row()];
+        
+        if (getTileX() == deviatedX && getTileY() == deviatedY)
             return false;
         
-        startPathingToTile(new PathTile(x + lastDeviationX, y + lastDeviationY, tile, surface, floor));
+        startPathingToTile(new PathTile(deviatedX, deviatedY, tile, surface, floor));
         return true;
     }
     
+    /**
+     * Checks the horde's shared threat scan for a hostile creature within
+     * range, and lets the horde's target allocator assign one.
+     * @return True if a new target was assigned.
+     */
     protected boolean checkHordeCombat() {
-        Set<VolaTile> set = getCurrentTile().getThisAndSurroundingTiles(4);
-        List<Creature> creatures = new ArrayList<>();
-        int count = 0;
-        for (VolaTile volaTile : set) {
-            for (Creature c : volaTile.getCreatures()) {
-                if (getTemplate().getTemplateId() == CreatureTemplateIds.TROLL_CID && c.getTemplate().getTemplateId() == CreatureTemplateIds.DEMON_SOL_CID)
-                    creatures.add(c);
-                else if (getTemplate().getTemplateId() == CreatureTemplateIds.DEMON_SOL_CID && c.getTemplate().getTemplateId() == CreatureTemplateIds.TROLL_CID)
-                    creatures.add(c);
-                
-                count++;
-            }
-        }
-
-        if (!creatures.isEmpty() && walkingTarget == null) {
-            walkingTarget = creatures.get(WanderingHorde.random.nextInt(creatures.size()));
-            brain = MemberStatus.WalkingToTarget;
-            creatures.clear();
-            creatures = null;
-            set.clear();
-            set = null;
-            return true;
-        }
+        long current = WanderingHorde.now();
         
-        return false;
+        horde.threats.scan(current);
+        horde.targets.tick(current);
+        
+        if (getWalkingTarget() != null)
+            return false;
+        
+        Creature target;
+        
+        if ((target = horde.targets.assign(this, Options.threatScanRadius)) == null)
+            return false;
+        
+        setWalkingTarget(target);
+        WanderingHorde.getStates().fire(this, StateMachine.Trigger.EnemySeen);
+        return true;
     }
 }
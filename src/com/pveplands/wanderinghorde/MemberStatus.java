@@ -16,5 +16,25 @@ public enum MemberStatus {
     GatherAroundAnchor,
     
     /* combat test */
-    WalkingToTarget
+    WalkingToTarget;
+    
+    /**
+     * All statuses by their code, values() copies the array on each call.
+     */
+    static final MemberStatus[] VALUES = values();
+    
+    /**
+     * @return Compact code of the status, for saving and snapshots.
+     */
+    public byte code() {
+        return (byte)ordinal();
+    }
+    
+    /**
+     * @param code Code of a status.
+     * @return Status of the code.
+     */
+    public static MemberStatus of(int code) {
+        return VALUES[code];
+    }
 }
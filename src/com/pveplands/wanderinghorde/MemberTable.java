@@ -0,0 +1,165 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.creatures.Creature;
+import java.util.Arrays;
+
+/**
+ * AI state of the members of a horde in parallel arrays, one row per
+ * member, instead of fields spread across the Member objects. Horde wide
+ * checks, e.g. whether any member has a target, are scans over a few
+ * primitive arrays instead of following a pointer to every member.
+ *
+ * Members find their row with Member.row(). Rows of members that left are
+ * reused, and a member that moved to another horde takes its row along.
+ * Everything runs on the server thread.
+ */
+public class MemberTable {
+    static final byte AT_DESTINATION = 1;
+    static final byte SCATTERED = 2;
+    static final byte SCATTER_SURFACE = 4;
+    
+    private static final byte IDLE = MemberStatus.Idle.code();
+    
+    byte[] brains;
+    byte[] flags;
+    
+    /**
+     * Tile the member scatters to, packed with HordeStore.pack, or -1.
+     */
+    int[] scatterTiles;
+    
+    int[] deviationCounters;
+    byte[] deviationsX;
+    byte[] deviationsY;
+    
+    /**
+     * Creature the member walks to and attacks, or null.
+     */
+    Creature[] targets;
+    
+    private int[] free = new int[8];
+    private int freeCount = 0;
+    private int rows = 0;
+    
+    public MemberTable() {
+        this(16);
+    }
+    
+    /**
+     * @param capacity Expected number of members, the table grows if needed.
+     */
+    public MemberTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        
+        brains = new byte[capacity];
+        flags = new byte[capacity];
+        scatterTiles = new int[capacity];
+        deviationCounters = new int[capacity];
+        deviationsX = new byte[capacity];
+        deviationsY = new byte[capacity];
+        targets = new Creature[capacity];
+    }
+    
+    /**
+     * Takes a row for a member, with the state of its row in another table
+     * if it had one there, which is freed.
+     * @param from Table the member had a row in before, or null.
+     * @param slot Row in the other table.
+     * @return Row of the member in this table.
+     */
+    int move(MemberTable from, int slot) {
+        int row = add();
+        
+        if (from == null || slot < 0)
+            return row;
+        
+        brains[row] = from.brains[slot];
+        flags[row] = from.flags[slot];
+        scatterTiles[row] = from.scatterTiles[slot];
+        deviationCounters[row] = from.deviationCounters[slot];
+        deviationsX[row] = from.deviationsX[slot];
+        deviationsY[row] = from.deviationsY[slot];
+        targets[row] = from.targets[slot];
+        from.free(slot);
+        
+        return row;
+    }
+    
+    /**
+     * Frees the row of a member that left, to be reused.
+     * @param row Row of the member.
+     */
+    void free(int row) {
+        clear(row);
+        
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, freeCount << 1);
+        
+        free[freeCount++] = row;
+    }
+    
+    /**
+     * @return True if any member walks to a target.
+     */
+    public boolean hasTargets() {
+        for (int i = 0; i < rows; i++)
+            if (targets[i] != null)
+                return true;
+        
+        return false;
+    }
+    
+    /**
+     * @param mask Bits of the allowed MemberStatus codes.
+     * @param skip Row to leave out, e.g. the anchor's, or -1.
+     * @return True if all members but the skipped one are in one of the
+     * allowed statuses.
+     */
+    public boolean allBrains(int mask, int skip) {
+        for (int i = 0; i < rows; i++)
+            if (i != skip && (mask & (1 << brains[i])) == 0)
+                return false;
+        
+        return true;
+    }
+    
+    /**
+     * @return Number of members with a row.
+     */
+    public int size() {
+        return rows - freeCount;
+    }
+    
+    private int add() {
+        if (freeCount > 0)
+            return free[--freeCount];
+        
+        if (rows == brains.length)
+            grow();
+        
+        clear(rows);
+        return rows++;
+    }
+    
+    private void clear(int row) {
+        brains[row] = IDLE;
+        flags[row] = 0;
+        scatterTiles[row] = -1;
+        deviationCounters[row] = Options.satelliteCoordinateDeviation;
+        deviationsX[row] = 0;
+        deviationsY[row] = 0;
+        targets[row] = null;
+    }
+    
+    private void grow() {
+        int capacity = brains.length << 1;
+        
+        brains = Arrays.copyOf(brains, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        scatterTiles = Arrays.copyOf(scatterTiles, capacity);
+        deviationCounters = Arrays.copyOf(deviationCounters, capacity);
+        deviationsX = Arrays.copyOf(deviationsX, capacity);
+        deviationsY = Arrays.copyOf(deviationsY, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+    }
+}
@@ -0,0 +1,289 @@
+package com.pveplands.wanderinghorde;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Counters and latency histograms for the horde AI, cheap enough to be
+ * updated on every poll. They can be shown in game with the "hordemetrics"
+ * command, and are appended to Options.metricsFile every
+ * Options.metricsInterval milliseconds.
+ */
+public class Metrics {
+    /**
+     * Time spent in the Wurm pathfinder for horde paths.
+     */
+    public final Histogram findPath = new Histogram("find path");
+    
+    /**
+     * Time of polling an anchor, which also polls its horde.
+     */
+    public final Histogram hordeTick = new Histogram("horde tick");
+    
+    /**
+     * Time of polling a satellite.
+     */
+    public final Histogram satelliteTick = new Histogram("satellite tick");
+    
+    /**
+     * Time to plan the satellites of a horde.
+     */
+    public final Histogram planHorde = new Histogram("plan horde");
+    
+    /**
+     * Time the server thread waits for and applies the plans of a poll.
+     */
+    public final Histogram applyPlans = new Histogram("apply plans");
+    
+    public final LongAdder anchorPathing = new LongAdder();
+    public final LongAdder satellitePathing = new LongAdder();
+    
+    /**
+     * Waypoint paths that were found before they were needed.
+     */
+    public final LongAdder pathHits = new LongAdder();
+    
+    /**
+     * Waypoint paths that had to be found when they were needed.
+     */
+    public final LongAdder pathMisses = new LongAdder();
+    
+    public final LongAdder teleports = new LongAdder();
+    public final LongAdder expulsions = new LongAdder();
+    
+    /**
+     * Followers that took over a squad whose leader was lost.
+     */
+    public final LongAdder promotions = new LongAdder();
+    
+    public final LongAdder splits = new LongAdder();
+    public final LongAdder merges = new LongAdder();
+    
+    /**
+     * Stuck members the watchdog made look for a new path.
+     */
+    public final LongAdder repaths = new LongAdder();
+    
+    /**
+     * Stuck members the watchdog sent back into the formation.
+     */
+    public final LongAdder regroups = new LongAdder();
+    
+    /**
+     * Hordes that became a token, because no player was near.
+     */
+    public final LongAdder collapses = new LongAdder();
+    
+    /**
+     * Tokens that were put back together into a horde for a player.
+     */
+    public final LongAdder materializations = new LongAdder();
+    
+    /**
+     * Hordes that started resting, and that woke up again.
+     */
+    public final LongAdder rests = new LongAdder();
+    public final LongAdder wakes = new LongAdder();
+    
+    private final long started = System.currentTimeMillis();
+    private long lastWritten = started;
+    
+    /**
+     * Counts a call to startPathingToTile.
+     * @param anchor True if the creature is an anchor.
+     */
+    public void pathing(boolean anchor) {
+        if (anchor)
+            anchorPathing.increment();
+        else
+            satellitePathing.increment();
+    }
+    
+    /**
+     * @return Human readable lines with all metrics.
+     */
+    public List<String> dump() {
+        List<String> lines = new ArrayList<>();
+        long hits = pathHits.sum();
+        long total = hits + pathMisses.sum();
+        LoadGovernor load = WanderingHorde.getLoad();
+        int[] tiers = WanderingHorde.getInterest().countHordes();
+        int squads = 0;
+        int largest = 0;
+        
+        for (Horde horde : WanderingHorde.getHordes().toArray(WanderingHorde.emptyHordes)) {
+            squads += horde.squads.size();
+            
+            for (int i = 0; i < horde.squads.size(); i++)
+                largest = Math.max(largest, horde.squads.get(i).size());
+        }
+        
+        lines.add(String.format("Horde metrics of the last %.1f minutes, %d hordes.", (System.currentTimeMillis() - started) / 60000d, WanderingHorde.getHordes().size()));
+        lines.add(findPath.toString());
+        lines.add(hordeTick.toString());
+        lines.add(satelliteTick.toString());
+        lines.add(planHorde.toString());
+        lines.add(applyPlans.toString());
+        lines.add(String.format("Pathing calls: anchors=%d satellites=%d", anchorPathing.sum(), satellitePathing.sum()));
+        lines.add(String.format("Waypoint paths: hits=%d misses=%d (%.1f%%)", hits, total - hits, total == 0 ? 100d : hits * 100d / total));
+        lines.add(String.format("Teleports=%d expulsions=%d", teleports.sum(), expulsions.sum()));
+        lines.add(String.format("Squads: squads=%d largest=%d promotions=%d", squads, largest, promotions.sum()));
+        lines.add(String.format("Splits=%d merges=%d", splits.sum(), merges.sum()));
+        lines.add(String.format("Stuck members: repaths=%d regroups=%d", repaths.sum(), regroups.sum()));
+        lines.add(String.format("Level of detail: abstract=%d collapses=%d materializations=%d", WanderingHorde.getLod().countAbstract(), collapses.sum(), materializations.sum()));
+        lines.add(String.format("Resting hordes: resting=%d rests=%d wakes=%d", WanderingHorde.getRest().countResting(), rests.sum(), wakes.sum()));
+        lines.add(String.format("Brain transitions: total=%d ignored=%d %s", WanderingHorde.getStates().countTransitions(), WanderingHorde.getStates().countIgnored(), String.join(" ", WanderingHorde.getStates().topTransitions(5))));
+        lines.add(String.format("Load: tick=%.1f ms hordes=%.1f%% scale=%.2f anchor=%d ms satellite=%d ms plan=%d ms", load.getTickMillis(), load.getShare() * 100d, load.getScale(),
+            load.anchorMovement(), load.satelliteMovement(), load.planInterval()));
+        lines.add(String.format("Interest: near=%d mid=%d far=%d hordes, player cells=%d crossings=%d", tiers[InterestGrid.NEAR], tiers[InterestGrid.MID], tiers[InterestGrid.FAR],
+            WanderingHorde.getInterest().countPlayerCells(), WanderingHorde.getInterest().countCrossings()));
+        lines.add(String.format("Horde timers: pending=%d fired=%d", WanderingHorde.getTimers().countPending(), WanderingHorde.getTimers().countFired()));
+        lines.add(String.format("Dropped log records: %d", HordeLog.dropped()));
+        
+        return lines;
+    }
+    
+    /**
+     * Appends the metrics to the metrics file if the interval has passed.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        if (Options.metricsInterval <= 0 || current - lastWritten < Options.metricsInterval)
+            return;
+        
+        lastWritten = current;
+        write();
+    }
+    
+    /**
+     * Appends the metrics to Options.metricsFile.
+     * @return True if the metrics have been written.
+     */
+    public boolean write() {
+        File file = new File(Options.metricsFile);
+        
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            out.println(new Date());
+            
+            for (String line : dump())
+                out.println(line);
+            
+            out.println();
+        }
+        catch (IOException e) {
+            WanderingHorde.logger.log(Level.WARNING, String.format("Can't write horde metrics to %s.", file), e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Latency histogram with logarithmic buckets that are split into 16
+     * linear sub buckets each, like a HdrHistogram with a precision of about
+     * 6%. Recording a value is a few shifts and an array increment.
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        
+        /**
+         * Values above 2^40 ns (about 18 minutes) are counted as that.
+         */
+        private static final int MAX_SHIFT = 40 - SUB_BITS;
+        
+        private final String name;
+        private final long[] counts = new long[(MAX_SHIFT + 2) * SUB_COUNT];
+        private long count = 0L;
+        private long sum = 0L;
+        private long max = 0L;
+        
+        public Histogram(String name) {
+            this.name = name;
+        }
+        
+        /**
+         * Records the time passed since a System.nanoTime() value.
+         * @param start Value of System.nanoTime() when the timed work started.
+         */
+        public void since(long start) {
+            record(System.nanoTime() - start);
+        }
+        
+        /**
+         * @param nanos Latency in nanoseconds.
+         */
+        public synchronized void record(long nanos) {
+            if (nanos < 0L)
+                nanos = 0L;
+            
+            counts[index(nanos)]++;
+            count++;
+            sum += nanos;
+            max = Math.max(max, nanos);
+        }
+        
+        /**
+         * @param percentile Percentile between 0 and 100.
+         * @return Highest value in nanoseconds of the bucket the percentile falls into.
+         */
+        public synchronized long percentile(double percentile) {
+            if (count == 0L)
+                return 0L;
+            
+            long target = Math.max(1L, (long)Math.ceil(count * percentile / 100d));
+            long seen = 0L;
+            
+            for (int i = 0; i < counts.length; i++) {
+                if ((seen += counts[i]) >= target)
+                    return Math.min(max, highest(i));
+            }
+            
+            return max;
+        }
+        
+        public synchronized void reset() {
+            Arrays.fill(counts, 0L);
+            count = sum = max = 0L;
+        }
+        
+        private static int index(long value) {
+            if (value < SUB_COUNT << 1)
+                return (int)value;
+            
+            int shift = Math.min(MAX_SHIFT, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+            long top = Math.min((SUB_COUNT << 1) - 1, value >>> shift);
+            
+            return (shift + 1) * SUB_COUNT + (int)(top - SUB_COUNT);
+        }
+        
+        private static long highest(int index) {
+            if (index < SUB_COUNT << 1)
+                return index;
+            
+            int shift = index / SUB_COUNT - 1;
+            long top = index % SUB_COUNT + SUB_COUNT;
+            
+            return ((top + 1) << shift) - 1;
+        }
+        
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f ms",
+                name, count, count == 0L ? 0d : sum / (double)count / 1000000d,
+                percentile(50d) / 1000000d, percentile(90d) / 1000000d,
+                percentile(99d) / 1000000d, max / 1000000d);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.pveplands.wanderinghorde;
 
+import com.wurmonline.server.creatures.CreatureTemplateIds;
 import com.wurmonline.server.creatures.ai.StaticPathFinder;
 
 public class Options {
@@ -38,6 +39,18 @@ public class Options {
      */
     protected static int satelliteAdvance = 5;
     
+    /**
+     * Max number of satellites a squad leader leads, see Squad. The anchor
+     * leads the squad leaders, and only waits for them.
+     */
+    protected static int squadSize = 16;
+    
+    /**
+     * Max distance in tiles between the anchors of two hordes that merge,
+     * see Horde.merge().
+     */
+    protected static int mergeDistance = 20;
+    
     protected static float satelliteDistance = 60f;
         
     /**
@@ -67,6 +80,285 @@ public class Options {
      */
     protected static int soundCooldown = 6000;
     
+    /**
+     * Time in milliseconds between scans of a horde's surroundings for
+     * hostile creatures.
+     */
+    protected static int threatScanInterval = 2000;
+    
+    /**
+     * Number of tiles around each horde member that are scanned for hostile
+     * creatures.
+     */
+    protected static int threatScanRadius = 4;
+    
+    /**
+     * Max number of horde members attacking the same creature.
+     */
+    protected static int attackersPerTarget = 3;
+    
+    /**
+     * Time in milliseconds between updates of target positions and the
+     * approach moves of attacking horde members.
+     */
+    protected static int targetUpdateInterval = 1000;
+    
+    /**
+     * Max number of attacking horde members that start pathing towards
+     * their target per update.
+     */
+    protected static int approachesPerTick = 10;
+    
+    /**
+     * Max number of horde members spawned per server poll.
+     */
+    protected static int spawnsPerTick = 10;
+    
+    /**
+     * Max time in milliseconds spent spawning horde members per server poll.
+     */
+    protected static int spawnBudget = 5;
+    
+    /**
+     * Number of failed spawns before spawning the rest of a horde is given up.
+     */
+    protected static int spawnRetries = 3;
+    
+    /**
+     * Percent of a horde spawned between progress messages to the player
+     * who spawned it.
+     */
+    protected static int spawnProgressStep = 10;
+    
+    /**
+     * Shortest time in milliseconds between two replenishes of a horde.
+     */
+    protected static int replenishCheckInterval = 1000;
+    
+    /**
+     * Max number of satellites respawned per minute on the whole server.
+     */
+    protected static int replenishPerMinute = 120;
+    
+    /**
+     * Fraction of the replenish interval that it is randomly moved by, so
+     * hordes don't replenish at the same time.
+     */
+    protected static float replenishJitter = 0.2f;
+    
+    /**
+     * Time in milliseconds to wait before trying again, if the server wide
+     * replenish budget was used up.
+     */
+    protected static int replenishRetry = 30000;
+    
+    /**
+     * File the hordes are saved to, relative to the server directory.
+     */
+    protected static String storeFile = "mods/wanderinghorde/hordes.dat";
+    
+    /**
+     * Time in milliseconds between writing a snapshot of all hordes, which
+     * also empties the journal.
+     */
+    protected static int saveInterval = 300000;
+    
+    /**
+     * Number of journal records after which a snapshot is written early.
+     */
+    protected static int journalCompactRecords = 5000;
+    
+    /**
+     * Whether the journal is synced to the disk after every group of
+     * records, otherwise the operating system decides when to write it.
+     */
+    protected static boolean journalSync = true;
+    
+    /**
+     * Time in milliseconds to wait for the journal to be written on shutdown.
+     */
+    protected static int journalCloseTimeout = 10000;
+    
+    /**
+     * Distance in tiles of a player to a member of a dormant horde that
+     * restores the horde.
+     */
+    protected static int wakeDistance = 128;
+    
+    /**
+     * Time in milliseconds between checking for players near a dormant horde.
+     */
+    protected static int dormantCheckInterval = 10000;
+    
+    /**
+     * Distance in tiles of the closest player, within which a horde is fully
+     * simulated. Farther hordes only move as a token along their path, with
+     * their creatures parked and teleported back when a player comes near.
+     * 0, the default, simulates all hordes fully, e.g. 96 turns it on.
+     */
+    protected static int lodDistance = 0;
+    
+    /**
+     * Time in milliseconds between checking for players near a horde, to
+     * switch between the full and the token simulation.
+     */
+    protected static int lodCheckInterval = 5000;
+    
+    /**
+     * Size in tiles of a cell of the player interest grid, see InterestGrid.
+     */
+    protected static int interestCell = 32;
+    
+    /**
+     * Distance in tiles of the closest player, within which horde members
+     * are near and simulated in full. Up to Options.lodDistance they are mid
+     * range, farther they are far and simulated as a token.
+     */
+    protected static int interestNear = 32;
+    
+    /**
+     * Factor the formation updates of mid range hordes are slowed down by.
+     */
+    protected static int interestMidScale = 2;
+    
+    /**
+     * Plans where satellites walk for each horde, and applies the plans on
+     * the next poll, instead of deciding in each satellite's poll.
+     */
+    protected static boolean planHordes = true;
+    
+    /**
+     * Time in milliseconds between two plans of the same horde.
+     */
+    protected static int planInterval = 1000;
+    
+    /**
+     * Time in milliseconds between checks of a resting horde for day, a
+     * player or prey nearby.
+     */
+    protected static int restCheckInterval = 10000;
+    
+    /**
+     * Distance in tiles of a player that wakes a resting horde.
+     */
+    protected static int restWakeDistance = 24;
+    
+    /**
+     * Time in milliseconds of a tick of the horde timers, timers fire at
+     * the first server poll after their tick.
+     */
+    protected static int timerResolution = 250;
+    
+    /**
+     * Stretches the movement intervals while the server is overloaded, see
+     * LoadGovernor.
+     */
+    protected static boolean adaptiveCadence = true;
+    
+    /**
+     * Time in milliseconds the server load is averaged over, before the
+     * movement intervals are adapted.
+     */
+    protected static int loadInterval = 5000;
+    
+    /**
+     * Average time in milliseconds between server polls, above which the
+     * server counts as overloaded.
+     */
+    protected static int loadTickTarget = 100;
+    
+    /**
+     * Share of the server's time spent in the horde AI, above which the
+     * hordes count as too expensive.
+     */
+    protected static double loadShareTarget = 0.2d;
+    
+    /**
+     * Factor the movement intervals are stretched or shrunk by per
+     * adaption.
+     */
+    protected static double loadStep = 1.25d;
+    
+    /**
+     * Max factor the movement intervals are stretched by.
+     */
+    protected static double loadMaxScale = 3d;
+    
+    /**
+     * File the horde metrics are appended to.
+     */
+    protected static String metricsFile = "mods/wanderinghorde/metrics.log";
+    
+    /**
+     * Time in milliseconds between appending the metrics to the metrics
+     * file, 0 disables it.
+     */
+    protected static int metricsInterval = 600000;
+    
+    /**
+     * Time in milliseconds between samples of a horde member's position for
+     * the stuck member watchdog.
+     */
+    protected static int watchdogInterval = 5000;
+    
+    /**
+     * Number of samples in a row without a new tile, after which a walking
+     * horde member is considered stuck and helped along.
+     */
+    protected static int watchdogStalls = 6;
+    
+    /**
+     * Number of samples kept for each horde member, shown with the
+     * "hordestuck" command.
+     */
+    protected static int watchdogHistory = 16;
+    
+    /**
+     * Hands the mod's log records to the log handlers on a background
+     * thread, so the server doesn't wait for the log file.
+     */
+    protected static boolean logAsync = true;
+    
+    /**
+     * Number of log records waiting for the background thread, more are
+     * dropped (except errors).
+     */
+    protected static int logQueueSize = 4096;
+    
+    /**
+     * Maximum number of messages logged per second for each category of the
+     * horde AI's messages, 0 for no limit.
+     */
+    protected static int logPerSecond = 20;
+    
+    /**
+     * Seed of the random numbers hordes get their seeds from, 0 for a
+     * different one every start.
+     */
+    protected static long randomSeed = 0L;
+    
+    /**
+     * Records the inputs of the horde AI (time, new hordes and their seeds,
+     * night and deaths) to Options.recordFile, so they can be replayed in
+     * the simulator.
+     */
+    protected static boolean recordInputs = false;
+    
+    protected static String recordFile = "mods/wanderinghorde/inputs.rec";
+    
+    /**
+     * Time in milliseconds between two recorded ticks.
+     */
+    protected static int recordInterval = 1000;
+    
+    /**
+     * Predator and prey relations, separated by semicolons. Each relation is
+     * either "predator>prey" or "a<>b" for creatures hostile to each other,
+     * where both sides are a creature template Id or template name.
+     */
+    protected static String hostilities = CreatureTemplateIds.TROLL_CID + "<>" + CreatureTemplateIds.DEMON_SOL_CID
+        + ";Black wolf>Sheep;Shark>Dolphin";
+    
     public Options() {
         
     }
@@ -0,0 +1,85 @@
+package com.pveplands.wanderinghorde;
+
+/**
+ * Schedules respawning killed or lost satellites of hordes. Every horde has
+ * a replenish timer with a jittered time so hordes don't refill at the same
+ * moment, and the number of satellites queued server wide is limited by a
+ * token bucket refilled at Options.replenishPerMinute. The actual spawning
+ * is done by the SpawnQueue with its per poll budget.
+ */
+public class Replenisher {
+    private long lastRefill = WanderingHorde.now();
+    private double tokens = Options.replenishPerMinute;
+    
+    /**
+     * Schedules the first replenish of a horde that was added.
+     * @param horde Added horde.
+     * @param current Current time in milliseconds.
+     */
+    public void start(Horde horde, long current) {
+        schedule(horde, current, horde.replenishInterval);
+    }
+    
+    /**
+     * Queues the missing satellites of a horde, run by its replenish timer.
+     * @param horde Horde that is due to be replenished.
+     * @param current Current time in milliseconds.
+     */
+    public void replenish(Horde horde, long current) {
+        if (horde.destroyed)
+            return;
+        
+        if (!horde.replenish || horde.forming || horde.anchorman == null) {
+            schedule(horde, current, horde.replenish ? Options.replenishRetry : horde.replenishInterval);
+            return;
+        }
+        
+        refill(current);
+        
+        int missing = horde.size - horde.satellites.size() - WanderingHorde.getSpawnQueue().pending(horde);
+        
+        if (horde.replenishQuantity > 0)
+            missing = (int)Math.min(missing, horde.replenishQuantity);
+        
+        if (missing <= 0) {
+            horde.lastReplenish = current;
+            schedule(horde, current, horde.replenishInterval);
+            return;
+        }
+        
+        int count = Math.min(missing, (int)tokens);
+        
+        if (count <= 0) {
+            // server wide budget used up, try again soon.
+            schedule(horde, current, Options.replenishRetry);
+            return;
+        }
+        
+        tokens -= count;
+        WanderingHorde.getSpawnQueue().enqueueReplenish(horde, horde.anchorman.getTileX(), horde.anchorman.getTileY(), count);
+        WanderingHorde.logger.info(String.format("Queued %d of %d missing satellites to respawn for %s.", count, missing, horde));
+        HordeEvents.replenished(horde, count, missing);
+        
+        horde.lastReplenish = current;
+        schedule(horde, current, count < missing ? Options.replenishRetry : horde.replenishInterval);
+    }
+    
+    /**
+     * Sets the next replenish time of a horde, randomly moved by up to
+     * Options.replenishJitter of the delay in either direction.
+     */
+    private void schedule(Horde horde, long current, long delay) {
+        long jitter = (long)(delay * Options.replenishJitter);
+        
+        if (jitter > 0)
+            delay += (long)((horde.random.nextDouble() * 2d - 1d) * jitter);
+        
+        horde.nextReplenish = current + Math.max(Options.replenishCheckInterval, delay);
+        WanderingHorde.getTimers().schedule(horde.replenishTimer, horde.nextReplenish);
+    }
+    
+    private void refill(long current) {
+        tokens = Math.min(Options.replenishPerMinute, tokens + (current - lastRefill) * Options.replenishPerMinute / 60000d);
+        lastRefill = current;
+    }
+}
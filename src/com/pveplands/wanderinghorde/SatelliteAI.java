@@ -1,5 +1,6 @@
 package com.pveplands.wanderinghorde;
 
+import com.pveplands.wanderinghorde.HordeLog.Category;
 import com.wurmonline.math.TilePos;
 import com.wurmonline.server.Server;
 import com.wurmonline.server.creatures.Creature;
@@ -40,12 +41,18 @@ public class SatelliteAI extends CreatureAI {
         Horde horde;
         
         if ((horde = WanderingHorde.inHorde(creature)) == null) {
-            WanderingHorde.logger.warning(String.format("Polling movement for satellite AI but it is not in a horde? %s", creature));
+            HordeLog.log(Level.WARNING, Category.AI, "Polling movement for satellite AI but it is not in a horde? %s", creature);
             hold(creature);
             return false;
         }
 
-        if (System.currentTimeMillis() - horde.lastMovement < Options.satelliteMovement) {
+        // don't start moving a half spawned horde.
+        if (horde.forming) {
+            hold(creature);
+            return false;
+        }
+        
+        if (WanderingHorde.now() - horde.lastMovement < WanderingHorde.getLoad().satelliteMovement()) {
             // Stop creature from moving randomly.
             hold(creature, true);
             return false;
@@ -54,19 +61,30 @@ public class SatelliteAI extends CreatureAI {
         Member satellite;
         
         if ((satellite = horde.isSatellite(creature)) == null) {
-            WanderingHorde.logger.warning(String.format("Satellite is not in horde? %s, %s.", creature, horde));
+            HordeLog.log(Level.WARNING, Category.AI, "Satellite is not in horde? %s, %s.", creature, horde);
             hold(creature);
             return false;
         }
 
         if (satellite.checkHordeCombat())
-            WanderingHorde.logger.warning("SATELLITE INVOLVED IN COMBAT NOW!");
+            HordeLog.log(Level.INFO, Category.COMBAT, "Satellite %s involved in combat.", satellite);
+        
+        // squad leaders tell the waiting anchor when their squad has arrived.
+        if (satellite.isLeader() && horde.anchorman.getBrain() == MemberStatus.WaitingForSatellites && !satellite.squad.hasArrived(horde)) {
+            boolean arrived = satellite.squad.check(horde, Options.scatterDistance, WanderingHorde.now());
+            
+            // expelled for fighting past the timeout.
+            if (satellite.horde != horde)
+                return false;
+            
+            if (arrived)
+                horde.checkGathered();
+        }
         
         Path path;
         
         if ((path = satellite.getStatus().getPath()) != null && !path.isEmpty()) {
-            if (WanderingHorde.logger.isLoggable(Level.FINER))
-                WanderingHorde.logger.finer(String.format("Satellite still pathing, %s.", satellite));
+            HordeLog.log(Level.FINER, Category.AI, "Satellite still pathing, %s.", satellite);
             
             return false;
         }
@@ -74,41 +92,43 @@ public class SatelliteAI extends CreatureAI {
         HordePath hp = horde.waypoints.path();
         
 switchbreak:
-        switch (satellite.brain) {
+        switch (satellite.getBrain()) {
             case Idle:
                 hold(satellite, false);
                 break;
             case WalkingToTarget:
-                if (satellite.walkingTarget == null || satellite.walkingTarget.isDead()) {
-                    satellite.brain = MemberStatus.WalkingToWaypoint;
-                    satellite.walkingTarget = null;
+                if (satellite.getWalkingTarget() == null || satellite.getWalkingTarget().isDead()) {
+                    horde.targets.release(satellite);
+                    WanderingHorde.getStates().fire(satellite, StateMachine.Trigger.TargetLost);
+                    satellite.setWalkingTarget(null);
                     break;
                 }
                 
-                if (satellite.isWithinDistanceTo(satellite.walkingTarget, 4f)) {
+                // approach moves are issued by the horde's target allocator.
+                if (satellite.isWithinDistanceTo(satellite.getWalkingTarget(), 4f)) {
                     hold(satellite, false);
-                    satellite.setTarget(satellite.walkingTarget.getWurmId(), true);
+                    satellite.setTarget(satellite.getWalkingTarget().getWurmId(), true);
                     satellite.attackTarget();
                 }
-                else {
-                    int targetDistX = satellite.walkingTarget.getTileX() - satellite.getTileX() - 1;
-                    int targetDistY = satellite.walkingTarget.getTileY() - satellite.getTileY() - 1;
-                    boolean surface = satellite.isOnSurface();
-                    int toX = satellite.getTileX() + targetDistX;
-                    int toY = satellite.getTileY() + targetDistY;
-                    int tile = (surface ? Server.surfaceMesh.getTile(toX, toY) : Server.caveMesh.getTile(toX, toY));
-                    satellite.startPathingToTile(new PathTile(toX, toY, tile, surface, satellite.getFloorLevel()));
-                }
                 break;
             case WalkingToWaypoint:
-                if (hp.nearDestination(creature, Options.scatterDistance)) {
-                    satellite.brain = MemberStatus.Scattering;
-                    satellite.scatter(Options.scatterDistance);
+                // walking and scattering are decided by the HordePlanner.
+                if (WanderingHorde.getPlanner().isEnabled())
                     break;
+                
+                // mid range satellites catch up with the anchor less often.
+                if (WanderingHorde.getInterest().tier(creature.getTileX(), creature.getTileY()) == InterestGrid.MID) {
+                    if (WanderingHorde.now() < satellite.nextFormation)
+                        break;
+                    
+                    satellite.nextFormation = WanderingHorde.now() + WanderingHorde.getLoad().satelliteMovement() * Options.interestMidScale;
                 }
                 
-                if ((path = satellite.getStatus().getPath()) != null && !path.isEmpty())
+                // followers keep up with their squad leader, the leaders with the anchor.
+                if (satellite.squad != null && !satellite.isLeader()) {
+                    follow(satellite, satellite.squad.leader.getTileX(), satellite.squad.leader.getTileY());
                     break;
+                }
                 
                 LinkedList<PathTile> tiles = hp.get().getPathTiles();
                 
@@ -121,42 +141,32 @@ switchbreak:
                     
                     if (satellite.isWithinTileDistanceTo(dest.x, dest.y, 0, Options.satelliteAdvance)) {
                         if (!satellite.walkDeviated(desTile.getTileX(), desTile.getTileY(), desTile.getTile(), desTile.isOnSurface(), desTile.getFloorLevel()))
-                            hold(satellite, false);
+                            arrive(satellite, horde);
                         
                         break switchbreak;
                     }
                 }
                 
                 if (satellite.isWithinTileDistanceTo(tiles.getFirst().getTileX(), tiles.getFirst().getTileY(), 0, 0)) {
-                    hold(satellite, false);
+                    arrive(satellite, horde);
                     break;
                 }
                 
                 satellite.startPathingToTile(tiles.getFirst());
                 break;
             case Scattering:
-                if ((path = satellite.getStatus().getPath()) != null && !path.isEmpty())
+                if (WanderingHorde.getPlanner().isEnabled())
                     break;
                 
-                // Satellite at scatter point, hold movement.
-                if (satellite.isWithinTileDistanceTo(satellite.scatterdest.getTileX(), satellite.scatterdest.getTileY(), 0, 0)) {
-                    satellite.brain = MemberStatus.Scattered;
-                    
-                    satellite.rotateRandom(satellite.getStatus().getRotation(), WanderingHorde.random.nextInt(300) + 1);
-                    
-                    float oldX = satellite.getPosX() * 10f;
-                    float oldY = satellite.getPosY() * 10f;
-                    float newPosX = (satellite.getTileX() << 2) + WanderingHorde.random.nextFloat() * 4f;
-                    float newPosY = (satellite.getTileY() << 2) + WanderingHorde.random.nextFloat() * 4f;
-                    
-                    satellite.getStatus().setPositionX(newPosX);
-                    satellite.getStatus().setPositionY(newPosY);
-                    satellite.moved((int)(newPosX * 10f - oldX), (int)(newPosY * 10f - oldY), 0, 0, 0);
-                    hold(satellite, false);
+                PathTile scatterTile = satellite.getScatterTile();
+                
+                // already at the scatter point, e.g. if it's the satellite's own tile.
+                if (satellite.isWithinTileDistanceTo(scatterTile.getTileX(), scatterTile.getTileY(), 0, 0)) {
+                    horde.pathFinished(satellite);
                     break;
                 }
                 
-                satellite.startPathingToTile(satellite.scatterdest);
+                satellite.startPathingToTile(scatterTile);
                 break;
             case Scattered:
                 hold(satellite, false);
@@ -169,6 +179,55 @@ switchbreak:
         return false;
     }
 
+    /**
+     * Walks a follower to its squad leader's tile, deviated like walking
+     * along the path, or holds it if it's there already.
+     * @param follower Follower of a squad.
+     * @param tileX Tile X coordinate of the squad leader.
+     * @param tileY Tile Y coordinate of the squad leader.
+     */
+    void follow(Member follower, int tileX, int tileY) {
+        int tile = follower.isOnSurface() ?
+            Server.surfaceMesh.getTile(tileX, tileY) :
+            Server.caveMesh.getTile(tileX, tileY);
+        
+        if (!follower.walkDeviated(tileX, tileY, tile, follower.isOnSurface(), 0))
+            arrive(follower, follower.horde);
+    }
+    
+    /**
+     * Holds a satellite that is where its movement leads, which finishes its
+     * path without a step, e.g. after a teleport.
+     * @param satellite Satellite that doesn't need to move.
+     * @param horde Horde of the satellite.
+     */
+    void arrive(Member satellite, Horde horde) {
+        hold(satellite, false);
+        horde.pathFinished(satellite);
+    }
+    
+    /**
+     * Turns a satellite that arrived at its scatter point to a random
+     * direction and spot on its tile, and holds it there.
+     * @param satellite Satellite at its scatter point.
+     * @param horde Horde of the satellite.
+     */
+    void settle(Member satellite, Horde horde) {
+        WanderingHorde.getStates().fire(satellite, StateMachine.Trigger.PathFinished);
+        
+        satellite.rotateRandom(satellite.getStatus().getRotation(), horde.random.nextInt(300) + 1);
+        
+        float oldX = satellite.getPosX() * 10f;
+        float oldY = satellite.getPosY() * 10f;
+        float newPosX = (satellite.getTileX() << 2) + (float)horde.random.nextDouble() * 4f;
+        float newPosY = (satellite.getTileY() << 2) + (float)horde.random.nextDouble() * 4f;
+        
+        satellite.getStatus().setPositionX(newPosX);
+        satellite.getStatus().setPositionY(newPosY);
+        satellite.moved((int)(newPosX * 10f - oldX), (int)(newPosY * 10f - oldY), 0, 0, 0);
+        hold(satellite, false);
+    }
+    
     @Override
     protected boolean pollAttack(Creature var1, long var2) {
         return false;
@@ -0,0 +1,162 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.players.Player;
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+
+/**
+ * Creates horde members a few at a time on every server poll, so spawning a
+ * large horde doesn't stall the server. Jobs of several hordes are worked on
+ * in turns.
+ */
+public class SpawnQueue {
+    private final ArrayDeque<SpawnJob> jobs = new ArrayDeque<>();
+    
+    /**
+     * Queues satellites to be spawned for a horde.
+     * @param horde Horde to spawn the satellites for.
+     * @param initiator Null or the player who receives progress messages.
+     * @param centerX Tile X coordinate to spawn the satellites around.
+     * @param centerY Tile Y coordinate to spawn the satellites around.
+     * @param count Number of satellites to spawn.
+     */
+    public void enqueue(Horde horde, Player initiator, int centerX, int centerY, int count) {
+        if (count <= 0) {
+            horde.formed();
+            return;
+        }
+        
+        jobs.addLast(new SpawnJob(horde, initiator, centerX, centerY, count, false));
+    }
+    
+    /**
+     * Queues killed or lost satellites to be respawned for a horde.
+     * @param horde Horde to respawn the satellites for.
+     * @param centerX Tile X coordinate to spawn the satellites around.
+     * @param centerY Tile Y coordinate to spawn the satellites around.
+     * @param count Number of satellites to respawn.
+     */
+    public void enqueueReplenish(Horde horde, int centerX, int centerY, int count) {
+        if (count > 0)
+            jobs.addLast(new SpawnJob(horde, null, centerX, centerY, count, true));
+    }
+    
+    /**
+     * Spawns queued satellites until Options.spawnsPerTick satellites have
+     * been spawned, or Options.spawnBudget milliseconds have passed.
+     */
+    public void poll() {
+        if (jobs.isEmpty())
+            return;
+        
+        long deadline = System.nanoTime() + Options.spawnBudget * 1000000L;
+        int spawned = 0;
+        
+        while (!jobs.isEmpty() && spawned < Options.spawnsPerTick && System.nanoTime() < deadline) {
+            SpawnJob job = jobs.pollFirst();
+            
+            if (job.horde.isDestroyed())
+                continue;
+            
+            job.spawnOne();
+            spawned++;
+            
+            if (job.isDone())
+                job.finish();
+            else
+                jobs.addLast(job);
+        }
+    }
+    
+    /**
+     * @param horde Horde to check for.
+     * @return Number of satellites still waiting to be spawned for the horde.
+     */
+    public int pending(Horde horde) {
+        int count = 0;
+        
+        for (SpawnJob job : jobs)
+            if (job.horde == horde)
+                count += job.remaining;
+        
+        return count;
+    }
+    
+    /**
+     * Removes all queued satellites of a horde.
+     * @param horde Horde to stop spawning satellites for.
+     */
+    public void cancel(Horde horde) {
+        jobs.removeIf(job -> job.horde == horde);
+    }
+    
+    /**
+     * @return True if there is nothing left to spawn.
+     */
+    public boolean isEmpty() {
+        return jobs.isEmpty();
+    }
+    
+    private static class SpawnJob {
+        private final Horde horde;
+        private final Player initiator;
+        private final int centerX;
+        private final int centerY;
+        private final int total;
+        private final boolean replenish;
+        private int remaining;
+        private int failures = 0;
+        private int reported = 0;
+        
+        SpawnJob(Horde horde, Player initiator, int centerX, int centerY, int count, boolean replenish) {
+            this.horde = horde;
+            this.initiator = initiator;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.total = count;
+            this.remaining = count;
+            this.replenish = replenish;
+        }
+        
+        void spawnOne() {
+            try {
+                Member satellite = horde.spawnSatellite(centerX, centerY);
+                WanderingHorde.addSatellite(satellite);
+                remaining--;
+            }
+            catch (Exception e) {
+                WanderingHorde.logger.log(Level.SEVERE, String.format("Error spawning satellite for %s.", horde), e);
+                
+                if (++failures >= Options.spawnRetries) {
+                    if (initiator != null)
+                        initiator.getCommunicator().sendAlertServerMessage(String.format("Can't spawn all satellites for %s.", horde));
+                    
+                    remaining = 0;
+                }
+            }
+            
+            int percent = (total - remaining) * 100 / total;
+            
+            if (initiator != null && remaining > 0 && percent >= reported + Options.spawnProgressStep) {
+                reported = percent - percent % Options.spawnProgressStep;
+                initiator.getCommunicator().sendNormalServerMessage(String.format("Spawning horde %d: %d%% (%d / %d).", horde.id, percent, total - remaining, total));
+            }
+        }
+        
+        boolean isDone() {
+            return remaining <= 0;
+        }
+        
+        void finish() {
+            if (replenish) {
+                WanderingHorde.logger.info(String.format("%d creatures have been respawned for %s.", total - failures, horde));
+                return;
+            }
+            
+            horde.formed();
+            
+            if (initiator != null)
+                initiator.getCommunicator().sendNormalServerMessage(String.format("Spawned %s.", horde));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.pveplands.wanderinghorde;
+
+import com.pveplands.wanderinghorde.HordeLog.Category;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Part of a horde's satellites, led by one of them. The anchor leads the
+ * squad leaders along the horde path, and each leader leads up to
+ * Options.squadSize followers, which keep up with their leader instead of
+ * the anchor.
+ *
+ * Decisions go up the tree, e.g. while the anchor waits at a waypoint, each
+ * leader checks whether its own squad has arrived, and the anchor only
+ * reads the squads' answers. That keeps the work of every member's poll
+ * bounded by the squad size, no matter how large the horde is. When a
+ * leader is lost, its closest follower takes over, and the rest of the
+ * horde doesn't notice.
+ */
+public class Squad {
+    Member leader;
+    final List<Member> followers = new ArrayList<>();
+    
+    /**
+     * Path and time in milliseconds of the last arrival check, and whether
+     * all members were near the path's end then.
+     */
+    HordePath checkedPath = null;
+    long checked = 0L;
+    boolean arrived = false;
+    
+    /**
+     * Creates a squad of one.
+     * @param leader Satellite that leads the squad.
+     */
+    public Squad(Member leader) {
+        this.leader = leader;
+        leader.squad = this;
+    }
+    
+    /**
+     * @return True if the squad can take another follower.
+     */
+    public boolean hasRoom() {
+        return followers.size() < Math.max(1, Options.squadSize);
+    }
+    
+    /**
+     * @param follower Satellite that follows this squad's leader from now on.
+     */
+    public void add(Member follower) {
+        followers.add(follower);
+        follower.squad = this;
+    }
+    
+    /**
+     * Removes a member from the squad, if it was the leader, the follower
+     * closest to it leads from now on.
+     * @param member Leader or follower of this squad.
+     * @return False if the squad is empty now.
+     */
+    public boolean remove(Member member) {
+        member.squad = null;
+        
+        if (member != leader) {
+            followers.remove(member);
+            return true;
+        }
+        
+        if (followers.isEmpty()) {
+            leader = null;
+            return false;
+        }
+        
+        Member closest = followers.get(0);
+        float distance = closest.distanceTo(member);
+        
+        for (int i = 1; i < followers.size(); i++) {
+            float next = followers.get(i).distanceTo(member);
+            
+            if (next < distance) {
+                closest = followers.get(i);
+                distance = next;
+            }
+        }
+        
+        followers.remove(closest);
+        leader = closest;
+        checkedPath = null;
+        WanderingHorde.getMetrics().promotions.increment();
+        
+        HordeLog.log(Level.FINE, Category.AI, "%s leads the squad of %s now.", leader, member);
+        return true;
+    }
+    
+    /**
+     * Checks if the leader and all followers are near the end of the horde's
+     * path, and deals with stragglers once the horde's teleport timeout has
+     * passed, see Horde.straggler(). Called by the leader's poll while the
+     * anchor waits, or by the anchor itself if the leader didn't report in
+     * time.
+     * @param horde Horde of the squad.
+     * @param proximity Proximity in tiles.
+     * @param current Current time in milliseconds.
+     * @return True if all members are near the end of the path.
+     */
+    public boolean check(Horde horde, int proximity, long current) {
+        HordePath hp = horde.waypoints.path();
+        Member[] members = followers.toArray(Horde.emptyMembers);
+        boolean value = hp.nearDestination(leader, proximity) || horde.straggler(leader, proximity);
+        
+        for (int i = 0; value && i < members.length; i++)
+            value = hp.nearDestination(members[i], proximity) || horde.straggler(members[i], proximity);
+        
+        checkedPath = hp;
+        checked = current;
+        arrived = value;
+        
+        return value;
+    }
+    
+    /**
+     * @param horde Horde of the squad.
+     * @return True if the squad was found at the end of the horde's path
+     * since the anchor arrived there, by its leader or the HordePlanner.
+     */
+    public boolean hasArrived(Horde horde) {
+        return arrived && checkedPath == horde.waypoints.path() && checked >= horde.reachedWaypoint;
+    }
+    
+    /**
+     * @return Number of members, the leader included.
+     */
+    public int size() {
+        return followers.size() + 1;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Squad [leader: %s, followers: %d]", leader, followers.size());
+    }
+}
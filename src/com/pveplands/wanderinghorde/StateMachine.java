@@ -0,0 +1,257 @@
+package com.pveplands.wanderinghorde;
+
+import com.pveplands.wanderinghorde.HordeLog.Category;
+import com.wurmonline.server.WurmCalendar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Changes the MemberStatus of horde members. A member's status only changes
+ * when an event is fired at it, and the transition tables of anchors and
+ * satellites say which status the event leads to, or that it doesn't apply
+ * in the current status. Leaving and entering a status runs its exit and
+ * enter actions once, e.g. the anchor starts the straggler timeout when it
+ * starts waiting for the satellites, while the AI polls only do the work of
+ * the status the member is in.
+ *
+ * Night and day are watched once per server poll, instead of in every
+ * anchor's poll, and fired at all hordes when they change. The end of the
+ * pause at a waypoint is fired by the horde's pause timer, arriving and
+ * settling by Horde.pathFinished() when a member finished its path, and
+ * gathering by Horde.checkGathered() when a squad reports.
+ */
+public class StateMachine {
+    private static final int STATES = MemberStatus.VALUES.length;
+    
+    /**
+     * Things that happen to a horde member.
+     */
+    public enum Trigger {
+        /** Ordered to walk to the next waypoint. */
+        Walk,
+        /** Ordered to stand still. */
+        Halt,
+        /** Reached the waypoint, the anchor waits and a satellite scatters. */
+        Arrived,
+        /** All satellites are at the waypoint, the anchor pauses there. */
+        Gathered,
+        /** The pause at the waypoint is over. */
+        Timeout,
+        /** A satellite reached its scatter point. */
+        PathFinished,
+        /** Night fell, the horde camps. */
+        NightFell,
+        /** The horde's target allocator assigned a target. */
+        EnemySeen,
+        /** The target died or was taken away. */
+        TargetLost
+    }
+    
+    private final byte[][] anchorTable = table();
+    private final byte[][] satelliteTable = table();
+    
+    private final Map<MemberStatus, Consumer<Member>> anchorEnter = new EnumMap<>(MemberStatus.class);
+    private final Map<MemberStatus, Consumer<Member>> anchorExit = new EnumMap<>(MemberStatus.class);
+    private final Map<MemberStatus, Consumer<Member>> satelliteEnter = new EnumMap<>(MemberStatus.class);
+    
+    private final long[] transitions = new long[STATES * STATES];
+    private long ignored = 0L;
+    private boolean night = false;
+    
+    public StateMachine() {
+        for (MemberStatus status : MemberStatus.VALUES) {
+            anchor(Trigger.Walk, status, MemberStatus.WalkingToWaypoint);
+            anchor(Trigger.Halt, status, MemberStatus.Idle);
+            anchor(Trigger.EnemySeen, status, MemberStatus.WalkingToTarget);
+            satellite(Trigger.Walk, status, MemberStatus.WalkingToWaypoint);
+            satellite(Trigger.Halt, status, MemberStatus.Idle);
+            satellite(Trigger.EnemySeen, status, MemberStatus.WalkingToTarget);
+            satellite(Trigger.NightFell, status, MemberStatus.GatherAroundAnchor);
+        }
+        
+        anchor(Trigger.Arrived, MemberStatus.WalkingToWaypoint, MemberStatus.WaitingForSatellites);
+        anchor(Trigger.Gathered, MemberStatus.WaitingForSatellites, MemberStatus.WaitingOneTurn);
+        anchor(Trigger.Timeout, MemberStatus.WaitingOneTurn, MemberStatus.GettingNextWaypoint);
+        anchor(Trigger.NightFell, MemberStatus.WalkingToWaypoint, MemberStatus.CampAtNight);
+        anchor(Trigger.TargetLost, MemberStatus.WalkingToTarget, MemberStatus.WalkingToWaypoint);
+        
+        satellite(Trigger.Arrived, MemberStatus.WalkingToWaypoint, MemberStatus.Scattering);
+        satellite(Trigger.PathFinished, MemberStatus.Scattering, MemberStatus.Scattered);
+        satellite(Trigger.TargetLost, MemberStatus.WalkingToTarget, MemberStatus.WalkingToWaypoint);
+        
+        anchorEnter.put(MemberStatus.WaitingForSatellites, member -> {
+            member.horde.waitForSatellites(WanderingHorde.now());
+            
+            // a horde without satellites has gathered right away.
+            member.horde.checkGathered();
+        });
+        anchorExit.put(MemberStatus.WaitingForSatellites, member -> member.horde.stopWaiting());
+        anchorEnter.put(MemberStatus.WaitingOneTurn, member -> member.horde.pause());
+        anchorExit.put(MemberStatus.WaitingOneTurn, member -> WanderingHorde.getTimers().cancel(member.horde.pauseTimer));
+        anchorEnter.put(MemberStatus.GettingNextWaypoint, member -> member.horde.nextWaypoint());
+        anchorEnter.put(MemberStatus.CampAtNight, member -> member.horde.satellites.forEach(x -> fire(x, Trigger.NightFell)));
+        anchorExit.put(MemberStatus.CampAtNight, member -> { member.horde.campfires = false; });
+        
+        // walking on at night, e.g. after the pause at a waypoint, camps right away.
+        anchorEnter.put(MemberStatus.WalkingToWaypoint, member -> {
+            if (night)
+                fire(member, Trigger.NightFell);
+        });
+    }
+    
+    /**
+     * Fires an event at a horde member, which changes its status if the
+     * event applies to its current status.
+     * @param member Horde member.
+     * @param trigger What happened.
+     * @return True if the member's status changed.
+     */
+    public boolean fire(Member member, Trigger trigger) {
+        byte next = (isAnchor(member) ? anchorTable : satelliteTable)[trigger.ordinal()][member.getBrain().ordinal()];
+        
+        if (next < 0) {
+            ignored++;
+            return false;
+        }
+        
+        set(member, MemberStatus.of(next));
+        return true;
+    }
+    
+    /**
+     * Puts a member into a status no matter what it was in before, e.g.
+     * when it's teleported to its scatter point. Exit and enter actions run
+     * like for a fired event.
+     * @param member Horde member.
+     * @param status New status of the member.
+     */
+    public void set(Member member, MemberStatus status) {
+        MemberStatus before = member.getBrain();
+        
+        if (before == status)
+            return;
+        
+        boolean anchor = isAnchor(member);
+        
+        Consumer<Member> exit = anchor ? anchorExit.get(before) : null;
+        
+        if (exit != null)
+            exit.accept(member);
+        
+        member.setBrain(status);
+        transitions[before.ordinal() * STATES + status.ordinal()]++;
+        HordeEvents.brainChanged(member, before);
+        
+        if (HordeLog.isLoggable(Level.FINER, Category.AI))
+            HordeLog.log(Level.FINER, Category.AI, "%s changed from %s to %s.", member, before, status);
+        
+        Consumer<Member> enter = (anchor ? anchorEnter : satelliteEnter).get(status);
+        
+        if (enter != null)
+            enter.accept(member);
+    }
+    
+    /**
+     * Fires night fall at the hordes when the night starts, and breaks their
+     * camps when it ends.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        if (WurmCalendar.isNight() == night)
+            return;
+        
+        night = !night;
+        HordeLog.log(Level.FINE, Category.AI, night ? "Night fell, the hordes camp." : "The night is over, the hordes walk on.");
+        
+        for (Horde horde : WanderingHorde.getHordes().toArray(WanderingHorde.emptyHordes)) {
+            if (horde.destroyed || horde.forming || horde.anchorman == null)
+                continue;
+            
+            if (night)
+                fire(horde.anchorman, Trigger.NightFell);
+            else if (horde.anchorman.getBrain() == MemberStatus.CampAtNight)
+                horde.breakCamp();
+        }
+    }
+    
+    /**
+     * @return True if it's night for the hordes.
+     */
+    public boolean isNight() {
+        return night;
+    }
+    
+    /**
+     * @return Number of status changes of all members.
+     */
+    public long countTransitions() {
+        long count = 0L;
+        
+        for (long value : transitions)
+            count += value;
+        
+        return count;
+    }
+    
+    /**
+     * @return Number of events that didn't apply to the member's status.
+     */
+    public long countIgnored() {
+        return ignored;
+    }
+    
+    /**
+     * @param limit Max number of transitions to list.
+     * @return The most frequent status changes, as "from>to=count".
+     */
+    public List<String> topTransitions(int limit) {
+        List<String> result = new ArrayList<>();
+        boolean[] listed = new boolean[transitions.length];
+        
+        while (result.size() < limit) {
+            int best = -1;
+            
+            for (int i = 0; i < transitions.length; i++)
+                if (!listed[i] && transitions[i] > 0 && (best < 0 || transitions[i] > transitions[best]))
+                    best = i;
+            
+            if (best < 0)
+                break;
+            
+            listed[best] = true;
+            result.add(String.format("%s>%s=%d", MemberStatus.of(best / STATES), MemberStatus.of(best % STATES), transitions[best]));
+        }
+        
+        return result;
+    }
+    
+    private static boolean isAnchor(Member member) {
+        return member.horde != null && member.horde.anchorman == member;
+    }
+    
+    private void anchor(Trigger trigger, MemberStatus from, MemberStatus to) {
+        anchorTable[trigger.ordinal()][from.ordinal()] = to.code();
+    }
+    
+    private void satellite(Trigger trigger, MemberStatus from, MemberStatus to) {
+        satelliteTable[trigger.ordinal()][from.ordinal()] = to.code();
+    }
+    
+    /**
+     * @return Transition table of events and states, where -1 means the
+     * event doesn't apply.
+     */
+    private static byte[][] table() {
+        byte[][] table = new byte[Trigger.values().length][STATES];
+        
+        for (byte[] row : table)
+            Arrays.fill(row, (byte)-1);
+        
+        return table;
+    }
+}
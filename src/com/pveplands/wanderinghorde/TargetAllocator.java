@@ -0,0 +1,290 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.Server;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.Arrays;
+
+/**
+ * Spreads the members of a horde across the hostile creatures found by the
+ * threat scan. Every target accepts a limited number of attackers, and the
+ * approach moves for all attackers are issued in batches once per interval,
+ * instead of every attacker pathing towards its target on every poll.
+ */
+public class TargetAllocator {
+    /**
+     * Tiles around a target that attackers approach, so they don't all path
+     * to the same tile.
+     */
+    private static final int[] offsetX = { -1, 1, -1, 1, 0, 0, -1, 1 };
+    private static final int[] offsetY = { -1, 1, 1, -1, -1, 1, 0, 0 };
+    
+    private final Horde horde;
+    
+    /**
+     * Last time in milliseconds the target positions were cached.
+     */
+    private long lastTick = 0L;
+    
+    /**
+     * Index of the first attacker to move next tick, so every attacker gets
+     * its turn if there are more than Options.approachesPerTick.
+     */
+    private int nextApproach = 0;
+    
+    private Creature[] targets = new Creature[8];
+    private int[] targetX = new int[8];
+    private int[] targetY = new int[8];
+    private int[] assigned = new int[8];
+    private int targetCount = 0;
+    
+    private Member[] attackers = new Member[16];
+    private int[] attackerTarget = new int[16];
+    private int[] orderedX = new int[16];
+    private int[] orderedY = new int[16];
+    private int attackerCount = 0;
+    
+    public TargetAllocator(Horde horde) {
+        this.horde = horde;
+    }
+    
+    /**
+     * Assigns the closest hostile creature from the threat scan that still
+     * has room for another attacker.
+     * @param member Horde member looking for a target.
+     * @param radius Max distance in tiles to the target.
+     * @return Null if no target in range has room left, otherwise the target.
+     */
+    protected Creature assign(Member member, int radius) {
+        ThreatScan threats = horde.threats;
+        Hostility hostility = WanderingHorde.getHostility();
+        int attacker = member.getTemplate().getTemplateId();
+        Creature best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        
+        for (int i = 0; i < threats.size(); i++) {
+            Creature creature = threats.get(i);
+            
+            if (creature.isDead() || creature.isOnSurface() != member.isOnSurface())
+                continue;
+            
+            int distance = Math.max(Math.abs(creature.getTileX() - member.getTileX()), Math.abs(creature.getTileY() - member.getTileY()));
+            
+            if (distance > radius || distance >= bestDistance)
+                continue;
+            
+            int slot = indexOf(creature);
+            
+            if (slot >= 0 && assigned[slot] >= Options.attackersPerTarget)
+                continue;
+            
+            if (!hostility.isHostile(attacker, creature.getTemplate().getTemplateId()))
+                continue;
+            
+            best = creature;
+            bestDistance = distance;
+        }
+        
+        if (best == null)
+            return null;
+        
+        int slot = indexOf(best);
+        
+        if (slot < 0)
+            slot = addTarget(best);
+        
+        addAttacker(member, slot);
+        
+        return best;
+    }
+    
+    /**
+     * Removes an attacker, e.g. when it died, left the horde or its target
+     * died.
+     * @param member Horde member that no longer attacks its target.
+     */
+    protected void release(Member member) {
+        for (int i = 0; i < attackerCount; i++) {
+            if (attackers[i] != member)
+                continue;
+            
+            assigned[attackerTarget[i]]--;
+            removeAttacker(i);
+            return;
+        }
+    }
+    
+    /**
+     * Caches the target positions, drops dead targets and sends attackers
+     * towards targets that have moved, if the update interval has passed.
+     * @param current Current time in milliseconds.
+     */
+    protected void tick(long current) {
+        if (current - lastTick < Options.targetUpdateInterval)
+            return;
+        
+        lastTick = current;
+        
+        if (attackerCount == 0) {
+            compactTargets();
+            return;
+        }
+        
+        for (int i = 0; i < targetCount; i++) {
+            if (targets[i] == null || targets[i].isDead())
+                continue;
+            
+            targetX[i] = targets[i].getTileX();
+            targetY[i] = targets[i].getTileY();
+        }
+        
+        for (int i = attackerCount - 1; i >= 0; i--) {
+            Member member = attackers[i];
+            Creature target = targets[attackerTarget[i]];
+            
+            if (member.isDead() || member.horde != horde || member.getWalkingTarget() != target || target.isDead()) {
+                assigned[attackerTarget[i]]--;
+                removeAttacker(i);
+                
+                if (member.getWalkingTarget() == target) {
+                    member.setWalkingTarget(null);
+                    WanderingHorde.getStates().fire(member, StateMachine.Trigger.TargetLost);
+                }
+            }
+        }
+        
+        compactTargets();
+        
+        int moves = 0;
+        
+        for (int n = 0; n < attackerCount && moves < Options.approachesPerTick; n++) {
+            int i = (nextApproach + n) % attackerCount;
+            Member member = attackers[i];
+            int slot = attackerTarget[i];
+            
+            if (member.isFighting() || member.isWithinDistanceTo(targets[slot], 4f))
+                continue;
+            
+            // spread the attackers of a target around it.
+            int spot = countBefore(i, slot) % offsetX.length;
+            int toX = targetX[slot] + offsetX[spot];
+            int toY = targetY[slot] + offsetY[spot];
+            
+            if (toX == orderedX[i] && toY == orderedY[i] && member.getStatus().getPath() != null && !member.getStatus().getPath().isEmpty())
+                continue;
+            
+            boolean surface = member.isOnSurface();
+            int tile = (surface ? Server.surfaceMesh.getTile(toX, toY) : Server.caveMesh.getTile(toX, toY));
+            
+            member.startPathingToTile(new PathTile(toX, toY, tile, surface, member.getFloorLevel()));
+            orderedX[i] = toX;
+            orderedY[i] = toY;
+            moves++;
+        }
+        
+        nextApproach = attackerCount == 0 ? 0 : (nextApproach + moves) % attackerCount;
+    }
+    
+    /**
+     * @return Number of members currently attacking.
+     */
+    public int attackers() {
+        return attackerCount;
+    }
+    
+    private int indexOf(Creature creature) {
+        for (int i = 0; i < targetCount; i++)
+            if (targets[i] == creature)
+                return i;
+        
+        return -1;
+    }
+    
+    /**
+     * @return Number of attackers of the same target that were added before this one.
+     */
+    private int countBefore(int attacker, int slot) {
+        int count = 0;
+        
+        for (int i = 0; i < attacker; i++)
+            if (attackerTarget[i] == slot)
+                count++;
+        
+        return count;
+    }
+    
+    private int addTarget(Creature creature) {
+        if (targetCount == targets.length) {
+            int length = targetCount << 1;
+            targets = Arrays.copyOf(targets, length);
+            targetX = Arrays.copyOf(targetX, length);
+            targetY = Arrays.copyOf(targetY, length);
+            assigned = Arrays.copyOf(assigned, length);
+        }
+        
+        targets[targetCount] = creature;
+        targetX[targetCount] = creature.getTileX();
+        targetY[targetCount] = creature.getTileY();
+        assigned[targetCount] = 0;
+        
+        return targetCount++;
+    }
+    
+    private void addAttacker(Member member, int slot) {
+        if (attackerCount == attackers.length) {
+            int length = attackerCount << 1;
+            attackers = Arrays.copyOf(attackers, length);
+            attackerTarget = Arrays.copyOf(attackerTarget, length);
+            orderedX = Arrays.copyOf(orderedX, length);
+            orderedY = Arrays.copyOf(orderedY, length);
+        }
+        
+        attackers[attackerCount] = member;
+        attackerTarget[attackerCount] = slot;
+        orderedX[attackerCount] = Integer.MIN_VALUE;
+        orderedY[attackerCount] = Integer.MIN_VALUE;
+        assigned[slot]++;
+        attackerCount++;
+    }
+    
+    private void removeAttacker(int index) {
+        int last = --attackerCount;
+        
+        attackers[index] = attackers[last];
+        attackerTarget[index] = attackerTarget[last];
+        orderedX[index] = orderedX[last];
+        orderedY[index] = orderedY[last];
+        attackers[last] = null;
+    }
+    
+    /**
+     * Removes targets without attackers, and remaps the attackers' target
+     * indices.
+     */
+    private void compactTargets() {
+        int write = 0;
+        
+        for (int read = 0; read < targetCount; read++) {
+            if (assigned[read] <= 0)
+                continue;
+            
+            if (read != write) {
+                targets[write] = targets[read];
+                targetX[write] = targetX[read];
+                targetY[write] = targetY[read];
+                assigned[write] = assigned[read];
+                
+                for (int i = 0; i < attackerCount; i++)
+                    if (attackerTarget[i] == read)
+                        attackerTarget[i] = write;
+            }
+            
+            write++;
+        }
+        
+        for (int i = write; i < targetCount; i++)
+            targets[i] = null;
+        
+        targetCount = write;
+    }
+}
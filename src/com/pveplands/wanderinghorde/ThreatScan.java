@@ -0,0 +1,203 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.zones.VolaTile;
+import com.wurmonline.server.zones.Zones;
+import java.util.Arrays;
+
+/**
+ * Scans the combined footprint of a horde for hostile creatures once per
+ * interval. Members pick their targets from the shared result instead of
+ * scanning their own surroundings on every poll.
+ */
+public class ThreatScan {
+    private final Horde horde;
+    
+    /**
+     * Last time in milliseconds the footprint was scanned.
+     */
+    private long lastScan = 0L;
+    
+    /**
+     * Open addressing set of packed tile coordinates visited during a scan.
+     * Slots are valid only if their stamp matches the current generation, so
+     * the set never has to be cleared.
+     */
+    private int[] visited = new int[1024];
+    private int[] stamps = new int[1024];
+    private int generation = 0;
+    private int visitedCount = 0;
+    
+    /**
+     * Hostile creatures found during the last scan.
+     */
+    private Creature[] candidates = new Creature[16];
+    private int count = 0;
+    
+    /**
+     * Prey of all templates in the horde, see Hostility.preyOf(int...).
+     */
+    private long[] prey = null;
+    
+    public ThreatScan(Horde horde) {
+        this.horde = horde;
+    }
+    
+    /**
+     * Forgets the prey of the horde's templates, after another horde merged
+     * into it with its own templates.
+     */
+    void resetPrey() {
+        prey = null;
+    }
+    
+    /**
+     * Checks the horde's footprint for hostile creatures, if the scan
+     * interval has passed since the last scan.
+     * @param current Current time in milliseconds.
+     */
+    protected void scan(long current) {
+        if (current - lastScan < Options.threatScanInterval)
+            return;
+        
+        lastScan = current;
+        
+        for (int i = 0; i < count; i++)
+            candidates[i] = null;
+        
+        count = 0;
+        visitedCount = 0;
+        
+        if (++generation == 0) {
+            // stamps wrapped around, old slots could look valid again.
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+        
+        if (horde.anchorman != null)
+            scanAround(horde.anchorman, Options.threatScanRadius);
+        
+        for (int i = 0; i < horde.satellites.size(); i++)
+            scanAround(horde.satellites.get(i), Options.threatScanRadius);
+    }
+    
+    private void scanAround(Member member, int radius) {
+        int centerX = member.getTileX();
+        int centerY = member.getTileY();
+        boolean surface = member.isOnSurface();
+        
+        for (int x = centerX - radius; x <= centerX + radius; x++) {
+            for (int y = centerY - radius; y <= centerY + radius; y++) {
+                if (!visit(pack(x, y, surface)))
+                    continue;
+                
+                VolaTile tile;
+                
+                if ((tile = Zones.getTileOrNull(x, y, surface)) == null)
+                    continue;
+                
+                for (Creature creature : tile.getCreatures())
+                    consider(creature);
+            }
+        }
+    }
+    
+    private void consider(Creature creature) {
+        if (creature.isDead())
+            return;
+        
+        if (creature instanceof Member && ((Member)creature).horde == horde)
+            return;
+        
+        if (prey == null)
+            prey = WanderingHorde.getHostility().preyOf(horde.templates);
+        
+        if (!Hostility.isPrey(prey, creature.getTemplate().getTemplateId()))
+            return;
+        
+        if (count == candidates.length)
+            candidates = Arrays.copyOf(candidates, count << 1);
+        
+        candidates[count++] = creature;
+    }
+    
+    /**
+     * @param index Index of the hostile creature, must be less than size().
+     * @return A hostile creature found during the last scan.
+     */
+    protected Creature get(int index) {
+        return candidates[index];
+    }
+    
+    /**
+     * @return Number of hostile creatures found during the last scan.
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * @return True if no hostile creatures were found during the last scan.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    
+    private static int pack(int x, int y, boolean surface) {
+        return (x & 0x7FFF) | ((y & 0x7FFF) << 15) | (surface ? 1 << 30 : 0);
+    }
+    
+    /**
+     * Marks a packed tile coordinate as visited.
+     * @return True if the tile was not visited before during this scan.
+     */
+    private boolean visit(int key) {
+        // keep load factor below 0.5.
+        if ((visitedCount + 1) << 1 > visited.length)
+            grow();
+        
+        int mask = visited.length - 1;
+        int slot = mix(key) & mask;
+        
+        while (stamps[slot] == generation) {
+            if (visited[slot] == key)
+                return false;
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        stamps[slot] = generation;
+        visited[slot] = key;
+        visitedCount++;
+        
+        return true;
+    }
+    
+    private void grow() {
+        int[] oldKeys = visited;
+        int[] oldStamps = stamps;
+        
+        visited = new int[oldKeys.length << 1];
+        stamps = new int[oldKeys.length << 1];
+        
+        int mask = visited.length - 1;
+        
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStamps[i] != generation)
+                continue;
+            
+            int slot = mix(oldKeys[i]) & mask;
+            
+            while (stamps[slot] == generation)
+                slot = (slot + 1) & mask;
+            
+            stamps[slot] = generation;
+            visited[slot] = oldKeys[i];
+        }
+    }
+    
+    private static int mix(int key) {
+        key *= 0x9E3779B9;
+        return key ^ (key >>> 16);
+    }
+}
@@ -0,0 +1,225 @@
+package com.pveplands.wanderinghorde;
+
+import java.util.logging.Level;
+
+/**
+ * Hashed hierarchical timer wheel for the timers of hordes, instead of
+ * comparing their timestamps on every poll. Time is cut into ticks of
+ * Options.timerResolution milliseconds, and there are four wheels of 64
+ * slots, each slot of a wheel covering a whole turn of the wheel below it.
+ * A timer is put into the slot of the lowest wheel that reaches its
+ * deadline, and moved down a wheel when the wheel below has turned to it,
+ * so scheduling, cancelling and firing a timer costs the same no matter how
+ * many timers are pending.
+ *
+ * Timers that are due in the same tick fire in the same order on every
+ * run with the same inputs, so replays stay the same. Everything runs on
+ * the server thread.
+ */
+public class TimerWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    
+    /**
+     * Timers farther away than this many ticks wait in the last wheel, and
+     * are put back until they are in reach.
+     */
+    private static final long RANGE = (1L << (BITS * LEVELS)) - 1L;
+    
+    private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+    private long tick = -1L;
+    private int pending = 0;
+    private long fired = 0L;
+    
+    /**
+     * Task that runs when its deadline has passed. A timer is in the wheel
+     * at most once, scheduling it again moves it to the new deadline.
+     */
+    public static class Timer {
+        private final Runnable task;
+        private long deadline;
+        private long due;
+        private Timer prev;
+        private Timer next;
+        
+        public Timer(Runnable task) {
+            this.task = task;
+        }
+        
+        /**
+         * @return True if the timer waits to fire.
+         */
+        public boolean isScheduled() {
+            return prev != null;
+        }
+        
+        /**
+         * @return Time in milliseconds the timer fires at, or the last time
+         * it was scheduled for.
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+    
+    public TimerWheel() {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timer head = new Timer(null);
+                head.prev = head;
+                head.next = head;
+                wheels[level][slot] = head;
+            }
+        }
+    }
+    
+    /**
+     * Schedules a timer, or moves it if it was scheduled before. A deadline
+     * that has passed fires on the next tick.
+     * @param timer Timer to schedule.
+     * @param deadline Time in milliseconds to run the timer's task at.
+     */
+    public void schedule(Timer timer, long deadline) {
+        start(WanderingHorde.now());
+        cancel(timer);
+        
+        timer.deadline = deadline;
+        timer.due = Math.max(tick + 1L, (deadline + Options.timerResolution - 1L) / Options.timerResolution);
+        insert(timer);
+        pending++;
+    }
+    
+    /**
+     * Removes a timer from the wheel, nothing happens if it isn't scheduled.
+     * @param timer Timer to cancel.
+     */
+    public void cancel(Timer timer) {
+        if (!timer.isScheduled())
+            return;
+        
+        unlink(timer);
+        pending--;
+    }
+    
+    /**
+     * Turns the wheels up to the current time and runs the tasks of all
+     * timers that are due.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(long current) {
+        start(current);
+        
+        long target = current / Options.timerResolution;
+        
+        // nothing to fire on the ticks in between, e.g. after a long lag.
+        if (pending == 0) {
+            tick = Math.max(tick, target);
+            return;
+        }
+        
+        while (tick < target) {
+            tick++;
+            cascade();
+            
+            Timer head = wheels[0][(int)(tick & MASK)];
+            
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                
+                // still out of reach of the wheels when it was scheduled.
+                if (timer.due > tick) {
+                    insert(timer);
+                    continue;
+                }
+                
+                pending--;
+                fired++;
+                
+                try {
+                    timer.task.run();
+                }
+                catch (Exception e) {
+                    WanderingHorde.logger.log(Level.SEVERE, "Horde timer failed.", e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Drops all timers, e.g. when all hordes are removed. The wheels start
+     * again at the time of the next timer, in case the clock was replaced.
+     */
+    public void clear() {
+        for (int level = 0; level < LEVELS; level++)
+            for (int slot = 0; slot < SLOTS; slot++)
+                while (wheels[level][slot].next != wheels[level][slot])
+                    unlink(wheels[level][slot].next);
+        
+        pending = 0;
+        tick = -1L;
+    }
+    
+    /**
+     * @return Number of timers waiting to fire.
+     */
+    public int countPending() {
+        return pending;
+    }
+    
+    /**
+     * @return Number of timers that fired.
+     */
+    public long countFired() {
+        return fired;
+    }
+    
+    private void start(long current) {
+        if (tick < 0L)
+            tick = current / Options.timerResolution;
+    }
+    
+    /**
+     * Moves the timers of the higher wheels' slots that the lower wheels
+     * turned to down a wheel, starting at the lowest wheel.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (BITS * level)) - 1L)) != 0L)
+                return;
+            
+            Timer head = wheels[level][(int)((tick >>> (BITS * level)) & MASK)];
+            
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                insert(timer);
+            }
+        }
+    }
+    
+    private void insert(Timer timer) {
+        long delta = Math.min(timer.due - tick, RANGE);
+        long due = tick + delta;
+        int level = 0;
+        
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+            level++;
+        
+        Timer head = wheels[level][(int)((due >>> (BITS * level)) & MASK)];
+        
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+    
+    private static void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+}
@@ -2,6 +2,7 @@ package com.pveplands.wanderinghorde;
 
 import com.wurmonline.math.TilePos;
 import com.wurmonline.math.Vector2f;
+import com.wurmonline.server.Players;
 import com.wurmonline.server.Server;
 import com.wurmonline.server.creatures.Communicator;
 import com.wurmonline.server.creatures.Creature;
@@ -9,6 +10,7 @@ import com.wurmonline.server.creatures.CreatureTemplateIds;
 import com.wurmonline.server.creatures.ai.CreatureAI;
 import com.wurmonline.server.creatures.ai.CreatureAIData;
 import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.players.Player;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,6 +18,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javassist.CannotCompileException;
@@ -30,17 +33,39 @@ import org.gotti.wurmunlimited.modloader.classhooks.HookManager;
 import org.gotti.wurmunlimited.modloader.interfaces.Initable;
 import org.gotti.wurmunlimited.modloader.interfaces.PlayerMessageListener;
 import org.gotti.wurmunlimited.modloader.interfaces.PreInitable;
+import org.gotti.wurmunlimited.modloader.interfaces.ServerPollListener;
+import org.gotti.wurmunlimited.modloader.interfaces.ServerShutdownListener;
 import org.gotti.wurmunlimited.modloader.interfaces.ServerStartedListener;
 import org.gotti.wurmunlimited.modloader.interfaces.WurmServerMod;
 
-public class WanderingHorde implements WurmServerMod, PreInitable, Initable, ServerStartedListener, PlayerMessageListener {
-    static final Random random = new Random();
+public class WanderingHorde implements WurmServerMod, PreInitable, Initable, ServerStartedListener, ServerPollListener, ServerShutdownListener, PlayerMessageListener {
+    /**
+     * Random numbers outside of hordes, and the seeds of new hordes.
+     */
+    static final Random random = Options.randomSeed == 0L ? new Random() : new Random(Options.randomSeed);
     static final Logger logger = Logger.getLogger(WanderingHorde.class.getName() + " " + WanderingHorde.class.getPackage().getImplementationVersion());
     static final Level devlog = Level.INFO;
     
+    /**
+     * Time source of the horde AI, replaced by a fake clock in the simulator.
+     */
+    private static LongSupplier clock = System::currentTimeMillis;
+    
+    /**
+     * @return Current time in milliseconds of the horde AI's clock.
+     */
+    public static long now() { return clock.getAsLong(); }
+    
+    static void setClock(LongSupplier source) { clock = source; }
+    
+    /**
+     * @return Seed for the random numbers of a new horde.
+     */
+    static long nextSeed() { return random.nextLong(); }
+    
     private static List<Horde> hordes = new ArrayList<>();
     public static List<Horde> getHordes() { return hordes; }
-    private static final Horde[] emptyHordes = new Horde[0];
+    static final Horde[] emptyHordes = new Horde[0];
     
     // Can't instanciate here due to early load error in modloader.
     private static Map<Long, Creature> anchors = null;//new HashMap<>();
@@ -74,7 +99,55 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
     private static SatelliteAI satelliteAI = null; //new SatelliteAI();
     public static SatelliteAI getSatelliteAI() { if (satelliteAI == null) satelliteAI = new SatelliteAI(); return satelliteAI; }
     
-    private static long lastCleaned = System.currentTimeMillis();
+    private static HordeRegistry registry = null;
+    public static HordeRegistry getRegistry() { if (registry == null) registry = new HordeRegistry(); return registry; }
+    
+    private static HordeStore store = null;
+    public static HordeStore getStore() { if (store == null) store = new HordeStore(); return store; }
+    
+    private static Metrics metrics = null;
+    public static Metrics getMetrics() { if (metrics == null) metrics = new Metrics(); return metrics; }
+    
+    private static Watchdog watchdog = null;
+    public static Watchdog getWatchdog() { if (watchdog == null) watchdog = new Watchdog(); return watchdog; }
+    
+    private static LevelOfDetail lod = null;
+    public static LevelOfDetail getLod() { if (lod == null) lod = new LevelOfDetail(); return lod; }
+    
+    private static InterestGrid interest = null;
+    public static InterestGrid getInterest() { if (interest == null) interest = new InterestGrid(); return interest; }
+    
+    private static LoadGovernor load = null;
+    public static LoadGovernor getLoad() { if (load == null) load = new LoadGovernor(); return load; }
+    
+    private static StateMachine states = null;
+    public static StateMachine getStates() { if (states == null) states = new StateMachine(); return states; }
+    
+    private static TimerWheel timers = null;
+    public static TimerWheel getTimers() { if (timers == null) timers = new TimerWheel(); return timers; }
+    
+    private static HordeRest rest = null;
+    public static HordeRest getRest() { if (rest == null) rest = new HordeRest(); return rest; }
+    
+    private static HordePlanner planner = null;
+    public static HordePlanner getPlanner() { if (planner == null) planner = new HordePlanner(); return planner; }
+    
+    private static InputRecorder recorder = null;
+    public static InputRecorder getRecorder() { if (recorder == null) recorder = new InputRecorder(); return recorder; }
+    
+    private static HordeJournal journal = null;
+    public static HordeJournal getJournal() { if (journal == null) journal = new HordeJournal(); return journal; }
+    
+    private static SpawnQueue spawnQueue = null;
+    public static SpawnQueue getSpawnQueue() { if (spawnQueue == null) spawnQueue = new SpawnQueue(); return spawnQueue; }
+    
+    private static Replenisher replenisher = null;
+    public static Replenisher getReplenisher() { if (replenisher == null) replenisher = new Replenisher(); return replenisher; }
+    
+    private static Hostility hostility = null;
+    public static Hostility getHostility() { if (hostility == null) hostility = new Hostility(); if (!hostility.isCompiled()) hostility.compile(); return hostility; }
+    
+    private static final TimerWheel.Timer cleanTimer = new TimerWheel.Timer(WanderingHorde::clean);
     
     @Override
     public void preInit() {
@@ -106,8 +179,8 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
             getAiData.insertBefore(
                 "{"
                 + "if (this.aiData == null) {"
-                + "  this.aiData = com.pveplands.wanderinghorde.WanderingHorde.getCreatureAIData(this);"
-                + "  this.aiData.setCreature(this); return this.aiData;"
+                + "  com.wurmonline.server.creatures.ai.CreatureAIData data = com.pveplands.wanderinghorde.WanderingHorde.getCreatureAIData(this);"
+                + "  if (data != null) { this.aiData = data; data.setCreature(this); return data; }"
                 + "} "
                 + "else if (this.aiData instanceof com.pveplands.wanderinghorde.AnchorAI.AnchorAIData || this.aiData instanceof com.pveplands.wanderinghorde.SatelliteAI.SatelliteAIData) {"
                 + "  return this.aiData;"
@@ -196,13 +269,20 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
             loadAllCreatures.instrument(new ExprEditor() {
                     @Override
                     public void edit(NewExpr expr) throws CannotCompileException {
-                        if (expr.getClassName().equals("com.wurmonline.server.Creature")) {
-                            loadAllCreatures.insertAt(expr.getLineNumber() + 1, "{ if (com.pveplands.wanderinghorde.WanderingHorde.isInHorde(toReturn)) toReturn = new com.pveplands.wanderinghorde.Member(toReturn.getWurmId()); }");
-                            logger.info(String.format("Injected code to creature loading at line #%d.", expr.getLineNumber() + 1));
+                        if (expr.getClassName().equals("com.wurmonline.server.creatures.Creature")) {
+                            expr.replace("{ if (com.pveplands.wanderinghorde.WanderingHorde.isInHorde($1)) $_ = new com.pveplands.wanderinghorde.Member($1); else $_ = $proceed($$); }");
+                            logger.info(String.format("Injected code to creature loading at line #%d.", expr.getLineNumber()));
                         }
                     }
                 });
             
+            /**
+             * Loads the saved hordes into the registry before creatures are
+             * loaded, so the check above is a lookup in memory.
+             */
+            loadAllCreatures.insertBefore("{ com.pveplands.wanderinghorde.WanderingHorde.getStore().load(); }");
+            logger.info("Inserted call to load saved hordes at the top of Creatures.loadAllCreatures().");
+            
             // TODO DEBUG REMOVE stop time from advancing (always day)
             HookManager.getInstance().getClassPool().get("com.wurmonline.server.WurmCalendar")
                 .getMethod("tickSecond", "()V")
@@ -221,6 +301,25 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
     }
     
     private static boolean add(Horde horde) {
+        if (!register(horde))
+            return false;
+        
+        byte[] data;
+        
+        // without an anchor or waypoints it's only saved by the next snapshot.
+        if ((data = HordeStore.serialize(horde)) != null)
+            getJournal().append(HordeJournal.HORDE_CREATED, horde.id, 0L, data);
+        
+        return true;
+    }
+    
+    /**
+     * Adds a horde and its members without a journal record, used when
+     * restoring saved hordes.
+     * @param horde Horde to add.
+     * @return False if the horde was added before.
+     */
+    static boolean register(Horde horde) {
         if (hordes.contains(horde))
             return false;
         
@@ -229,13 +328,79 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
         
         logger.info(String.format("Adding anchorman %s to horde %s.", horde.anchorman, horde));
         getAnchors().put(horde.anchorman.getWurmId(), horde.anchorman);
+        getRegistry().put(horde.anchorman.getWurmId(), HordeRegistry.encode(horde.id, true));
         
         horde.satellites.stream().forEach(x -> {
             getSatellites().put(x.getWurmId(), x);
+            getRegistry().put(x.getWurmId(), HordeRegistry.encode(horde.id, false));
             logger.info(String.format("Adding satellite: %s.", x)); 
         });
         
-        return false;
+        getRecorder().horde(horde);
+        horde.startTimers(now());
+        
+        return true;
+    }
+    
+    /**
+     * Registers a satellite that was spawned after its horde was added.
+     * @param satellite New satellite, must already be in its horde.
+     */
+    public static void addSatellite(Member satellite) {
+        getSatellites().put(satellite.getWurmId(), satellite);
+        getRegistry().put(satellite.getWurmId(), HordeRegistry.encode(satellite.horde.id, false));
+        getJournal().append(HordeJournal.MEMBER_ADDED, satellite.horde.id, satellite.getWurmId());
+    }
+    
+    /**
+     * Adds a horde that split off another one. Its members were registered
+     * with the other horde, each only gets its entry updated.
+     * @param horde Horde that was split.
+     * @param part New horde.
+     * @param moved Members of the new horde.
+     */
+    static void registerSplit(Horde horde, Horde part, List<Member> moved) {
+        hordes.add(part);
+        moveMembers(part, moved);
+        part.startTimers(now());
+        getMetrics().splits.increment();
+        
+        byte[] data;
+        
+        // the record holds only the new horde, replaying it moves its
+        // members out of the other one.
+        if ((data = HordeStore.serialize(part)) != null)
+            getJournal().append(HordeJournal.HORDE_SPLIT, horde.id, 0L, data);
+    }
+    
+    /**
+     * Removes a horde that merged into another one. Its members were
+     * registered with it, each only gets its entry updated.
+     * @param horde Horde that took the other one in.
+     * @param other Horde that is gone now.
+     * @param moved Members that joined.
+     */
+    static void registerMerge(Horde horde, Horde other, List<Member> moved) {
+        moveMembers(horde, moved);
+        other.cancelTimers();
+        hordes.remove(other);
+        getMetrics().merges.increment();
+        getJournal().append(HordeJournal.HORDE_MERGED, horde.id, other.id);
+    }
+    
+    /**
+     * Points the registry entries of members to their new horde, and moves
+     * members that changed their role between the anchor and satellite maps.
+     */
+    private static void moveMembers(Horde horde, List<Member> members) {
+        for (Member member : members) {
+            boolean anchor = member == horde.anchorman;
+            
+            getRegistry().put(member.getWurmId(), HordeRegistry.encode(horde.id, anchor));
+            
+            if (anchor ? getSatellites().remove(member.getWurmId()) != null : getAnchors().remove(member.getWurmId()) != null)
+                (anchor ? getAnchors() : getSatellites()).put(member.getWurmId(), member);
+        }
     }
     
     public static boolean remove(Horde horde) {
@@ -243,11 +408,32 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
             getAnchors().remove(horde.anchorman.getWurmId());
         
         horde.satellites.stream().forEach(x -> getSatellites().remove(x.getWurmId()));
+        getRegistry().removeHorde(horde.id);
+        horde.cancelTimers();
+        
+        if (hordes.remove(horde)) {
+            getJournal().append(HordeJournal.HORDE_REMOVED, horde.id, 0L);
+            return true;
+        }
         
-        return hordes.remove(horde);
+        return false;
     }
     
     public static boolean remove(Creature creature) {
+        int value = getRegistry().get(creature.getWurmId());
+        
+        if (creature instanceof Member)
+            getWatchdog().release((Member)creature);
+        
+        if (value >= 0) {
+            getRecorder().died(HordeRegistry.hordeId(value), HordeRegistry.isAnchor(value));
+            getRegistry().remove(creature.getWurmId());
+            getJournal().append(HordeJournal.MEMBER_REMOVED, HordeRegistry.hordeId(value), creature.getWurmId());
+            
+            if (getStore().isDormant(HordeRegistry.hordeId(value)))
+                getStore().apply(HordeJournal.MEMBER_REMOVED, HordeRegistry.hordeId(value), creature.getWurmId());
+        }
+        
         return getSatellites().remove(creature.getWurmId()) != null || 
             getAnchors().remove(creature.getWurmId()) != null;
     }
@@ -256,10 +442,20 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
         getAnchors().remove(oldman.getWurmId());
         getAnchors().put(newman.getWurmId(), newman);
         getSatellites().remove(newman.getWurmId());
+        
+        int value = getRegistry().get(oldman.getWurmId());
+        
+        if (value >= 0) {
+            getRegistry().remove(oldman.getWurmId());
+            getRegistry().put(newman.getWurmId(), HordeRegistry.encode(HordeRegistry.hordeId(value), true));
+            getJournal().append(HordeJournal.ANCHOR_CHANGED, HordeRegistry.hordeId(value), newman.getWurmId());
+        }
     }
     
     public static void clean() {
-        lastCleaned = System.currentTimeMillis() + random.nextInt(60000);
+        // a fixed interval, drawing from the shared random numbers would
+        // change the hordes' seeds depending on when this runs.
+        getTimers().schedule(cleanTimer, now() + 90000L);
         
         for (Creature creature : getAnchors().values().toArray(getEmptyCreatures())) {
             if (inHorde(creature) == null) {
@@ -277,19 +473,75 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
     }
 
     public static boolean isInHorde(Creature creature) {
-        long wurmId = creature.getWurmId();
+        return isInHorde(creature.getWurmId());
+    }
+    
+    /**
+     * Checks the registry, works before the hordes have been restored.
+     * @param wurmId Wurm Id of the creature.
+     * @return True if the creature is a horde member.
+     */
+    public static boolean isInHorde(long wurmId) {
+        return getRegistry().contains(wurmId);
+    }
+    
+    /**
+     * @param tileX Tile X coordinate.
+     * @param tileY Tile Y coordinate.
+     * @param distance Distance in tiles.
+     * @return True if a player is within the distance of the tile.
+     */
+    public static boolean isPlayerNear(int tileX, int tileY, int distance) {
+        for (Player player : Players.getInstance().getPlayers())
+            if (Math.abs(player.getTileX() - tileX) <= distance &&
+                Math.abs(player.getTileY() - tileY) <= distance)
+                return true;
         
-        return getSatellites().containsKey(wurmId) ||
-            getAnchors().containsKey(wurmId);
+        return false;
     }
     
-    public static Horde inHorde(Creature creature) {
+    /**
+     * @param creature Creature to look around.
+     * @param except Horde to leave out, or null.
+     * @return Horde with the anchor closest to the creature, or null.
+     */
+    private static Horde closestHorde(Creature creature, Horde except) {
+        Horde closest = null;
+        float distance = Float.MAX_VALUE;
+        
         for (Horde horde : hordes.toArray(emptyHordes)) {
-            if (horde.contains(creature))
-                return horde;
+            if (horde == except || horde.anchorman == null)
+                continue;
+            
+            float next = horde.anchorman.distanceTo(creature);
+            
+            if (next < distance) {
+                closest = horde;
+                distance = next;
+            }
         }
         
-        return null;
+        return closest;
+    }
+    
+    /**
+     * Finds the horde of a member through the member and the registry,
+     * without going through all hordes.
+     * @param creature Creature to look up.
+     * @return Horde of the creature, or null if it isn't in a horde.
+     */
+    public static Horde inHorde(Creature creature) {
+        if (!(creature instanceof Member))
+            return null;
+        
+        Horde horde = ((Member)creature).horde;
+        int value;
+        
+        // dead members keep their horde, but they're gone from the registry.
+        if (horde == null || (value = getRegistry().get(creature.getWurmId())) < 0 || HordeRegistry.hordeId(value) != horde.id)
+            return null;
+        
+        return horde;
     }
     
     public static CreatureAI getCreatureAI(Creature creature) {
@@ -347,22 +599,53 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
     }
     
     public static void poll(Creature creature) {
-        if (System.currentTimeMillis() - lastCleaned > 60000L)
-            clean();
+        long wurmId = creature.getWurmId();
+        
+        // members of dormant hordes are only in the registry until a player comes near.
+        if (!getAnchors().containsKey(wurmId) && !getSatellites().containsKey(wurmId)) {
+            int value = getRegistry().get(wurmId);
+            
+            if (value >= 0)
+                getStore().wake(creature, HordeRegistry.hordeId(value), now());
+            
+            return;
+        }
+        
+        // members of abstract hordes are parked, only the anchor moves the token.
+        if (creature instanceof Member && getLod().poll((Member)creature, now()))
+            return;
+        
+        // members of resting hordes wait for their wake time or an event.
+        if (creature instanceof Member && getRest().poll((Member)creature, now()))
+            return;
+        
+        long bench = System.nanoTime();
         
         if (getAnchors().containsKey(creature.getWurmId())) {
             if (creature.getCreatureAIData() == null)
                 logger.info(String.format("Creature AI Data is null for ANCHOR %s.", creature));
-            else
+            else {
                 getAnchorAI().pollCreature(creature, System.currentTimeMillis() - creature.getCreatureAIData().getLastPollTime());
+                getMetrics().hordeTick.since(bench);
+                
+                if (creature instanceof Member && ((Member)creature).horde != null)
+                    HordeEvents.hordeTick(bench, ((Member)creature).horde);
+            }
         }
         
         if (getSatellites().containsKey(creature.getWurmId())) {
             if (creature.getCreatureAIData() == null)
                 logger.info(String.format("Creature AI Data is null for SATELLITE %s.", creature));
-            else
+            else {
                 getSatelliteAI().pollCreature(creature, System.currentTimeMillis() - creature.getCreatureAIData().getLastPollTime());
+                getMetrics().satelliteTick.since(bench);
+            }
         }
+        
+        if (creature instanceof Member)
+            getWatchdog().poll((Member)creature, now());
+        
+        getLoad().spent(System.nanoTime() - bench);
     }
     
     private void ModifyQuestion() {
@@ -492,6 +775,30 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
                 WanderingHorde.add(demons);
             }
         }
+        else if (msg.equals("hordemetrics") && comm.getPlayer().getPower() > 0) {
+            getMetrics().dump().forEach(x -> comm.sendNormalServerMessage(x));
+            
+            if (getMetrics().write())
+                comm.sendNormalServerMessage(String.format("Written to %s.", Options.metricsFile));
+        }
+        else if (msg.equals("hordestuck") && comm.getPlayer().getPower() > 0) {
+            getWatchdog().dump().forEach(x -> comm.sendNormalServerMessage(x));
+        }
+        else if (msg.equals("hordesplit") && comm.getPlayer().getPower() > 0) {
+            Horde horde = closestHorde(comm.getPlayer(), null);
+            Horde part = horde == null ? null : horde.split();
+            
+            comm.sendNormalServerMessage(part == null ? "No horde nearby can split now." : String.format("%s split off %s.", horde, part));
+        }
+        else if (msg.equals("hordemerge") && comm.getPlayer().getPower() > 0) {
+            Horde horde = closestHorde(comm.getPlayer(), null);
+            Horde other = horde == null ? null : closestHorde(horde.anchorman, horde);
+            
+            if (other != null && horde.merge(other))
+                comm.sendNormalServerMessage(String.format("%s merged into %s.", other, horde));
+            else
+                comm.sendNormalServerMessage(String.format("No hordes within %d tiles of each other nearby.", Options.mergeDistance));
+        }
         else if (msg.equals("walkdemons")) {
             hordes.get(1).walk();
         }
@@ -549,6 +856,38 @@ public class WanderingHorde implements WurmServerMod, PreInitable, Initable, Ser
     
     @Override
     public void onServerStarted() {
-
+        getHostility();
+        getStore().restore();
+        getJournal().compact();
+        getTimers().schedule(cleanTimer, now() + 60000L);
+        
+        if (Options.logAsync)
+            HordeLog.install();
+    }
+    
+    @Override
+    public void onServerShutdown() {
+        getJournal().close();
+        getRecorder().close();
+        getPlanner().close();
+        HordeLog.close();
+    }
+    
+    @Override
+    public void onServerPoll() {
+        getLoad().poll();
+        
+        long bench = System.nanoTime();
+        
+        getStore().poll(now());
+        getSpawnQueue().poll();
+        getInterest().poll(now());
+        getStates().poll(now());
+        getPlanner().poll(now());
+        getTimers().poll(now());
+        getLoad().spent(System.nanoTime() - bench);
+        
+        getMetrics().poll(System.currentTimeMillis());
+        getRecorder().poll(now());
     }
 }
@@ -0,0 +1,258 @@
+package com.pveplands.wanderinghorde;
+
+import com.wurmonline.server.Server;
+import com.wurmonline.server.creatures.ai.Path;
+import com.wurmonline.server.creatures.ai.PathTile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds horde members that stopped moving. Every Options.watchdogInterval
+ * milliseconds it records the time, tile, brain and path size of a member
+ * into a small ring buffer. A member that is walking to a waypoint or
+ * scattering, has a path to follow and didn't change its tile for
+ * Options.watchdogStalls samples in a row is stuck, and is helped with
+ * escalating steps: it looks for a new path, then rejoins the formation
+ * behind the anchor, and at last is teleported next to the horde.
+ *
+ * All state is kept in primitive arrays indexed by a slot per member, so
+ * recording doesn't allocate, and nothing is formatted until the history is
+ * dumped with the "hordestuck" command.
+ */
+public class Watchdog {
+    /**
+     * Number of samples kept for each member.
+     */
+    private final int history;
+    
+    private Member[] members = new Member[0];
+    private long[] nextSample = new long[0];
+    private int[] lastTile = new int[0];
+    private int[] stalls = new int[0];
+    private byte[] level = new byte[0];
+    private int[] head = new int[0];
+    
+    /* ring buffers, history entries per slot. */
+    private long[] sampleTime = new long[0];
+    private int[] sampleTile = new int[0];
+    private byte[] sampleBrain = new byte[0];
+    private short[] samplePath = new short[0];
+    
+    private int[] free = new int[0];
+    private int freeCount = 0;
+    private int used = 0;
+    
+    public Watchdog() {
+        this(Options.watchdogHistory);
+    }
+    
+    /**
+     * @param history Number of samples kept for each member.
+     */
+    public Watchdog(int history) {
+        this.history = Math.max(1, history);
+    }
+    
+    /**
+     * Records a sample of a member if the interval has passed, and helps it
+     * along if it's stuck.
+     * @param member Polled horde member.
+     * @param current Current time in milliseconds.
+     */
+    public void poll(Member member, long current) {
+        if (member.watchSlot < 0)
+            member.watchSlot = allocate(member);
+        
+        int slot = member.watchSlot;
+        
+        if (current < nextSample[slot])
+            return;
+        
+        nextSample[slot] = current + Options.watchdogInterval;
+        
+        Path path = member.getStatus().getPath();
+        int tile = (member.getTileX() << 16) | (member.getTileY() & 0xFFFF);
+        int index = slot * history + head[slot];
+        
+        sampleTime[index] = current;
+        sampleTile[index] = tile;
+        sampleBrain[index] = (byte)member.getBrain().ordinal();
+        samplePath[index] = (short)Math.min(Short.MAX_VALUE, path == null ? -1 : path.getSize());
+        head[slot] = (head[slot] + 1) % history;
+        
+        boolean moved = tile != lastTile[slot];
+        lastTile[slot] = tile;
+        
+        if (moved || !walking(member, path)) {
+            stalls[slot] = 0;
+            level[slot] = 0;
+            return;
+        }
+        
+        if (++stalls[slot] < Options.watchdogStalls)
+            return;
+        
+        stalls[slot] = 0;
+        recover(member, level[slot]);
+        
+        // keeps teleporting until the member moves again.
+        if (level[slot] < 2)
+            level[slot]++;
+    }
+    
+    /**
+     * Frees the slot of a member that left its horde.
+     * @param member Removed horde member.
+     */
+    public void release(Member member) {
+        int slot = member.watchSlot;
+        
+        if (slot < 0 || slot >= used || members[slot] != member)
+            return;
+        
+        member.watchSlot = -1;
+        members[slot] = null;
+        free[freeCount++] = slot;
+    }
+    
+    /**
+     * @param member Horde member.
+     * @return True if the member didn't move for a while and is being helped.
+     */
+    public boolean isStuck(Member member) {
+        int slot = member.watchSlot;
+        
+        return slot >= 0 && slot < used && members[slot] == member && level[slot] > 0;
+    }
+    
+    /**
+     * @return Human readable lines with the sample history of all members
+     * that are currently stuck, oldest samples first.
+     */
+    public List<String> dump() {
+        List<String> lines = new ArrayList<>();
+        MemberStatus[] brains = MemberStatus.values();
+        
+        for (int slot = 0; slot < used; slot++) {
+            Member member = members[slot];
+            
+            if (member == null || !isStuck(member))
+                continue;
+            
+            lines.add(String.format("%s in %s, escalation step %d, %d stalled samples:", member, member.horde, level[slot], stalls[slot]));
+            
+            for (int i = 0; i < history; i++) {
+                int index = slot * history + (head[slot] + i) % history;
+                
+                if (sampleTime[index] == 0L)
+                    continue;
+                
+                lines.add(String.format("  %tT %d,%d %s path=%d", sampleTime[index],
+                    sampleTile[index] >> 16, (short)sampleTile[index],
+                    brains[sampleBrain[index]], samplePath[index]));
+            }
+        }
+        
+        if (lines.isEmpty())
+            lines.add("No horde members are stuck.");
+        
+        return lines;
+    }
+    
+    /**
+     * @return True if the member should be moving, and isn't held in place
+     * by its AI with the empty path.
+     */
+    private static boolean walking(Member member, Path path) {
+        if (member.horde == null || member.horde.forming || member.horde.destroyed)
+            return false;
+        
+        if (member.getBrain() != MemberStatus.WalkingToWaypoint && member.getBrain() != MemberStatus.Scattering)
+            return false;
+        
+        return path != WanderingHorde.getEmptyPath();
+    }
+    
+    /**
+     * Helps a stuck member along, each level is a bigger intervention.
+     * @param member Stuck horde member.
+     * @param step 0 to look for a new path, 1 to rejoin the formation, 2 to
+     * teleport next to the horde.
+     */
+    private void recover(Member member, int step) {
+        Metrics metrics = WanderingHorde.getMetrics();
+        boolean anchor = member.horde.anchorman == member;
+        
+        switch (step) {
+            case 0:
+                metrics.repaths.increment();
+                
+                // the AI finds a new path when the creature has none.
+                if (member.getBrain() == MemberStatus.Scattering && !anchor)
+                    member.scatter(Options.scatterDistance);
+                else
+                    member.getStatus().setPath(null);
+                
+                break;
+            case 1:
+                metrics.regroups.increment();
+                
+                if (anchor) {
+                    // skip the sub-point the anchor can't reach.
+                    member.horde.waypoints.path().advance(Options.anchorAdvance);
+                    member.getStatus().setPath(null);
+                    break;
+                }
+                
+                Member anchorman = member.horde.anchorman;
+                int tile = anchorman.isOnSurface() ?
+                    Server.surfaceMesh.getTile(anchorman.getTileX(), anchorman.getTileY()) :
+                    Server.caveMesh.getTile(anchorman.getTileX(), anchorman.getTileY());
+                
+                WanderingHorde.getStates().fire(member, StateMachine.Trigger.Walk);
+                member.startPathingToTile(new PathTile(anchorman.getTileX(), anchorman.getTileY(), tile, anchorman.isOnSurface(), anchorman.getFloorLevel()));
+                break;
+            default:
+                member.scatterTeleport(Options.scatterDistance);
+                break;
+        }
+    }
+    
+    private int allocate(Member member) {
+        int slot;
+        
+        if (freeCount > 0)
+            slot = free[--freeCount];
+        else {
+            if (used == members.length)
+                grow(Math.max(64, used << 1));
+            
+            slot = used++;
+        }
+        
+        members[slot] = member;
+        nextSample[slot] = 0L;
+        lastTile[slot] = -1;
+        stalls[slot] = 0;
+        level[slot] = 0;
+        head[slot] = 0;
+        Arrays.fill(sampleTime, slot * history, (slot + 1) * history, 0L);
+        
+        return slot;
+    }
+    
+    private void grow(int capacity) {
+        members = Arrays.copyOf(members, capacity);
+        nextSample = Arrays.copyOf(nextSample, capacity);
+        lastTile = Arrays.copyOf(lastTile, capacity);
+        stalls = Arrays.copyOf(stalls, capacity);
+        level = Arrays.copyOf(level, capacity);
+        head = Arrays.copyOf(head, capacity);
+        free = Arrays.copyOf(free, capacity);
+        sampleTime = Arrays.copyOf(sampleTime, capacity * history);
+        sampleTile = Arrays.copyOf(sampleTile, capacity * history);
+        sampleBrain = Arrays.copyOf(sampleBrain, capacity * history);
+        samplePath = Arrays.copyOf(samplePath, capacity * history);
+    }
+}
@@ -1,5 +1,6 @@
 package com.pveplands.wanderinghorde;
 
+import com.pveplands.wanderinghorde.HordeLog.Category;
 import com.wurmonline.math.TilePos;
 import com.wurmonline.server.creatures.Creature;
 import java.util.ArrayList;
@@ -189,8 +190,11 @@ public class Waypoints {
         if (nullOrEmpty())
             return null;
         
-        if (dirty)
+        if (dirty) {
+            WanderingHorde.getMetrics().pathMisses.increment();
             resetPaths();
+        }
+        else WanderingHorde.getMetrics().pathHits.increment();
         
         return paths.get(index);
     }
@@ -266,8 +270,8 @@ public class Waypoints {
             }
         }
         
-        double mark = (System.nanoTime() - bench) / 1000000d;
-        WanderingHorde.logger.log(WanderingHorde.devlog, String.format("Calculating path for waypoint took %.2f seconds.", mark));
+        if (HordeLog.isLoggable(WanderingHorde.devlog, Category.PATH))
+            HordeLog.log(WanderingHorde.devlog, Category.PATH, "Calculating path for waypoint took %.2f ms.", (System.nanoTime() - bench) / 1000000d);
             
         dirty = false;
     }
@@ -328,6 +332,70 @@ public class Waypoints {
         dirty = true;
     }
     
+    /**
+     * @return Behaviour of the horde at the last waypoint.
+     */
+    WaypointBehaviour getBehaviour() {
+        return behaviour;
+    }
+    
+    /**
+     * @return Null or the waypoint coordinates, used when saving the horde.
+     */
+    List<TilePos> getPoints() {
+        return points;
+    }
+    
+    /**
+     * @return Null or the paths between the waypoints, used when saving the horde.
+     */
+    List<HordePath> getPaths() {
+        return paths;
+    }
+    
+    /**
+     * @return Index of the current path between two waypoints.
+     */
+    int getIndex() {
+        return index;
+    }
+    
+    /**
+     * Restores saved paths instead of pathfinding again.
+     * @param index Index of the current path.
+     * @param restored Saved paths between the waypoints.
+     */
+    protected void restore(int index, List<HordePath> restored) {
+        paths.clear();
+        paths.addAll(restored);
+        this.index = index;
+        dirty = false;
+    }
+    
+    /**
+     * Makes waypoints on the same route for a horde that split off, at the
+     * same waypoint and on the same paths, see HordePath.share().
+     * @param creature Reference creature of the new waypoints.
+     * @return Waypoints that are only dirty if these are.
+     */
+    protected Waypoints share(Creature creature) {
+        Waypoints copy = new Waypoints(creature, behaviour, points.toArray(new TilePos[points.size()]));
+        
+        copy.index = index;
+        
+        if (dirty)
+            return copy;
+        
+        List<HordePath> shared = new ArrayList<>(paths.size());
+        
+        // reversing an empty path gives null.
+        for (HordePath path : paths)
+            shared.add(path == null ? null : path.share());
+        
+        copy.restore(index, shared);
+        return copy;
+    }
+    
     /**
      * @return True if the waypoints have changed, and needs resetting, and new
      * path finding.